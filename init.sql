@@ -5,11 +5,15 @@ CREATE TABLE IF NOT EXISTS ADMIN (
 );
 
 -- STUDENT table remains same
+-- name is a VARCHAR so the directory can search and sort on an index
+-- (existing databases: ALTER TABLE STUDENT MODIFY name VARCHAR(255) NOT NULL,
+--  ADD KEY idx_student_name (name, student_id);)
 CREATE TABLE IF NOT EXISTS STUDENT (
     student_id INTEGER PRIMARY KEY,
-    name TEXT NOT NULL,
+    name VARCHAR(255) NOT NULL,
     email VARCHAR(255) NOT NULL UNIQUE,
-    password TEXT
+    password TEXT,
+    KEY idx_student_name (name, student_id)
 );
 
 -- SKILL table becomes SUBJECT (Containers) - No weight here
@@ -37,6 +41,7 @@ CREATE TABLE IF NOT EXISTS STUDENT_PROGRESS (
     student_id INTEGER NOT NULL,
     material_id INTEGER NOT NULL,
     status VARCHAR(50) CHECK(status IN ('Completed', 'Not Started')) DEFAULT 'Not Started',
+    UNIQUE KEY unique_progress (student_id, material_id),
     FOREIGN KEY (student_id) REFERENCES STUDENT(student_id),
     FOREIGN KEY (material_id) REFERENCES MATERIAL(id)
 );
@@ -52,6 +57,81 @@ CREATE TABLE IF NOT EXISTS ENROLLMENT (
     FOREIGN KEY (skill_id) REFERENCES SKILL(skill_id)
 );
 
+-- READINESS table (Per-enrollment progress totals, kept in sync by the DAOs;
+-- rebuild with: java -cp "out;lib/*" dao.ReadinessDAO)
+CREATE TABLE IF NOT EXISTS READINESS (
+    student_id INTEGER NOT NULL,
+    skill_id INTEGER NOT NULL,
+    completed_count INTEGER NOT NULL DEFAULT 0,
+    total_count INTEGER NOT NULL DEFAULT 0,
+    completed_weight BIGINT NOT NULL DEFAULT 0,
+    total_weight BIGINT NOT NULL DEFAULT 0,
+    PRIMARY KEY (student_id, skill_id),
+    KEY idx_readiness_skill (skill_id, completed_weight),
+    FOREIGN KEY (student_id) REFERENCES STUDENT(student_id),
+    FOREIGN KEY (skill_id) REFERENCES SKILL(skill_id)
+);
+
+-- PROGRESS_EVENT table (Append-only log of status changes, one partition per month;
+-- ProgressEventDAO.ensurePartitions adds upcoming months at startup and daily. Partitioned
+-- tables cannot have foreign keys, so ids are not constrained here.)
+CREATE TABLE IF NOT EXISTS PROGRESS_EVENT (
+    event_day DATE NOT NULL,
+    id BIGINT NOT NULL AUTO_INCREMENT,
+    student_id INTEGER NOT NULL,
+    skill_id INTEGER NOT NULL,
+    material_id INTEGER NOT NULL,
+    completed TINYINT NOT NULL, -- 1 = marked Completed, 0 = marked Not Started
+    weight_delta SMALLINT NOT NULL,
+    created_at TIMESTAMP(3) NOT NULL DEFAULT CURRENT_TIMESTAMP(3),
+    PRIMARY KEY (event_day, id),
+    KEY idx_event_id (id),
+    KEY idx_event_student (student_id, event_day)
+)
+PARTITION BY RANGE COLUMNS (event_day) (
+    PARTITION p_future VALUES LESS THAN (MAXVALUE)
+);
+
+-- Daily rollups of PROGRESS_EVENT (trend queries read only these).
+-- completed_weight / total_weight are the READINESS totals at the end of the day,
+-- written whenever they move (status, enrollment, module add/remove/reweight,
+-- student delete); NULL on rows written before the snapshot columns existed.
+-- (existing databases: ALTER TABLE PROGRESS_DAILY_SKILL ADD completed_weight BIGINT NULL,
+--  ADD total_weight BIGINT NULL; the same for PROGRESS_DAILY_STUDENT)
+CREATE TABLE IF NOT EXISTS PROGRESS_DAILY_SKILL (
+    skill_id INTEGER NOT NULL,
+    day DATE NOT NULL,
+    completions INTEGER NOT NULL DEFAULT 0,
+    reverts INTEGER NOT NULL DEFAULT 0,
+    weight_delta BIGINT NOT NULL DEFAULT 0,
+    completed_weight BIGINT NULL,
+    total_weight BIGINT NULL,
+    PRIMARY KEY (skill_id, day)
+);
+
+CREATE TABLE IF NOT EXISTS PROGRESS_DAILY_STUDENT (
+    student_id INTEGER NOT NULL,
+    skill_id INTEGER NOT NULL,
+    day DATE NOT NULL,
+    completions INTEGER NOT NULL DEFAULT 0,
+    reverts INTEGER NOT NULL DEFAULT 0,
+    weight_delta INTEGER NOT NULL DEFAULT 0,
+    completed_weight BIGINT NULL,
+    total_weight BIGINT NULL,
+    PRIMARY KEY (student_id, skill_id, day)
+);
+
+-- UPLOAD_BLOB table (Content-addressed uploads under uploads/cas/, one row per distinct file;
+-- ref_count = MATERIAL/SKILL rows using it, unreferenced blobs are garbage collected)
+CREATE TABLE IF NOT EXISTS UPLOAD_BLOB (
+    path VARCHAR(100) PRIMARY KEY, -- 'cas/<sha256>.<ext>', as stored in resource_url / image_url
+    sha256 CHAR(64) NOT NULL,
+    size BIGINT NOT NULL,
+    ref_count INTEGER NOT NULL DEFAULT 0,
+    updated_at TIMESTAMP NOT NULL DEFAULT CURRENT_TIMESTAMP ON UPDATE CURRENT_TIMESTAMP,
+    KEY idx_blob_unreferenced (ref_count, updated_at)
+);
+
 -- Insert Default Admin
 INSERT IGNORE INTO ADMIN (username, password) VALUES ('admin', 'admin123');
 
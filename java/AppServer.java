@@ -0,0 +1,77 @@
+import com.sun.net.httpserver.HttpServer;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+
+import handlers.AdminDashboardHandler;
+import handlers.CourseStudentsHandler;
+import handlers.DashboardHandler;
+import handlers.EnrollHandler;
+import handlers.LoginHandler;
+import handlers.MaterialsHandler;
+import handlers.RegisterHandler;
+import handlers.SearchHandler;
+import handlers.StaticFileHandler;
+import handlers.StudentsHandler;
+import handlers.SubjectsHandler;
+import dao.ProgressEventDAO;
+import dao.UploadStore;
+import util.DBConnection;
+import util.Router;
+import util.Router.Access;
+import util.ServerExecutors;
+
+/**
+ * Starts the HTTP server and registers all routes with the Router.
+ * The worker model is chosen with -Dserver.executor (see ServerExecutors).
+ */
+public class AppServer {
+    private static final int PORT = Integer.getInteger("server.port", 8080);
+
+    public static void main(String[] args) throws IOException {
+        HttpServer server = HttpServer.create(new InetSocketAddress(PORT), 0);
+        ServerExecutors executors = ServerExecutors.fromSystemProperties();
+
+        // Anything without a route is a static page or asset
+        Router router = new Router(executors, new StaticFileHandler());
+        String auth = ServerExecutors.GROUP_AUTH;
+        String app = ServerExecutors.GROUP_APP;
+
+        // Login and registration
+        LoginHandler loginHandler = new LoginHandler();
+        router.add(auth, "/auth/login", "POST", Access.PUBLIC, loginHandler);
+        router.add(auth, "/auth/admin", "POST", Access.PUBLIC, loginHandler);
+        router.add(auth, "/auth/register", Access.PUBLIC, new RegisterHandler());
+
+        // Student pages
+        router.add(app, "/dashboard", Access.STUDENT, new DashboardHandler());
+        router.add(app, "/enroll", "POST", Access.STUDENT, new EnrollHandler());
+
+        // Admin pages
+        router.add(app, "/admin_dashboard", Access.ADMIN, new AdminDashboardHandler());
+        router.add(app, "/subjects", Access.ADMIN, new SubjectsHandler());
+        router.add(app, "/materials", Access.ADMIN, new MaterialsHandler());
+        router.add(app, "/students", Access.ADMIN, new StudentsHandler());
+        router.add(app, "/course_students", Access.ADMIN, new CourseStudentsHandler());
+
+        // Type-ahead search (JSON), for any logged-in user
+        router.add(app, "/search", Access.USER, new SearchHandler());
+
+        server.createContext("/", router);
+
+        server.setExecutor(executors.getServerExecutor());
+
+        // Progress history is partitioned by month; keeps the coming months created
+        ProgressEventDAO.schedulePartitionMaintenance();
+        // Deletes uploaded files no material or course refers to any more
+        UploadStore.scheduleGarbageCollection();
+
+        Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+            server.stop(1);
+            executors.shutdown();
+            DBConnection.shutdown();
+        }));
+
+        server.start();
+        System.out.println("Server started on http://localhost:" + PORT + " (" + executors.describe() + ")");
+    }
+}
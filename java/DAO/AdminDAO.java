@@ -1,6 +1,7 @@
 package dao;
 
 import util.DBConnection;
+import util.Log;
 import java.sql.Connection;
 import java.sql.PreparedStatement;
 import java.sql.ResultSet;
@@ -24,7 +25,7 @@ public class AdminDAO {
             return null;
             
         } catch (SQLException | ClassNotFoundException e) {
-            e.printStackTrace();
+            Log.error("AdminDAO.validate failed", e);
             return null;
         }
     }
@@ -39,7 +40,7 @@ public class AdminDAO {
             return rs.next();
             
         } catch (SQLException | ClassNotFoundException e) {
-            e.printStackTrace();
+            Log.error("AdminDAO.checkAdminExists failed", e);
             return false;
         }
     }
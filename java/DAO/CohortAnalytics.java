@@ -0,0 +1,197 @@
+package dao;
+
+import model.CohortStats;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+
+/**
+ * Per-course cohort statistics computed from the ProgressIndex bitmasks.
+ *
+ * A snapshot of the skill's student rows is split into ranges that are
+ * aggregated in parallel on the common fork-join pool; each range counts
+ * students per completed-weight bucket and completions per material, and the
+ * merged counts give the histogram, mean, median, p90 and threshold shares.
+ * Results are cached until the skill's index version changes.
+ */
+public class CohortAnalytics {
+
+    // Student table slots per fork-join leaf
+    private static final int LEAF_SLOTS = 4096;
+    // Completed weight is counted exactly up to this many distinct values, bucketed beyond
+    private static final int MAX_WEIGHT_BUCKETS = 1000;
+    private static final int HISTOGRAM_BUCKETS = 10;
+    private static final int[] THRESHOLDS = parseThresholds(System.getProperty("analytics.thresholds", "50,80,100"));
+
+    private static final Map<Integer, Cached> cache = new ConcurrentHashMap<>();
+
+    private final ProgressIndex index = ProgressIndex.getInstance();
+
+    private static final class Cached {
+        final ProgressIndex.SkillProgress source;
+        final long version;
+        final CohortStats stats;
+
+        Cached(ProgressIndex.SkillProgress source, long version, CohortStats stats) {
+            this.source = source;
+            this.version = version;
+            this.stats = stats;
+        }
+    }
+
+    /** Statistics for the course, or null if its progress could not be loaded. */
+    public CohortStats getCohortStats(int skillId) {
+        ProgressIndex.SkillProgress sp = index.getSkill(skillId);
+        if (sp == null) {
+            return null;
+        }
+        Cached cached = cache.get(skillId);
+        if (cached != null && cached.source == sp && cached.version == sp.getVersion()) {
+            return cached.stats;
+        }
+        ProgressIndex.Snapshot snap = sp.snapshot();
+        CohortStats stats = compute(sp, snap);
+        cache.put(skillId, new Cached(sp, snap.version, stats));
+        return stats;
+    }
+
+    /** Per-range counts; merged pairwise as the fork-join tasks complete. */
+    private static final class Partial {
+        final int[] weightCounts;
+        final int[] materialCounts;
+        int students;
+        long completedSum;
+
+        Partial(int weightBuckets, int materials) {
+            weightCounts = new int[weightBuckets];
+            materialCounts = new int[materials];
+        }
+
+        Partial merge(Partial other) {
+            for (int i = 0; i < weightCounts.length; i++) weightCounts[i] += other.weightCounts[i];
+            for (int i = 0; i < materialCounts.length; i++) materialCounts[i] += other.materialCounts[i];
+            students += other.students;
+            completedSum += other.completedSum;
+            return this;
+        }
+    }
+
+    private static final class Aggregate extends RecursiveTask<Partial> {
+        private static final long serialVersionUID = 1L;
+
+        private final ProgressIndex.Snapshot snap;
+        private final int words;
+        private final int materials;
+        private final int totalWeight;
+        private final int weightBuckets;
+        private final int from;
+        private final int to;
+
+        Aggregate(ProgressIndex.Snapshot snap, int words, int materials, int totalWeight, int weightBuckets, int from, int to) {
+            this.snap = snap;
+            this.words = words;
+            this.materials = materials;
+            this.totalWeight = totalWeight;
+            this.weightBuckets = weightBuckets;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected Partial compute() {
+            if (to - from > LEAF_SLOTS) {
+                int mid = (from + to) >>> 1;
+                Aggregate left = new Aggregate(snap, words, materials, totalWeight, weightBuckets, from, mid);
+                Aggregate right = new Aggregate(snap, words, materials, totalWeight, weightBuckets, mid, to);
+                left.fork();
+                Partial r = right.compute();
+                return left.join().merge(r);
+            }
+            Partial p = new Partial(weightBuckets, materials);
+            for (int slot = from; slot < to; slot++) {
+                if (!snap.isOccupied(slot)) continue;
+                int done = snap.completed[slot];
+                p.students++;
+                p.completedSum += done;
+                p.weightCounts[bucketOf(done, totalWeight, weightBuckets)]++;
+                for (int w = 0, base = slot * words; w < words; w++) {
+                    long word = snap.bits[base + w];
+                    while (word != 0) {
+                        int pos = (w << 6) + Long.numberOfTrailingZeros(word);
+                        if (pos < materials) p.materialCounts[pos]++;
+                        word &= word - 1;
+                    }
+                }
+            }
+            return p;
+        }
+    }
+
+    private static int bucketOf(int completedWeight, int totalWeight, int weightBuckets) {
+        if (totalWeight <= 0) return 0;
+        int b = (int) ((long) completedWeight * (weightBuckets - 1) / totalWeight);
+        return Math.max(0, Math.min(weightBuckets - 1, b));
+    }
+
+    private static CohortStats compute(ProgressIndex.SkillProgress sp, ProgressIndex.Snapshot snap) {
+        int[] materialIds = sp.materialIds();
+        int totalWeight = snap.totalWeight;
+        // One bucket per possible completed weight when that is small enough (exact percentiles)
+        int weightBuckets = Math.max(1, Math.min(totalWeight, MAX_WEIGHT_BUCKETS) + 1);
+
+        Partial p = ForkJoinPool.commonPool().invoke(
+                new Aggregate(snap, sp.words(), materialIds.length, totalWeight, weightBuckets, 0, snap.keys.length));
+
+        int n = p.students;
+        double mean = n > 0 && totalWeight > 0 ? p.completedSum * 100.0 / ((double) n * totalWeight) : 0;
+
+        int[] histogram = new int[HISTOGRAM_BUCKETS];
+        int[] above = new int[THRESHOLDS.length];
+        for (int b = 0; b < weightBuckets; b++) {
+            int count = p.weightCounts[b];
+            if (count == 0) continue;
+            double readiness = readinessOf(b, weightBuckets);
+            histogram[Math.min(HISTOGRAM_BUCKETS - 1, (int) (readiness / (100.0 / HISTOGRAM_BUCKETS)))] += count;
+            for (int t = 0; t < THRESHOLDS.length; t++) {
+                if (readiness >= THRESHOLDS[t]) above[t] += count;
+            }
+        }
+
+        return new CohortStats(sp.getSkillId(), n, mean,
+                percentile(p.weightCounts, n, 0.5), percentile(p.weightCounts, n, 0.9),
+                histogram, THRESHOLDS.clone(), above, materialIds.clone(), p.materialCounts);
+    }
+
+    private static double readinessOf(int bucket, int weightBuckets) {
+        return weightBuckets > 1 ? bucket * 100.0 / (weightBuckets - 1) : 0;
+    }
+
+    /** Nearest-rank percentile of readiness from the bucket counts. */
+    private static double percentile(int[] counts, int n, double q) {
+        if (n == 0) return 0;
+        long rank = (long) Math.ceil(q * n);
+        long seen = 0;
+        for (int b = 0; b < counts.length; b++) {
+            seen += counts[b];
+            if (seen >= rank) return readinessOf(b, counts.length);
+        }
+        return 100;
+    }
+
+    private static int[] parseThresholds(String value) {
+        String[] parts = value.split(",");
+        int[] result = new int[parts.length];
+        int n = 0;
+        for (String part : parts) {
+            try {
+                int t = Integer.parseInt(part.trim());
+                if (t >= 0 && t <= 100) result[n++] = t;
+            } catch (NumberFormatException e) {
+                // skip bad entries
+            }
+        }
+        return java.util.Arrays.copyOf(result, n);
+    }
+}
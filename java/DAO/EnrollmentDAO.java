@@ -1,6 +1,7 @@
 package dao;
 
 import util.DBConnection;
+import util.Log;
 import java.sql.Connection;
 import java.sql.PreparedStatement;
 import java.sql.ResultSet;
@@ -8,17 +9,71 @@ import java.sql.SQLException;
 import java.util.ArrayList;
 import java.util.List;
 
+import model.RosterEntry;
+
 public class EnrollmentDAO {
 
+    // Roster sort keys -> ORDER BY clauses (whitelisted, never built from user input).
+    // Within one course every student has the same total weight, so ordering by
+    // completed weight orders by readiness (served by READINESS(skill_id, completed_weight)).
+    public static final String SORT_READINESS_DESC = "readiness_desc";
+    public static final String SORT_READINESS_ASC = "readiness_asc";
+    public static final String SORT_NAME = "name";
+
+    private final StudentProgressDAO progressDAO = new StudentProgressDAO();
+    private final ReadinessDAO readinessDAO = new ReadinessDAO();
+    private final ProgressEventDAO eventDAO = new ProgressEventDAO();
+
     public void enroll(int studentId, int skillId) {
         String sql = "INSERT IGNORE INTO ENROLLMENT (student_id, skill_id) VALUES (?, ?)";
-        try (Connection conn = DBConnection.getConnection();
-             PreparedStatement pstmt = conn.prepareStatement(sql)) {
-            pstmt.setInt(1, studentId);
-            pstmt.setInt(2, skillId);
-            pstmt.executeUpdate();
+        try (Connection conn = DBConnection.getConnection()) {
+            conn.setAutoCommit(false);
+            try {
+                try (PreparedStatement pstmt = conn.prepareStatement(sql)) {
+                    pstmt.setInt(1, studentId);
+                    pstmt.setInt(2, skillId);
+                    pstmt.executeUpdate();
+                }
+                readinessDAO.refreshEnrollment(conn, studentId, skillId);
+                eventDAO.recordEnrollment(conn, studentId, skillId);
+                conn.commit();
+                ProgressIndex.getInstance().onEnrolled(studentId, skillId);
+            } catch (SQLException ex) {
+                conn.rollback();
+                throw ex;
+            }
+        } catch (SQLException | ClassNotFoundException e) {
+            Log.error("EnrollmentDAO.enroll failed", e);
+        }
+    }
+
+    /**
+     * Enrolls the student and creates their progress rows for every material
+     * of the skill in a single transaction.
+     */
+    public boolean enrollWithProgress(int studentId, int skillId) {
+        String sql = "INSERT IGNORE INTO ENROLLMENT (student_id, skill_id) VALUES (?, ?)";
+        try (Connection conn = DBConnection.getConnection()) {
+            conn.setAutoCommit(false);
+            try {
+                try (PreparedStatement pstmt = conn.prepareStatement(sql)) {
+                    pstmt.setInt(1, studentId);
+                    pstmt.setInt(2, skillId);
+                    pstmt.executeUpdate();
+                }
+                progressDAO.seedSkillProgress(conn, studentId, skillId);
+                readinessDAO.refreshEnrollment(conn, studentId, skillId);
+                eventDAO.recordEnrollment(conn, studentId, skillId);
+                conn.commit();
+                ProgressIndex.getInstance().onEnrolled(studentId, skillId);
+                return true;
+            } catch (SQLException ex) {
+                conn.rollback();
+                throw ex;
+            }
         } catch (SQLException | ClassNotFoundException e) {
-            e.printStackTrace();
+            Log.error("EnrollmentDAO.enrollWithProgress failed", e);
+            return false;
         }
     }
 
@@ -33,7 +88,7 @@ public class EnrollmentDAO {
                 list.add(rs.getInt("skill_id"));
             }
         } catch (SQLException | ClassNotFoundException e) {
-            e.printStackTrace();
+            Log.error("EnrollmentDAO.getEnrolledSkillIds failed", e);
         }
         return list;
     }
@@ -56,7 +111,65 @@ public class EnrollmentDAO {
                 ));
             }
         } catch (SQLException | ClassNotFoundException e) {
-            e.printStackTrace();
+            Log.error("EnrollmentDAO.getEnrolledStudentsBySkill failed", e);
+        }
+        return list;
+    }
+
+    public int countEnrolledStudents(int skillId) {
+        String sql = "SELECT COUNT(*) FROM ENROLLMENT WHERE skill_id = ?";
+        try (Connection conn = DBConnection.getConnection();
+             PreparedStatement pstmt = conn.prepareStatement(sql)) {
+            pstmt.setInt(1, skillId);
+            try (ResultSet rs = pstmt.executeQuery()) {
+                if (rs.next()) {
+                    return rs.getInt(1);
+                }
+            }
+        } catch (SQLException | ClassNotFoundException e) {
+            Log.error("EnrollmentDAO.countEnrolledStudents failed", e);
+        }
+        return 0;
+    }
+
+    /**
+     * One page of a course roster: each enrolled student with completed/total
+     * materials and weights for the skill, read from READINESS.
+     */
+    public List<RosterEntry> getCourseRoster(int skillId, String sort, int offset, int limit) {
+        List<RosterEntry> list = new ArrayList<>();
+        String orderBy;
+        if (SORT_READINESS_ASC.equals(sort)) {
+            orderBy = "r.completed_weight ASC, s.student_id ASC";
+        } else if (SORT_NAME.equals(sort)) {
+            orderBy = "s.name ASC, s.student_id ASC";
+        } else {
+            orderBy = "r.completed_weight DESC, s.student_id ASC";
+        }
+        String sql = "SELECT s.student_id, s.name, s.email, r.skill_id, " +
+                     "r.completed_count, r.total_count, r.completed_weight, r.total_weight " +
+                     "FROM READINESS r " +
+                     "JOIN STUDENT s ON s.student_id = r.student_id " +
+                     "WHERE r.skill_id = ? " +
+                     "ORDER BY " + orderBy + " " +
+                     "LIMIT ? OFFSET ?";
+        try (Connection conn = DBConnection.getConnection();
+             PreparedStatement pstmt = conn.prepareStatement(sql)) {
+            pstmt.setInt(1, skillId);
+            pstmt.setInt(2, limit);
+            pstmt.setInt(3, offset);
+            try (ResultSet rs = pstmt.executeQuery()) {
+                while (rs.next()) {
+                    list.add(new RosterEntry(
+                        rs.getInt("student_id"),
+                        rs.getString("name"),
+                        rs.getString("email"),
+                        ReadinessDAO.mapRow(rs)
+                    ));
+                }
+            }
+        } catch (SQLException | ClassNotFoundException e) {
+            Log.error("EnrollmentDAO.getCourseRoster failed", e);
         }
         return list;
     }
@@ -70,7 +183,7 @@ public class EnrollmentDAO {
                 return rs.getInt(1);
             }
         } catch (SQLException | ClassNotFoundException e) {
-            e.printStackTrace();
+            Log.error("EnrollmentDAO.getTotalUniqueEnrolledStudents failed", e);
         }
         return 0;
     }
@@ -91,7 +204,7 @@ public class EnrollmentDAO {
                 ));
             }
         } catch (SQLException | ClassNotFoundException e) {
-            e.printStackTrace();
+            Log.error("EnrollmentDAO.getAllActiveStudents failed", e);
         }
         return list;
     }
@@ -113,7 +226,7 @@ public class EnrollmentDAO {
                 ));
             }
         } catch (SQLException | ClassNotFoundException e) {
-            e.printStackTrace();
+            Log.error("EnrollmentDAO.getEnrolledSkills failed", e);
         }
         return list;
     }
@@ -2,43 +2,154 @@ package dao;
 
 import model.Material;
 import util.DBConnection;
+import util.Log;
 
 import java.sql.Connection;
 import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Objects;
 
 public class MaterialDAO {
 
+    // Skills whose materials are kept in memory (least recently used are evicted)
+    private static final int CACHE_MAX_SKILLS = Integer.getInteger("cache.materials.maxSkills", 256);
+
+    /**
+     * Materials of one skill with the module count and weight sum worked out once.
+     * Cached instances are shared between requests and must not be modified.
+     */
+    public static final class SkillMaterials {
+        private final List<Material> materials;
+        private final int totalWeight;
+
+        private SkillMaterials(List<Material> materials) {
+            int sum = 0;
+            for (Material m : materials) {
+                sum += m.getWeight();
+            }
+            this.materials = Collections.unmodifiableList(materials);
+            this.totalWeight = sum;
+        }
+
+        public List<Material> getMaterials() { return materials; }
+        public int getModuleCount() { return materials.size(); }
+        public int getTotalWeight() { return totalWeight; }
+    }
+
+    // Access-ordered LRU; all access synchronized on the map itself
+    private static final Map<Integer, SkillMaterials> cache =
+            new LinkedHashMap<Integer, SkillMaterials>(64, 0.75f, true) {
+                @Override
+                protected boolean removeEldestEntry(Map.Entry<Integer, SkillMaterials> eldest) {
+                    return size() > CACHE_MAX_SKILLS;
+                }
+            };
+    // Bumped by every invalidation so a load that raced with a change is not cached
+    private static long cacheGeneration;
+
+    private final ReadinessDAO readinessDAO = new ReadinessDAO();
+    private final ProgressEventDAO eventDAO = new ProgressEventDAO();
+    private final UploadStore uploadStore = new UploadStore();
+
+    /**
+     * Materials of the skill with their count and weight sum, read through the
+     * cache. A load that fails is returned empty but not cached.
+     */
+    public SkillMaterials getSkillMaterials(int skillId) {
+        long generation;
+        synchronized (cache) {
+            SkillMaterials cached = cache.get(skillId);
+            if (cached != null) {
+                return cached;
+            }
+            generation = cacheGeneration;
+        }
+        List<Material> list = new ArrayList<>();
+        boolean loaded = loadMaterials(skillId, list);
+        SkillMaterials result = new SkillMaterials(list);
+        if (loaded) {
+            synchronized (cache) {
+                if (generation == cacheGeneration) {
+                    cache.put(skillId, result);
+                }
+            }
+        }
+        return result;
+    }
+
+    /** Drops the cached materials (and the progress index) of one skill; call after its changes are committed. */
+    static void invalidateSkill(int skillId) {
+        invalidateCachedMaterials(skillId);
+        ProgressIndex.getInstance().invalidateSkill(skillId);
+    }
+
+    private static void invalidateCachedMaterials(int skillId) {
+        synchronized (cache) {
+            cache.remove(skillId);
+            cacheGeneration++;
+        }
+    }
+
     public int addMaterial(Material material) {
         String sql = "INSERT INTO MATERIAL (skill_id, title, type, resource_url, weight) VALUES (?, ?, ?, ?, ?)";
         int savedId = -1;
         
-        try (Connection conn = DBConnection.getConnection();
-             PreparedStatement pstmt = conn.prepareStatement(sql, java.sql.Statement.RETURN_GENERATED_KEYS)) {
-            
-            pstmt.setInt(1, material.getSkillId());
-            pstmt.setString(2, material.getTitle());
-            pstmt.setString(3, material.getType());
-            pstmt.setString(4, material.getResourceUrl());
-            pstmt.setInt(5, material.getWeight());
-            
-            pstmt.executeUpdate();
-            ResultSet rs = pstmt.getGeneratedKeys();
-            if (rs.next()) {
-                savedId = rs.getInt(1);
+        try (Connection conn = DBConnection.getConnection()) {
+            conn.setAutoCommit(false);
+            try {
+                try (PreparedStatement pstmt = conn.prepareStatement(sql, java.sql.Statement.RETURN_GENERATED_KEYS)) {
+                    pstmt.setInt(1, material.getSkillId());
+                    pstmt.setString(2, material.getTitle());
+                    pstmt.setString(3, material.getType());
+                    pstmt.setString(4, material.getResourceUrl());
+                    pstmt.setInt(5, material.getWeight());
+                    
+                    pstmt.executeUpdate();
+                    ResultSet rs = pstmt.getGeneratedKeys();
+                    if (rs.next()) {
+                        savedId = rs.getInt(1);
+                    }
+                }
+                // New module adds to every enrolled student's totals (nobody has completed it yet)
+                readinessDAO.applyMaterialAdded(conn, material.getSkillId(), material.getWeight());
+                eventDAO.recordSkillSnapshot(conn, material.getSkillId());
+                uploadStore.addReference(conn, material.getResourceUrl());
+                conn.commit();
+                invalidateSkill(material.getSkillId());
+                if (savedId > 0) {
+                    SearchIndex.getInstance().onMaterialSaved(savedId, material.getSkillId(), material.getTitle());
+                }
+            } catch (SQLException ex) {
+                conn.rollback();
+                throw ex;
             }
         } catch (SQLException | ClassNotFoundException e) {
-            e.printStackTrace();
+            Log.error("MaterialDAO.addMaterial failed", e);
+            savedId = -1;
         }
         return savedId;
     }
     
     public List<Material> getMaterialsBySkillId(int skillId) {
-        List<Material> list = new ArrayList<>();
-        String sql = "SELECT * FROM MATERIAL WHERE skill_id = ?";
+        return getSkillMaterials(skillId).getMaterials();
+    }
+
+    public int getModuleCount(int skillId) {
+        return getSkillMaterials(skillId).getModuleCount();
+    }
+
+    public int getTotalWeightBySkillId(int skillId) {
+        return getSkillMaterials(skillId).getTotalWeight();
+    }
+
+    private boolean loadMaterials(int skillId, List<Material> list) {
+        String sql = "SELECT * FROM MATERIAL WHERE skill_id = ? ORDER BY id";
         try (Connection conn = DBConnection.getConnection();
              PreparedStatement pstmt = conn.prepareStatement(sql)) {
              
@@ -55,43 +166,54 @@ public class MaterialDAO {
                     rs.getInt("weight")
                 ));
             }
+            return true;
         } catch (SQLException | ClassNotFoundException e) {
-            e.printStackTrace();
+            Log.error("MaterialDAO.loadMaterials failed", e);
+            return false;
         }
-        return list;
-    }
-    
-    public int getTotalWeightBySkillId(int skillId) {
-        String sql = "SELECT SUM(weight) FROM MATERIAL WHERE skill_id = ?";
-        try (Connection conn = DBConnection.getConnection();
-             PreparedStatement pstmt = conn.prepareStatement(sql)) {
-             
-            pstmt.setInt(1, skillId);
-            ResultSet rs = pstmt.executeQuery();
-            
-            if (rs.next()) {
-                return rs.getInt(1);
-            }
-        } catch (SQLException | ClassNotFoundException e) {
-            e.printStackTrace();
-        }
-        return 0;
     }
 
     public void updateMaterial(Material material) {
         String sql = "UPDATE MATERIAL SET title = ?, type = ?, resource_url = ?, weight = ? WHERE id = ?";
-        try (Connection conn = DBConnection.getConnection();
-             PreparedStatement pstmt = conn.prepareStatement(sql)) {
-            
-            pstmt.setString(1, material.getTitle());
-            pstmt.setString(2, material.getType());
-            pstmt.setString(3, material.getResourceUrl());
-            pstmt.setInt(4, material.getWeight());
-            pstmt.setInt(5, material.getId());
-            
-            pstmt.executeUpdate();
+        try (Connection conn = DBConnection.getConnection()) {
+            conn.setAutoCommit(false);
+            try {
+                Material current = lockMaterial(conn, material.getId());
+                try (PreparedStatement pstmt = conn.prepareStatement(sql)) {
+                    pstmt.setString(1, material.getTitle());
+                    pstmt.setString(2, material.getType());
+                    pstmt.setString(3, material.getResourceUrl());
+                    pstmt.setInt(4, material.getWeight());
+                    pstmt.setInt(5, material.getId());
+                    
+                    pstmt.executeUpdate();
+                }
+                // Push a weight change into every enrolled student's totals in one statement
+                int skillId = current != null ? current.getSkillId() : material.getSkillId();
+                boolean weightChanged = current != null && current.getWeight() != material.getWeight();
+                if (weightChanged) {
+                    readinessDAO.applyMaterialWeightChange(conn, skillId, material.getId(), material.getWeight() - current.getWeight());
+                    eventDAO.recordSkillSnapshot(conn, skillId);
+                }
+                // A replaced file moves its reference to the new blob
+                if (current != null && !Objects.equals(current.getResourceUrl(), material.getResourceUrl())) {
+                    uploadStore.releaseReference(conn, current.getResourceUrl());
+                    uploadStore.addReference(conn, material.getResourceUrl());
+                }
+                conn.commit();
+                invalidateCachedMaterials(skillId);
+                if (weightChanged) {
+                    ProgressIndex.getInstance().onWeightChanged(skillId, material.getId(), material.getWeight());
+                }
+                if (current != null) {
+                    SearchIndex.getInstance().onMaterialSaved(material.getId(), skillId, material.getTitle());
+                }
+            } catch (SQLException ex) {
+                conn.rollback();
+                throw ex;
+            }
         } catch (SQLException | ClassNotFoundException e) {
-            e.printStackTrace();
+            Log.error("MaterialDAO.updateMaterial failed", e);
         }
     }
 
@@ -114,11 +236,26 @@ public class MaterialDAO {
                 );
             }
         } catch (SQLException | ClassNotFoundException e) {
-            e.printStackTrace();
+            Log.error("MaterialDAO.getMaterialById failed", e);
         }
         return null;
     }
 
+    /** Locks the material row and returns its current values, or null if it does not exist. */
+    private Material lockMaterial(Connection conn, int materialId) throws SQLException {
+        try (PreparedStatement pstmt = conn.prepareStatement(
+                "SELECT id, skill_id, title, type, resource_url, weight FROM MATERIAL WHERE id = ? FOR UPDATE")) {
+            pstmt.setInt(1, materialId);
+            try (ResultSet rs = pstmt.executeQuery()) {
+                if (!rs.next()) {
+                    return null;
+                }
+                return new Material(rs.getInt("id"), rs.getInt("skill_id"), rs.getString("title"),
+                        rs.getString("type"), rs.getString("resource_url"), rs.getInt("weight"));
+            }
+        }
+    }
+
     public String deleteMaterial(int id) {
         String sqlDelProgress = "DELETE FROM STUDENT_PROGRESS WHERE material_id = ?";
         String sqlDelMaterial = "DELETE FROM MATERIAL WHERE id = ?";
@@ -128,6 +265,16 @@ public class MaterialDAO {
             conn = DBConnection.getConnection();
             conn.setAutoCommit(false); // Start Transaction
 
+            Material current = lockMaterial(conn, id);
+            int skillId = current != null ? current.getSkillId() : -1;
+
+            // Take the module out of every enrolled student's totals (needs the progress rows)
+            if (current != null) {
+                readinessDAO.applyMaterialRemoved(conn, skillId, id, current.getWeight());
+                eventDAO.recordSkillSnapshot(conn, skillId);
+                uploadStore.releaseReference(conn, current.getResourceUrl());
+            }
+
             // Delete Progress
             try (PreparedStatement pstmt = conn.prepareStatement(sqlDelProgress)) {
                 pstmt.setInt(1, id);
@@ -140,17 +287,21 @@ public class MaterialDAO {
             }
             
             conn.commit(); // Commit Transaction
+            if (skillId > 0) {
+                invalidateSkill(skillId);
+            }
+            SearchIndex.getInstance().onMaterialDeleted(id);
             return null; // Success (no error)
             
         } catch (SQLException | ClassNotFoundException e) {
-            e.printStackTrace();
+            Log.error("MaterialDAO.deleteMaterial failed", e);
             if (conn != null) {
-                try { conn.rollback(); } catch (SQLException ex) { ex.printStackTrace(); }
+                try { conn.rollback(); } catch (SQLException ex) { Log.error("MaterialDAO.deleteMaterial rollback failed", ex); }
             }
             return e.getMessage(); // Return specific error
         } finally {
             if (conn != null) {
-                try { conn.setAutoCommit(true); conn.close(); } catch (SQLException e) { e.printStackTrace(); }
+                try { conn.setAutoCommit(true); conn.close(); } catch (SQLException e) { Log.error("MaterialDAO.deleteMaterial could not release its connection", e); }
             }
         }
     }
@@ -0,0 +1,429 @@
+package dao;
+
+import model.DailyProgress;
+import util.DBConnection;
+import util.Log;
+
+import java.sql.Connection;
+import java.sql.Date;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.time.LocalDate;
+import java.time.YearMonth;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * History of progress changes.
+ *
+ * Every status change is appended to PROGRESS_EVENT (partitioned by month) and
+ * added to the per-course and per-student daily rollups in the same
+ * transaction as the change itself. The rollup rows also keep a snapshot of
+ * the READINESS totals (completed and total weight) at the end of the day.
+ * Everything that moves READINESS - status changes, enrollments, modules added,
+ * removed or reweighted, students deleted - writes the snapshot, so trend
+ * queries read past readiness directly from the rollups.
+ */
+public class ProgressEventDAO {
+
+    private static final String PARTITION_PREFIX = "p";
+    private static final String FUTURE_PARTITION = "p_future";
+    private static final int PARTITION_MONTHS_AHEAD = 2;
+
+    private static final String SNAPSHOT_UPDATE =
+            "ON DUPLICATE KEY UPDATE completed_weight = VALUES(completed_weight), total_weight = VALUES(total_weight)";
+
+    /**
+     * The day events are filed under. Taken from the JVM clock and bound as a
+     * parameter (never the database's CURRENT_DATE), so writes and the trend
+     * window agree even when the two run in different time zones.
+     */
+    private static Date today() {
+        return Date.valueOf(LocalDate.now());
+    }
+
+    /**
+     * Records one status change of a material. delta is +1 when it became
+     * completed and -1 when it was undone. Runs on the caller's transaction,
+     * after READINESS has been moved.
+     */
+    void recordStatusChange(Connection conn, int studentId, int materialId, int delta) throws SQLException {
+        Date today = today();
+        int completions = delta > 0 ? 1 : 0;
+        int reverts = delta < 0 ? 1 : 0;
+        String sqlEvent = "INSERT INTO PROGRESS_EVENT (event_day, student_id, skill_id, material_id, completed, weight_delta) " +
+                          "SELECT ?, ?, skill_id, id, ?, ? * weight FROM MATERIAL WHERE id = ?";
+        // Today's course row usually exists: move its counters and snapshot by the change
+        String sqlSkillUpdate = "UPDATE PROGRESS_DAILY_SKILL d JOIN MATERIAL m ON m.skill_id = d.skill_id " +
+                                "SET d.completions = d.completions + ?, d.reverts = d.reverts + ?, " +
+                                "d.weight_delta = d.weight_delta + ? * m.weight, d.completed_weight = d.completed_weight + ? * m.weight " +
+                                "WHERE m.id = ? AND d.day = ? AND d.completed_weight IS NOT NULL";
+        // First change of the day: the snapshot is taken from READINESS (which already includes this change).
+        // If another transaction inserted the row meanwhile, its snapshot cannot see this change, so add it.
+        String sqlSkillInsert = "INSERT INTO PROGRESS_DAILY_SKILL (skill_id, day, completions, reverts, weight_delta, completed_weight, total_weight) " +
+                                "SELECT m.skill_id, ?, ?, ?, ? * m.weight, " +
+                                "(SELECT COALESCE(SUM(completed_weight), 0) FROM READINESS WHERE skill_id = m.skill_id), " +
+                                "(SELECT COALESCE(SUM(total_weight), 0) FROM READINESS WHERE skill_id = m.skill_id) " +
+                                "FROM MATERIAL m WHERE m.id = ? " +
+                                "ON DUPLICATE KEY UPDATE completions = completions + VALUES(completions), " +
+                                "reverts = reverts + VALUES(reverts), " +
+                                "completed_weight = COALESCE(completed_weight + VALUES(weight_delta), VALUES(completed_weight)), " +
+                                "total_weight = COALESCE(total_weight, VALUES(total_weight)), " +
+                                "weight_delta = weight_delta + VALUES(weight_delta)";
+        String sqlStudent = "INSERT INTO PROGRESS_DAILY_STUDENT (student_id, skill_id, day, completions, reverts, weight_delta, completed_weight, total_weight) " +
+                            "SELECT ?, m.skill_id, ?, ?, ?, ? * m.weight, r.completed_weight, r.total_weight " +
+                            "FROM MATERIAL m LEFT JOIN READINESS r ON r.student_id = ? AND r.skill_id = m.skill_id WHERE m.id = ? " +
+                            "ON DUPLICATE KEY UPDATE completions = completions + VALUES(completions), " +
+                            "reverts = reverts + VALUES(reverts), weight_delta = weight_delta + VALUES(weight_delta), " +
+                            "completed_weight = VALUES(completed_weight), total_weight = VALUES(total_weight)";
+
+        try (PreparedStatement pstmt = conn.prepareStatement(sqlEvent)) {
+            pstmt.setDate(1, today);
+            pstmt.setInt(2, studentId);
+            pstmt.setInt(3, completions);
+            pstmt.setInt(4, delta);
+            pstmt.setInt(5, materialId);
+            pstmt.executeUpdate();
+        }
+        int updated;
+        try (PreparedStatement pstmt = conn.prepareStatement(sqlSkillUpdate)) {
+            pstmt.setInt(1, completions);
+            pstmt.setInt(2, reverts);
+            pstmt.setInt(3, delta);
+            pstmt.setInt(4, delta);
+            pstmt.setInt(5, materialId);
+            pstmt.setDate(6, today);
+            updated = pstmt.executeUpdate();
+        }
+        if (updated == 0) {
+            try (PreparedStatement pstmt = conn.prepareStatement(sqlSkillInsert)) {
+                pstmt.setDate(1, today);
+                pstmt.setInt(2, completions);
+                pstmt.setInt(3, reverts);
+                pstmt.setInt(4, delta);
+                pstmt.setInt(5, materialId);
+                pstmt.executeUpdate();
+            }
+        }
+        try (PreparedStatement pstmt = conn.prepareStatement(sqlStudent)) {
+            pstmt.setInt(1, studentId);
+            pstmt.setDate(2, today);
+            pstmt.setInt(3, completions);
+            pstmt.setInt(4, reverts);
+            pstmt.setInt(5, delta);
+            pstmt.setInt(6, studentId);
+            pstmt.setInt(7, materialId);
+            pstmt.executeUpdate();
+        }
+    }
+
+    /**
+     * Writes today's snapshot of the course totals and of every enrolled
+     * student's totals. Call after a change that moved READINESS for the whole
+     * course (module added, removed or reweighted), on the same transaction.
+     */
+    void recordSkillSnapshot(Connection conn, int skillId) throws SQLException {
+        String sqlSkill = "INSERT INTO PROGRESS_DAILY_SKILL (skill_id, day, completed_weight, total_weight) " +
+                          "SELECT ?, ?, COALESCE(SUM(completed_weight), 0), COALESCE(SUM(total_weight), 0) " +
+                          "FROM READINESS WHERE skill_id = ? " + SNAPSHOT_UPDATE;
+        String sqlStudents = "INSERT INTO PROGRESS_DAILY_STUDENT (student_id, skill_id, day, completed_weight, total_weight) " +
+                             "SELECT student_id, skill_id, ?, completed_weight, total_weight " +
+                             "FROM READINESS WHERE skill_id = ? " + SNAPSHOT_UPDATE;
+        Date today = today();
+        try (PreparedStatement pstmt = conn.prepareStatement(sqlSkill)) {
+            pstmt.setInt(1, skillId);
+            pstmt.setDate(2, today);
+            pstmt.setInt(3, skillId);
+            pstmt.executeUpdate();
+        }
+        try (PreparedStatement pstmt = conn.prepareStatement(sqlStudents)) {
+            pstmt.setDate(1, today);
+            pstmt.setInt(2, skillId);
+            pstmt.executeUpdate();
+        }
+    }
+
+    /** Writes today's snapshot after a student was enrolled in a course (same transaction). */
+    void recordEnrollment(Connection conn, int studentId, int skillId) throws SQLException {
+        String sqlSkill = "INSERT INTO PROGRESS_DAILY_SKILL (skill_id, day, completed_weight, total_weight) " +
+                          "SELECT ?, ?, COALESCE(SUM(completed_weight), 0), COALESCE(SUM(total_weight), 0) " +
+                          "FROM READINESS WHERE skill_id = ? " + SNAPSHOT_UPDATE;
+        String sqlStudent = "INSERT INTO PROGRESS_DAILY_STUDENT (student_id, skill_id, day, completed_weight, total_weight) " +
+                            "SELECT student_id, skill_id, ?, completed_weight, total_weight " +
+                            "FROM READINESS WHERE student_id = ? AND skill_id = ? " + SNAPSHOT_UPDATE;
+        Date today = today();
+        try (PreparedStatement pstmt = conn.prepareStatement(sqlSkill)) {
+            pstmt.setInt(1, skillId);
+            pstmt.setDate(2, today);
+            pstmt.setInt(3, skillId);
+            pstmt.executeUpdate();
+        }
+        try (PreparedStatement pstmt = conn.prepareStatement(sqlStudent)) {
+            pstmt.setDate(1, today);
+            pstmt.setInt(2, studentId);
+            pstmt.setInt(3, skillId);
+            pstmt.executeUpdate();
+        }
+    }
+
+    /**
+     * Removes the history of a deleted student and writes today's snapshot of
+     * each course they were in, now without them. Call after the student's
+     * READINESS rows are gone and before their ENROLLMENT rows are.
+     */
+    void deleteByStudent(Connection conn, int studentId) throws SQLException {
+        String sqlSkills = "INSERT INTO PROGRESS_DAILY_SKILL (skill_id, day, completed_weight, total_weight) " +
+                           "SELECT e.skill_id, ?, COALESCE(SUM(r.completed_weight), 0), COALESCE(SUM(r.total_weight), 0) " +
+                           "FROM ENROLLMENT e LEFT JOIN READINESS r ON r.skill_id = e.skill_id " +
+                           "WHERE e.student_id = ? GROUP BY e.skill_id " + SNAPSHOT_UPDATE;
+        try (PreparedStatement pstmt = conn.prepareStatement(sqlSkills)) {
+            pstmt.setDate(1, today());
+            pstmt.setInt(2, studentId);
+            pstmt.executeUpdate();
+        }
+        try (PreparedStatement pstmt = conn.prepareStatement("DELETE FROM PROGRESS_DAILY_STUDENT WHERE student_id = ?")) {
+            pstmt.setInt(1, studentId);
+            pstmt.executeUpdate();
+        }
+        try (PreparedStatement pstmt = conn.prepareStatement("DELETE FROM PROGRESS_EVENT WHERE student_id = ?")) {
+            pstmt.setInt(1, studentId);
+            pstmt.executeUpdate();
+        }
+    }
+
+    /** Removes the history of a deleted course. */
+    void deleteBySkill(Connection conn, int skillId) throws SQLException {
+        String[] sqls = {
+            "DELETE FROM PROGRESS_DAILY_SKILL WHERE skill_id = ?",
+            "DELETE FROM PROGRESS_DAILY_STUDENT WHERE skill_id = ?",
+            "DELETE FROM PROGRESS_EVENT WHERE skill_id = ?"
+        };
+        for (String sql : sqls) {
+            try (PreparedStatement pstmt = conn.prepareStatement(sql)) {
+                pstmt.setInt(1, skillId);
+                pstmt.executeUpdate();
+            }
+        }
+    }
+
+    /**
+     * Course trend for the last 'days' days (oldest first, one entry per day):
+     * completions per day and the readiness of the students enrolled at the
+     * time (completed weight over total weight) at the end of each day.
+     */
+    public List<DailyProgress> getSkillTrend(int skillId, int days) {
+        String sqlNow = "SELECT COALESCE(SUM(completed_weight), 0), COALESCE(SUM(total_weight), 0) FROM READINESS WHERE skill_id = ?";
+        String sqlBefore = "SELECT completed_weight, total_weight FROM PROGRESS_DAILY_SKILL " +
+                           "WHERE skill_id = ? AND day <= ? AND completed_weight IS NOT NULL ORDER BY day DESC LIMIT 1";
+        String sqlDaily = "SELECT day, completions, reverts, weight_delta, completed_weight, total_weight FROM PROGRESS_DAILY_SKILL " +
+                          "WHERE skill_id = ? AND day > ? ORDER BY day";
+        return queryTrend(sqlNow, sqlBefore, sqlDaily, days, skillId);
+    }
+
+    /** The same trend for one student in one course. */
+    public List<DailyProgress> getStudentTrend(int studentId, int skillId, int days) {
+        String sqlNow = "SELECT completed_weight, total_weight FROM READINESS WHERE student_id = ? AND skill_id = ?";
+        String sqlBefore = "SELECT completed_weight, total_weight FROM PROGRESS_DAILY_STUDENT " +
+                           "WHERE student_id = ? AND skill_id = ? AND day <= ? AND completed_weight IS NOT NULL ORDER BY day DESC LIMIT 1";
+        String sqlDaily = "SELECT day, completions, reverts, weight_delta, completed_weight, total_weight FROM PROGRESS_DAILY_STUDENT " +
+                          "WHERE student_id = ? AND skill_id = ? AND day > ? ORDER BY day";
+        return queryTrend(sqlNow, sqlBefore, sqlDaily, days, studentId, skillId);
+    }
+
+    private List<DailyProgress> queryTrend(String sqlNow, String sqlBefore, String sqlDaily, int days, int... keys) {
+        List<DailyProgress> trend = new ArrayList<>();
+        LocalDate first = today().toLocalDate().minusDays(days - 1);
+        Date beforeFirst = Date.valueOf(first.minusDays(1));
+        try (Connection conn = DBConnection.getConnection()) {
+            // Snapshot in effect when the window starts, if any
+            long[] before = null;
+            try (PreparedStatement pstmt = conn.prepareStatement(sqlBefore)) {
+                for (int i = 0; i < keys.length; i++) {
+                    pstmt.setInt(i + 1, keys[i]);
+                }
+                pstmt.setDate(keys.length + 1, beforeFirst);
+                try (ResultSet rs = pstmt.executeQuery()) {
+                    if (rs.next()) {
+                        before = new long[] { rs.getLong(1), rs.getLong(2) };
+                    }
+                }
+            }
+
+            // completions, reverts, weight delta, completed and total weight (-1 when the day has no snapshot)
+            Map<LocalDate, long[]> rows = new HashMap<>();
+            try (PreparedStatement pstmt = conn.prepareStatement(sqlDaily)) {
+                for (int i = 0; i < keys.length; i++) {
+                    pstmt.setInt(i + 1, keys[i]);
+                }
+                pstmt.setDate(keys.length + 1, beforeFirst);
+                try (ResultSet rs = pstmt.executeQuery()) {
+                    while (rs.next()) {
+                        long completed = rs.getLong("completed_weight");
+                        boolean hasSnapshot = !rs.wasNull();
+                        long total = rs.getLong("total_weight");
+                        rows.put(rs.getDate("day").toLocalDate(), new long[] {
+                            rs.getInt("completions"), rs.getInt("reverts"), rs.getLong("weight_delta"),
+                            hasSnapshot ? completed : -1, hasSnapshot ? total : -1
+                        });
+                    }
+                }
+            }
+
+            // Forward: each day ends with its own snapshot or the last one before it
+            long[][] day = new long[days][];
+            long[] completed = new long[days];
+            long[] total = new long[days];
+            boolean[] known = new boolean[days];
+            long[] state = before;
+            int firstKnown = state != null ? 0 : -1;
+            for (int i = 0; i < days; i++) {
+                day[i] = rows.getOrDefault(first.plusDays(i), new long[] { 0, 0, 0, -1, -1 });
+                if (day[i][3] >= 0) {
+                    state = new long[] { day[i][3], day[i][4] };
+                    if (firstKnown < 0) {
+                        firstKnown = i;
+                    }
+                }
+                if (state != null) {
+                    completed[i] = state[0];
+                    total[i] = state[1];
+                    known[i] = true;
+                }
+            }
+
+            // Days older than any snapshot (history recorded before snapshots were kept):
+            // walk back from the first known state, or from READINESS now, by the weight gained
+            if (firstKnown != 0) {
+                long c;
+                long t;
+                int from;
+                if (firstKnown > 0) {
+                    c = completed[firstKnown] - day[firstKnown][2];
+                    t = total[firstKnown];
+                    from = firstKnown - 1;
+                } else {
+                    long[] now = queryNow(conn, sqlNow, keys);
+                    c = now[0];
+                    t = now[1];
+                    from = days - 1;
+                }
+                for (int i = from; i >= 0; i--) {
+                    completed[i] = Math.max(0, c);
+                    total[i] = t;
+                    known[i] = true;
+                    c -= day[i][2];
+                }
+            }
+
+            for (int i = 0; i < days; i++) {
+                double readiness = known[i] && total[i] > 0 ? completed[i] * 100.0 / total[i] : 0;
+                trend.add(new DailyProgress(first.plusDays(i), (int) day[i][0], (int) day[i][1], day[i][2], readiness));
+            }
+        } catch (SQLException | ClassNotFoundException e) {
+            Log.error("ProgressEventDAO.queryTrend failed", e);
+        }
+        return trend;
+    }
+
+    private long[] queryNow(Connection conn, String sqlNow, int... keys) throws SQLException {
+        try (PreparedStatement pstmt = conn.prepareStatement(sqlNow)) {
+            for (int i = 0; i < keys.length; i++) {
+                pstmt.setInt(i + 1, keys[i]);
+            }
+            try (ResultSet rs = pstmt.executeQuery()) {
+                if (rs.next()) {
+                    return new long[] { rs.getLong(1), rs.getLong(2) };
+                }
+            }
+        }
+        return new long[2];
+    }
+
+    /**
+     * Creates the coming months' partitions now and then once a day, so a
+     * long-running server never starts writing into the catch-all partition.
+     */
+    public static void schedulePartitionMaintenance() {
+        ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "progress-partitions");
+            t.setDaemon(true);
+            return t;
+        });
+        ProgressEventDAO dao = new ProgressEventDAO();
+        scheduler.scheduleWithFixedDelay(() -> dao.ensurePartitions(PARTITION_MONTHS_AHEAD), 0, 1, TimeUnit.DAYS);
+    }
+
+    /**
+     * Makes sure PROGRESS_EVENT has a partition for the current month and the
+     * next 'monthsAhead' months by splitting them off the catch-all partition.
+     */
+    public void ensurePartitions(int monthsAhead) {
+        try (Connection conn = DBConnection.getConnection()) {
+            Set<String> existing = getPartitionNames(conn);
+            if (!existing.contains(FUTURE_PARTITION)) {
+                return; // table not partitioned the way we expect; leave it alone
+            }
+            YearMonth month = YearMonth.now();
+            for (int i = 0; i <= monthsAhead; i++, month = month.plusMonths(1)) {
+                String name = partitionName(month);
+                if (existing.contains(name)) continue;
+                String sql = "ALTER TABLE PROGRESS_EVENT REORGANIZE PARTITION " + FUTURE_PARTITION + " INTO (" +
+                             "PARTITION " + name + " VALUES LESS THAN ('" + month.plusMonths(1).atDay(1) + "'), " +
+                             "PARTITION " + FUTURE_PARTITION + " VALUES LESS THAN (MAXVALUE))";
+                try (Statement stmt = conn.createStatement()) {
+                    stmt.executeUpdate(sql);
+                }
+            }
+        } catch (SQLException | ClassNotFoundException e) {
+            Log.error("ProgressEventDAO.ensurePartitions failed", e);
+        }
+    }
+
+    /**
+     * Drops raw events from months before 'keepFrom' by dropping whole partitions.
+     * The daily rollups are kept, so trends are not affected.
+     *
+     * @return number of partitions dropped
+     */
+    public int dropEventsBefore(YearMonth keepFrom) {
+        int dropped = 0;
+        try (Connection conn = DBConnection.getConnection()) {
+            for (String name : getPartitionNames(conn)) {
+                if (name.equals(FUTURE_PARTITION) || name.compareTo(partitionName(keepFrom)) >= 0) continue;
+                try (Statement stmt = conn.createStatement()) {
+                    stmt.executeUpdate("ALTER TABLE PROGRESS_EVENT DROP PARTITION " + name);
+                    dropped++;
+                }
+            }
+        } catch (SQLException | ClassNotFoundException e) {
+            Log.error("ProgressEventDAO.dropEventsBefore failed", e);
+        }
+        return dropped;
+    }
+
+    private static String partitionName(YearMonth month) {
+        return PARTITION_PREFIX + String.format("%04d%02d", month.getYear(), month.getMonthValue());
+    }
+
+    private Set<String> getPartitionNames(Connection conn) throws SQLException {
+        Set<String> names = new HashSet<>();
+        String sql = "SELECT PARTITION_NAME FROM INFORMATION_SCHEMA.PARTITIONS " +
+                     "WHERE TABLE_SCHEMA = DATABASE() AND UPPER(TABLE_NAME) = 'PROGRESS_EVENT' AND PARTITION_NAME IS NOT NULL";
+        try (PreparedStatement pstmt = conn.prepareStatement(sql);
+             ResultSet rs = pstmt.executeQuery()) {
+            while (rs.next()) {
+                names.add(rs.getString(1));
+            }
+        }
+        return names;
+    }
+}
@@ -0,0 +1,463 @@
+package dao;
+
+import util.DBConnection;
+import util.Log;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.IntConsumer;
+
+/**
+ * In-memory completion index: for every loaded skill, each enrolled student's
+ * progress is one bitmask over the skill's materials (in material id order)
+ * plus a running completed-weight sum. Weights live in a primitive int[], so
+ * readiness, completed counts and "next module" lookups allocate nothing.
+ *
+ * A student row is 16 bytes for up to 64 modules and the table keeps at least
+ * twice as many rows as students, so a skill costs roughly 32-40 bytes per
+ * enrolled student and millions of enrollments fit in a few tens of megabytes.
+ *
+ * Skills are loaded from the database on first use. The DAOs report committed
+ * changes through the package-private on* methods; a load that overlapped a
+ * change is thrown away and retried, so the index never keeps stale rows.
+ */
+public class ProgressIndex {
+
+    private static final ProgressIndex INSTANCE = new ProgressIndex();
+    private static final int LOAD_ATTEMPTS = 3;
+
+    private final Map<Integer, SkillProgress> skills = new ConcurrentHashMap<>();
+    // material_id -> skill_id for the loaded skills, to route status changes
+    private final Map<Integer, Integer> skillOfMaterial = new ConcurrentHashMap<>();
+    // Bumped after every reported change; loads that see it move are not installed
+    private final AtomicLong modCount = new AtomicLong();
+
+    private ProgressIndex() {}
+
+    public static ProgressIndex getInstance() {
+        return INSTANCE;
+    }
+
+    /**
+     * Completion bitmasks of one skill. Student rows live in an open-addressing
+     * table: keys[slot] is the student id, bits[slot * words ...] the mask and
+     * completed[slot] the completed weight. All access is synchronized on this,
+     * except weights(): a weight change replaces that array instead of writing
+     * into it, so callers can read it without the lock.
+     */
+    public static final class SkillProgress {
+        private static final int EMPTY = Integer.MIN_VALUE;
+
+        private final int skillId;
+        private final int[] materialIds; // ascending
+        private volatile int[] weights;  // parallel to materialIds; copy-on-write
+        private int totalWeight;
+        private final int words;         // longs per student mask
+        private final AtomicLong version = new AtomicLong();
+
+        private int[] keys;
+        private long[] bits;
+        private int[] completed;
+        private int size;
+
+        SkillProgress(int skillId, int[] materialIds, int[] weights, int expectedStudents) {
+            this.skillId = skillId;
+            this.materialIds = materialIds;
+            this.weights = weights;
+            int sum = 0;
+            for (int w : weights) {
+                sum += w;
+            }
+            this.totalWeight = sum;
+            this.words = Math.max(1, (materialIds.length + 63) >>> 6);
+            int capacity = 16;
+            while (capacity < expectedStudents * 2) {
+                capacity <<= 1;
+            }
+            allocate(capacity);
+        }
+
+        private void allocate(int capacity) {
+            keys = new int[capacity];
+            Arrays.fill(keys, EMPTY);
+            bits = new long[capacity * words];
+            completed = new int[capacity];
+            size = 0;
+        }
+
+        private static int hash(int key) {
+            int h = key * 0x9E3779B9;
+            return h ^ (h >>> 16);
+        }
+
+        /** Slot of the student, or -1. */
+        private int find(int studentId) {
+            int mask = keys.length - 1;
+            for (int slot = hash(studentId) & mask; ; slot = (slot + 1) & mask) {
+                int k = keys[slot];
+                if (k == studentId) return slot;
+                if (k == EMPTY) return -1;
+            }
+        }
+
+        /** Slot of the student, adding an empty row if needed. */
+        private int insert(int studentId) {
+            int slot = find(studentId);
+            if (slot >= 0) return slot;
+            if ((size + 1) * 4 > keys.length * 3) {
+                grow();
+            }
+            int mask = keys.length - 1;
+            slot = hash(studentId) & mask;
+            while (keys[slot] != EMPTY) {
+                slot = (slot + 1) & mask;
+            }
+            keys[slot] = studentId;
+            size++;
+            return slot;
+        }
+
+        private void grow() {
+            int[] oldKeys = keys;
+            long[] oldBits = bits;
+            int[] oldCompleted = completed;
+            allocate(oldKeys.length * 2);
+            for (int i = 0; i < oldKeys.length; i++) {
+                if (oldKeys[i] != EMPTY) {
+                    int slot = insert(oldKeys[i]);
+                    System.arraycopy(oldBits, i * words, bits, slot * words, words);
+                    completed[slot] = oldCompleted[i];
+                }
+            }
+        }
+
+        /**
+         * Sets one material's bit for the student; returns true if it changed.
+         * Students who are not enrolled are ignored.
+         */
+        synchronized boolean set(int studentId, int materialId, boolean done) {
+            int pos = Arrays.binarySearch(materialIds, materialId);
+            if (pos < 0) return false;
+            int slot = find(studentId);
+            if (slot < 0) return false;
+            int word = slot * words + (pos >>> 6);
+            long bit = 1L << (pos & 63);
+            boolean wasDone = (bits[word] & bit) != 0;
+            if (wasDone == done) return false;
+            if (done) {
+                bits[word] |= bit;
+                completed[slot] += weights[pos];
+            } else {
+                bits[word] &= ~bit;
+                completed[slot] -= weights[pos];
+            }
+            version.incrementAndGet();
+            return true;
+        }
+
+        /**
+         * Changes one material's weight without reloading: the total moves by the
+         * difference and so does the completed weight of every student whose bit is set.
+         */
+        synchronized boolean setWeight(int materialId, int weight) {
+            int pos = Arrays.binarySearch(materialIds, materialId);
+            if (pos < 0 || weights[pos] == weight) return false;
+            int delta = weight - weights[pos];
+            int[] changed = weights.clone();
+            changed[pos] = weight;
+            weights = changed;
+            totalWeight += delta;
+            int word = pos >>> 6;
+            long bit = 1L << (pos & 63);
+            for (int slot = 0; slot < keys.length; slot++) {
+                if (keys[slot] != EMPTY && (bits[slot * words + word] & bit) != 0) {
+                    completed[slot] += delta;
+                }
+            }
+            version.incrementAndGet();
+            return true;
+        }
+
+        synchronized void addStudent(int studentId) {
+            if (find(studentId) < 0) {
+                insert(studentId);
+                version.incrementAndGet();
+            }
+        }
+
+        synchronized boolean contains(int studentId) {
+            return find(studentId) >= 0;
+        }
+
+        public int getSkillId() { return skillId; }
+        public int getModuleCount() { return materialIds.length; }
+        public synchronized int getTotalWeight() { return totalWeight; }
+
+        /** Changes whenever any student's progress in this skill changes. */
+        public long getVersion() { return version.get(); }
+
+        public synchronized int getStudentCount() { return size; }
+
+        /** Completed weight of the student, or -1 if the student is not enrolled. */
+        public synchronized int getCompletedWeight(int studentId) {
+            int slot = find(studentId);
+            return slot >= 0 ? completed[slot] : -1;
+        }
+
+        public synchronized int getCompletedCount(int studentId) {
+            int slot = find(studentId);
+            if (slot < 0) return 0;
+            int count = 0;
+            for (int w = slot * words, end = w + words; w < end; w++) {
+                count += Long.bitCount(bits[w]);
+            }
+            return count;
+        }
+
+        /** Weighted readiness in percent (0 if not enrolled or no weight). */
+        public synchronized double getReadiness(int studentId) {
+            int slot = find(studentId);
+            return slot >= 0 && totalWeight > 0 ? completed[slot] * 100.0 / totalWeight : 0;
+        }
+
+        /** Id of the first material (in material order) the student has not completed, or -1. */
+        public synchronized int getNextIncomplete(int studentId) {
+            int slot = find(studentId);
+            if (slot < 0) return materialIds.length > 0 ? materialIds[0] : -1;
+            int base = slot * words;
+            for (int w = 0; w < words; w++) {
+                long open = ~bits[base + w];
+                if (open != 0) {
+                    int pos = (w << 6) + Long.numberOfTrailingZeros(open);
+                    return pos < materialIds.length ? materialIds[pos] : -1;
+                }
+            }
+            return -1;
+        }
+
+        public synchronized boolean isCompleted(int studentId, int materialId) {
+            int slot = find(studentId);
+            int pos = Arrays.binarySearch(materialIds, materialId);
+            if (slot < 0 || pos < 0) return false;
+            return (bits[slot * words + (pos >>> 6)] & (1L << (pos & 63))) != 0;
+        }
+
+        /**
+         * Passes the position (in material order) of every material the student
+         * has not completed to the action. Returns false if the student is not enrolled.
+         */
+        synchronized boolean forEachIncomplete(int studentId, IntConsumer action) {
+            int slot = find(studentId);
+            if (slot < 0) return false;
+            int base = slot * words;
+            for (int pos = 0; pos < materialIds.length; pos++) {
+                if ((bits[base + (pos >>> 6)] & (1L << (pos & 63))) == 0) {
+                    action.accept(pos);
+                }
+            }
+            return true;
+        }
+
+        /** Consistent copy of the student rows, for analytics that run without holding the lock. */
+        synchronized Snapshot snapshot() {
+            return new Snapshot(keys.clone(), bits.clone(), completed.clone(), weights, totalWeight, size, version.get());
+        }
+
+        int[] materialIds() { return materialIds; }
+        /** Current weights; never modified, so safe to read without the lock. */
+        int[] weights() { return weights; }
+        int words() { return words; }
+
+        /**
+         * Copies every student's completed weight into out (which must hold
+         * getStudentCount() entries) and returns the number written.
+         */
+        public synchronized int copyCompletedWeights(int[] out) {
+            int n = 0;
+            for (int i = 0; i < keys.length && n < out.length; i++) {
+                if (keys[i] != EMPTY) out[n++] = completed[i];
+            }
+            return n;
+        }
+    }
+
+    /** Student rows of one skill at one version (see SkillProgress.snapshot). */
+    static final class Snapshot {
+        final int[] keys;
+        final long[] bits;
+        final int[] completed;
+        final int[] weights;
+        final int totalWeight;
+        final int students;
+        final long version;
+
+        Snapshot(int[] keys, long[] bits, int[] completed, int[] weights, int totalWeight, int students, long version) {
+            this.keys = keys;
+            this.bits = bits;
+            this.completed = completed;
+            this.weights = weights;
+            this.totalWeight = totalWeight;
+            this.students = students;
+            this.version = version;
+        }
+
+        boolean isOccupied(int slot) {
+            return keys[slot] != SkillProgress.EMPTY;
+        }
+    }
+
+    /** Progress index of the skill, loading it from the database on first use; null if loading fails. */
+    public SkillProgress getSkill(int skillId) {
+        SkillProgress sp = skills.get(skillId);
+        if (sp != null) {
+            return sp;
+        }
+        for (int attempt = 1; attempt <= LOAD_ATTEMPTS; attempt++) {
+            long seen = modCount.get();
+            try {
+                sp = load(skillId);
+            } catch (SQLException | ClassNotFoundException e) {
+                Log.error("Loading progress of skill " + skillId + " failed", e);
+                return null;
+            }
+            // Notifications run under the same lock, so none can slip in between the check and the put
+            synchronized (this) {
+                if (modCount.get() == seen) {
+                    SkillProgress existing = skills.get(skillId);
+                    if (existing != null) {
+                        return existing;
+                    }
+                    // Route status changes before the skill becomes visible
+                    for (int id : sp.materialIds) {
+                        skillOfMaterial.put(id, skillId);
+                    }
+                    skills.put(skillId, sp);
+                    return sp;
+                }
+            }
+        }
+        // Changes kept racing the load; answer from it without keeping it
+        return sp;
+    }
+
+    public double getReadiness(int studentId, int skillId) {
+        SkillProgress sp = getSkill(skillId);
+        return sp != null ? sp.getReadiness(studentId) : 0;
+    }
+
+    public int getNextIncomplete(int studentId, int skillId) {
+        SkillProgress sp = getSkill(skillId);
+        return sp != null ? sp.getNextIncomplete(studentId) : -1;
+    }
+
+    private SkillProgress load(int skillId) throws SQLException, ClassNotFoundException {
+        String sqlMaterials = "SELECT id, weight FROM MATERIAL WHERE skill_id = ? ORDER BY id";
+        String sqlEnrolled = "SELECT student_id FROM ENROLLMENT WHERE skill_id = ?";
+        String sqlCompleted = "SELECT sp.student_id, sp.material_id FROM STUDENT_PROGRESS sp " +
+                              "JOIN MATERIAL m ON m.id = sp.material_id " +
+                              "WHERE m.skill_id = ? AND sp.status = 'Completed'";
+        try (Connection conn = DBConnection.getConnection()) {
+            List<int[]> materials = new ArrayList<>();
+            try (PreparedStatement pstmt = conn.prepareStatement(sqlMaterials)) {
+                pstmt.setInt(1, skillId);
+                try (ResultSet rs = pstmt.executeQuery()) {
+                    while (rs.next()) {
+                        materials.add(new int[] { rs.getInt(1), rs.getInt(2) });
+                    }
+                }
+            }
+            int[] ids = new int[materials.size()];
+            int[] weights = new int[materials.size()];
+            for (int i = 0; i < ids.length; i++) {
+                ids[i] = materials.get(i)[0];
+                weights[i] = materials.get(i)[1];
+            }
+
+            int[] students = new int[64];
+            int count = 0;
+            try (PreparedStatement pstmt = conn.prepareStatement(sqlEnrolled)) {
+                pstmt.setInt(1, skillId);
+                try (ResultSet rs = pstmt.executeQuery()) {
+                    while (rs.next()) {
+                        if (count == students.length) students = Arrays.copyOf(students, count * 2);
+                        students[count++] = rs.getInt(1);
+                    }
+                }
+            }
+
+            SkillProgress sp = new SkillProgress(skillId, ids, weights, count);
+            synchronized (sp) {
+                for (int i = 0; i < count; i++) {
+                    sp.insert(students[i]);
+                }
+            }
+            try (PreparedStatement pstmt = conn.prepareStatement(sqlCompleted)) {
+                pstmt.setInt(1, skillId);
+                try (ResultSet rs = pstmt.executeQuery()) {
+                    while (rs.next()) {
+                        sp.set(rs.getInt(1), rs.getInt(2), true);
+                    }
+                }
+            }
+            return sp;
+        }
+    }
+
+    // --- Change notifications from the DAOs (called after commit) ---
+    // Synchronized on the index, like the install step of getSkill, so a change
+    // either reaches an installed skill or makes the load in progress retry.
+
+    synchronized void onStatusChanged(int studentId, int materialId, boolean completed) {
+        modCount.incrementAndGet();
+        Integer skillId = skillOfMaterial.get(materialId);
+        SkillProgress sp = skillId != null ? skills.get(skillId) : null;
+        if (sp != null) {
+            sp.set(studentId, materialId, completed);
+        }
+    }
+
+    synchronized void onEnrolled(int studentId, int skillId) {
+        modCount.incrementAndGet();
+        SkillProgress sp = skills.get(skillId);
+        if (sp != null) {
+            sp.addStudent(studentId);
+        }
+    }
+
+    /** A material's weight changed; adjusts the loaded skill in place instead of reloading it. */
+    synchronized void onWeightChanged(int skillId, int materialId, int weight) {
+        modCount.incrementAndGet();
+        SkillProgress sp = skills.get(skillId);
+        if (sp != null) {
+            sp.setWeight(materialId, weight);
+        }
+    }
+
+    /** Materials of the skill were added or removed (or it was deleted); reload on next use. */
+    synchronized void invalidateSkill(int skillId) {
+        modCount.incrementAndGet();
+        SkillProgress sp = skills.remove(skillId);
+        if (sp != null) {
+            for (int id : sp.materialIds) {
+                skillOfMaterial.remove(id, skillId);
+            }
+        }
+    }
+
+    synchronized void onStudentDeleted(int studentId) {
+        modCount.incrementAndGet();
+        for (SkillProgress sp : skills.values()) {
+            if (sp.contains(studentId)) {
+                invalidateSkill(sp.getSkillId());
+            }
+        }
+    }
+}
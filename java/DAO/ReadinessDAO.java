@@ -0,0 +1,223 @@
+package dao;
+
+import model.SkillReadiness;
+import util.DBConnection;
+import util.Log;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * READINESS holds one row per enrollment with completed/total material counts
+ * and weights, so pages read readiness by primary key instead of joining
+ * STUDENT_PROGRESS and MATERIAL on every request.
+ *
+ * The other DAOs keep it in sync inside their own transactions through the
+ * package-private methods below. rebuildAll() recomputes it from scratch.
+ */
+public class ReadinessDAO {
+
+    // Aggregates per enrollment; callers append a WHERE clause (or none) and the GROUP BY
+    private static final String AGGREGATE_SELECT =
+            "SELECT e.student_id, e.skill_id, " +
+            "COALESCE(SUM(sp.status = 'Completed'), 0), " +
+            "COUNT(m.id), " +
+            "COALESCE(SUM(CASE WHEN sp.status = 'Completed' THEN m.weight ELSE 0 END), 0), " +
+            "COALESCE(SUM(m.weight), 0) " +
+            "FROM ENROLLMENT e " +
+            "LEFT JOIN MATERIAL m ON m.skill_id = e.skill_id " +
+            "LEFT JOIN STUDENT_PROGRESS sp ON sp.material_id = m.id AND sp.student_id = e.student_id ";
+    private static final String AGGREGATE_GROUP_BY = "GROUP BY e.student_id, e.skill_id";
+
+    private static final String UPSERT_PREFIX =
+            "INSERT INTO READINESS (student_id, skill_id, completed_count, total_count, completed_weight, total_weight) ";
+    private static final String UPSERT_SUFFIX =
+            " ON DUPLICATE KEY UPDATE completed_count = VALUES(completed_count), total_count = VALUES(total_count), " +
+            "completed_weight = VALUES(completed_weight), total_weight = VALUES(total_weight)";
+
+    public SkillReadiness getReadiness(int studentId, int skillId) {
+        String sql = "SELECT skill_id, completed_count, total_count, completed_weight, total_weight " +
+                     "FROM READINESS WHERE student_id = ? AND skill_id = ?";
+        try (Connection conn = DBConnection.getConnection();
+             PreparedStatement pstmt = conn.prepareStatement(sql)) {
+            pstmt.setInt(1, studentId);
+            pstmt.setInt(2, skillId);
+            try (ResultSet rs = pstmt.executeQuery()) {
+                if (rs.next()) {
+                    return mapRow(rs);
+                }
+            }
+        } catch (SQLException | ClassNotFoundException e) {
+            Log.error("ReadinessDAO.getReadiness failed", e);
+        }
+        return null;
+    }
+
+    /** Readiness for every course the student is enrolled in, keyed by skill_id. */
+    public Map<Integer, SkillReadiness> getReadinessByStudent(int studentId) {
+        Map<Integer, SkillReadiness> map = new LinkedHashMap<>();
+        String sql = "SELECT skill_id, completed_count, total_count, completed_weight, total_weight " +
+                     "FROM READINESS WHERE student_id = ? ORDER BY skill_id";
+        try (Connection conn = DBConnection.getConnection();
+             PreparedStatement pstmt = conn.prepareStatement(sql)) {
+            pstmt.setInt(1, studentId);
+            try (ResultSet rs = pstmt.executeQuery()) {
+                while (rs.next()) {
+                    SkillReadiness r = mapRow(rs);
+                    map.put(r.getSkillId(), r);
+                }
+            }
+        } catch (SQLException | ClassNotFoundException e) {
+            Log.error("ReadinessDAO.getReadinessByStudent failed", e);
+        }
+        return map;
+    }
+
+    static SkillReadiness mapRow(ResultSet rs) throws SQLException {
+        return new SkillReadiness(
+            rs.getInt("skill_id"),
+            rs.getInt("completed_count"),
+            rs.getInt("total_count"),
+            rs.getLong("completed_weight"),
+            rs.getLong("total_weight")
+        );
+    }
+
+    /**
+     * Adjusts the completed totals after one progress row changed status.
+     * delta is +1 when the material became completed and -1 when it was undone.
+     */
+    void applyCompletionChange(Connection conn, int studentId, int materialId, int delta) throws SQLException {
+        String sql = "UPDATE READINESS r JOIN MATERIAL m ON m.skill_id = r.skill_id " +
+                     "SET r.completed_count = r.completed_count + ?, " +
+                     "r.completed_weight = r.completed_weight + ? * m.weight " +
+                     "WHERE r.student_id = ? AND m.id = ?";
+        try (PreparedStatement pstmt = conn.prepareStatement(sql)) {
+            pstmt.setInt(1, delta);
+            pstmt.setInt(2, delta);
+            pstmt.setInt(3, studentId);
+            pstmt.setInt(4, materialId);
+            pstmt.executeUpdate();
+        }
+    }
+
+    /** Recomputes the row of one enrollment (after enrolling). */
+    void refreshEnrollment(Connection conn, int studentId, int skillId) throws SQLException {
+        String sql = UPSERT_PREFIX + AGGREGATE_SELECT +
+                     "WHERE e.student_id = ? AND e.skill_id = ? " + AGGREGATE_GROUP_BY + UPSERT_SUFFIX;
+        try (PreparedStatement pstmt = conn.prepareStatement(sql)) {
+            pstmt.setInt(1, studentId);
+            pstmt.setInt(2, skillId);
+            pstmt.executeUpdate();
+        }
+    }
+
+    // Material changes are applied to all of a skill's rows as one set-based UPDATE
+    // (no per-student work, no recomputation from STUDENT_PROGRESS)
+
+    /** A new material: every enrolled student gets one more module and its weight. */
+    void applyMaterialAdded(Connection conn, int skillId, int weight) throws SQLException {
+        String sql = "UPDATE READINESS SET total_count = total_count + 1, total_weight = total_weight + ? WHERE skill_id = ?";
+        try (PreparedStatement pstmt = conn.prepareStatement(sql)) {
+            pstmt.setInt(1, weight);
+            pstmt.setInt(2, skillId);
+            pstmt.executeUpdate();
+        }
+    }
+
+    /** A material's weight changed by delta: totals move for everyone, completed weight for those who finished it. */
+    void applyMaterialWeightChange(Connection conn, int skillId, int materialId, int delta) throws SQLException {
+        String sql = "UPDATE READINESS r " +
+                     "LEFT JOIN STUDENT_PROGRESS sp ON sp.student_id = r.student_id AND sp.material_id = ? AND sp.status = 'Completed' " +
+                     "SET r.total_weight = r.total_weight + ?, " +
+                     "r.completed_weight = r.completed_weight + IF(sp.id IS NULL, 0, ?) " +
+                     "WHERE r.skill_id = ?";
+        try (PreparedStatement pstmt = conn.prepareStatement(sql)) {
+            pstmt.setInt(1, materialId);
+            pstmt.setInt(2, delta);
+            pstmt.setInt(3, delta);
+            pstmt.setInt(4, skillId);
+            pstmt.executeUpdate();
+        }
+    }
+
+    /** A material is being deleted; call before its STUDENT_PROGRESS rows are removed. */
+    void applyMaterialRemoved(Connection conn, int skillId, int materialId, int weight) throws SQLException {
+        String sql = "UPDATE READINESS r " +
+                     "LEFT JOIN STUDENT_PROGRESS sp ON sp.student_id = r.student_id AND sp.material_id = ? AND sp.status = 'Completed' " +
+                     "SET r.total_count = r.total_count - 1, " +
+                     "r.total_weight = r.total_weight - ?, " +
+                     "r.completed_count = r.completed_count - IF(sp.id IS NULL, 0, 1), " +
+                     "r.completed_weight = r.completed_weight - IF(sp.id IS NULL, 0, ?) " +
+                     "WHERE r.skill_id = ?";
+        try (PreparedStatement pstmt = conn.prepareStatement(sql)) {
+            pstmt.setInt(1, materialId);
+            pstmt.setInt(2, weight);
+            pstmt.setInt(3, weight);
+            pstmt.setInt(4, skillId);
+            pstmt.executeUpdate();
+        }
+    }
+
+    void deleteByStudent(Connection conn, int studentId) throws SQLException {
+        try (PreparedStatement pstmt = conn.prepareStatement("DELETE FROM READINESS WHERE student_id = ?")) {
+            pstmt.setInt(1, studentId);
+            pstmt.executeUpdate();
+        }
+    }
+
+    void deleteBySkill(Connection conn, int skillId) throws SQLException {
+        try (PreparedStatement pstmt = conn.prepareStatement("DELETE FROM READINESS WHERE skill_id = ?")) {
+            pstmt.setInt(1, skillId);
+            pstmt.executeUpdate();
+        }
+    }
+
+    /**
+     * Throws away and recomputes every row from ENROLLMENT, MATERIAL and
+     * STUDENT_PROGRESS in one transaction. Use it to repair the table.
+     *
+     * @return number of rows written, or -1 if the rebuild failed
+     */
+    public int rebuildAll() {
+        String sqlInsert = UPSERT_PREFIX + AGGREGATE_SELECT + AGGREGATE_GROUP_BY;
+        try (Connection conn = DBConnection.getConnection()) {
+            conn.setAutoCommit(false);
+            try {
+                try (PreparedStatement pstmt = conn.prepareStatement("DELETE FROM READINESS")) {
+                    pstmt.executeUpdate();
+                }
+                int rows;
+                try (PreparedStatement pstmt = conn.prepareStatement(sqlInsert)) {
+                    rows = pstmt.executeUpdate();
+                }
+                conn.commit();
+                return rows;
+            } catch (SQLException ex) {
+                conn.rollback();
+                throw ex;
+            }
+        } catch (SQLException | ClassNotFoundException e) {
+            Log.error("ReadinessDAO.rebuildAll failed", e);
+            return -1;
+        }
+    }
+
+    // Rebuild command: java -cp "out;lib/*" dao.ReadinessDAO
+    public static void main(String[] args) {
+        try {
+            int rows = new ReadinessDAO().rebuildAll();
+            if (rows < 0) {
+                System.out.println("Readiness rebuild failed.");
+            } else {
+                System.out.println("Readiness rebuilt: " + rows + " rows.");
+            }
+        } finally {
+            DBConnection.shutdown();
+        }
+    }
+}
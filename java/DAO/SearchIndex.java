@@ -0,0 +1,459 @@
+package dao;
+
+import model.SearchHit;
+import model.Skill;
+import util.DBConnection;
+import util.Log;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Objects;
+import java.util.PriorityQueue;
+import java.util.Set;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * In-memory trigram index over student names and emails, course names and
+ * material titles, for type-ahead search.
+ *
+ * Every searchable field is lowercased and cut into trigrams; each trigram maps
+ * to the sorted list of documents containing it. Word starts also get one- and
+ * two-character grams, so short queries work as word prefixes. A query of three
+ * or more characters intersects the posting lists of its trigrams (smallest
+ * first) and checks the few survivors with a real substring test, so the cost
+ * depends on the number of matches, not on the number of students.
+ *
+ * The index is loaded from the database on first use. The DAOs report committed
+ * changes through the package-private on* methods; those block while a load is
+ * running, so nothing committed during the load is lost.
+ */
+public class SearchIndex {
+
+    private static final SearchIndex INSTANCE = new SearchIndex();
+    private static final char WORD_START = '\u0000';
+
+    // Lowest score at the head; on equal scores the later type/id is dropped first
+    private static final Comparator<SearchHit> HEAP_ORDER =
+            Comparator.comparingDouble(SearchHit::getScore)
+                      .thenComparing(Comparator.comparing(SearchHit::getType).reversed())
+                      .thenComparing(Comparator.comparingInt(SearchHit::getId).reversed());
+
+    private static final SearchHit.Type[] TYPES = SearchHit.Type.values();
+
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+    private volatile boolean loaded;
+
+    // Documents by slot. Slots are only appended, so posting lists stay sorted;
+    // a removed document keeps its slot with title == null until the next compaction.
+    private byte[] types = new byte[1024];
+    private int[] ids = new int[1024];
+    private int[] parents = new int[1024];
+    private String[] titles = new String[1024];
+    private String[] subtitles = new String[1024];
+    private String[] primary = new String[1024];   // normalized title
+    private String[] secondary = new String[1024]; // normalized email (students only)
+    private int size;
+    private int removed;
+
+    private final Map<Long, Integer> slotByDoc = new HashMap<>();
+    private final Map<Long, Postings> postings = new HashMap<>();
+
+    private SearchIndex() {}
+
+    public static SearchIndex getInstance() {
+        return INSTANCE;
+    }
+
+    /** Sorted slot list of one gram. */
+    private static final class Postings {
+        int[] slots = new int[4];
+        int size;
+
+        void add(int slot) {
+            if (size == slots.length) {
+                slots = Arrays.copyOf(slots, size * 2);
+            }
+            slots[size++] = slot;
+        }
+
+        boolean contains(int slot) {
+            return Arrays.binarySearch(slots, 0, size, slot) >= 0;
+        }
+    }
+
+    /**
+     * Best matches for the query, highest score first. Only the given types are
+     * searched; with activeCoursesOnly, inactive courses are left out.
+     */
+    public List<SearchHit> search(String query, Set<SearchHit.Type> allowed, boolean activeCoursesOnly, int limit) {
+        String q = normalize(query);
+        if (q.isEmpty() || limit <= 0 || allowed.isEmpty()) {
+            return Collections.emptyList();
+        }
+        ensureLoaded();
+
+        lock.readLock().lock();
+        try {
+            List<Postings> lists = new ArrayList<>();
+            for (long gram : queryGrams(q)) {
+                Postings p = postings.get(gram);
+                if (p == null) {
+                    return Collections.emptyList();
+                }
+                lists.add(p);
+            }
+            lists.sort(Comparator.comparingInt(p -> p.size));
+            Postings first = lists.get(0);
+
+            // Every candidate is scored: slots are in insertion order, so stopping early
+            // would drop the best matches. Only the top 'limit' are ever kept.
+            PriorityQueue<SearchHit> heap = new PriorityQueue<>(limit + 1, HEAP_ORDER);
+            for (int i = 0; i < first.size; i++) {
+                int slot = first.slots[i];
+                if (titles[slot] == null || !allowed.contains(TYPES[types[slot]])) {
+                    continue;
+                }
+                if (activeCoursesOnly && types[slot] == SearchHit.Type.SKILL.ordinal() && !"active".equals(subtitles[slot])) {
+                    continue;
+                }
+                boolean inAll = true;
+                for (int j = 1; j < lists.size() && inAll; j++) {
+                    inAll = lists.get(j).contains(slot);
+                }
+                if (!inAll) {
+                    continue;
+                }
+                // Grams can all be present without the whole query being there
+                double score = Math.max(score(primary[slot], q), score(secondary[slot], q) - 10);
+                if (score < 0) {
+                    continue;
+                }
+                if (heap.size() == limit && score < heap.peek().getScore()) {
+                    continue;
+                }
+                heap.offer(new SearchHit(TYPES[types[slot]], ids[slot], parents[slot], titles[slot], subtitles[slot], score));
+                if (heap.size() > limit) {
+                    heap.poll();
+                }
+            }
+            List<SearchHit> hits = new ArrayList<>(heap);
+            hits.sort(HEAP_ORDER.reversed());
+            return hits;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /** Number of indexed documents (loads the index if needed). */
+    public int size() {
+        ensureLoaded();
+        lock.readLock().lock();
+        try {
+            return size - removed;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    // ---- Scoring ----
+
+    private static double score(String field, String q) {
+        if (field == null) {
+            return -1;
+        }
+        int pos = field.indexOf(q);
+        if (pos < 0) {
+            return -1;
+        }
+        double base;
+        if (pos == 0) {
+            base = field.length() == q.length() ? 100 : 80;
+        } else {
+            // Any occurrence at a word start counts as a word-prefix match
+            base = 40;
+            for (int p = pos; p >= 0; p = field.indexOf(q, p + 1)) {
+                if (isWordStart(field, p)) {
+                    base = 60;
+                    break;
+                }
+            }
+        }
+        // Shorter fields are closer matches
+        return base + 10.0 * q.length() / field.length();
+    }
+
+    private static boolean isWordStart(String s, int i) {
+        return i == 0 || !Character.isLetterOrDigit(s.charAt(i - 1));
+    }
+
+    // ---- Grams ----
+
+    static String normalize(String text) {
+        if (text == null) {
+            return "";
+        }
+        String lower = text.toLowerCase(Locale.ROOT).trim();
+        StringBuilder sb = new StringBuilder(lower.length());
+        boolean space = false;
+        for (int i = 0; i < lower.length(); i++) {
+            char c = lower.charAt(i);
+            if (Character.isWhitespace(c)) {
+                space = true;
+                continue;
+            }
+            if (space) {
+                sb.append(' ');
+                space = false;
+            }
+            sb.append(c == WORD_START ? ' ' : c);
+        }
+        return sb.toString();
+    }
+
+    private static long gram(char a, char b, char c) {
+        return ((long) a << 32) | ((long) b << 16) | c;
+    }
+
+    private static void addGrams(String s, Set<Long> out) {
+        if (s == null) {
+            return;
+        }
+        for (int i = 0; i + 3 <= s.length(); i++) {
+            out.add(gram(s.charAt(i), s.charAt(i + 1), s.charAt(i + 2)));
+        }
+        for (int i = 0; i < s.length(); i++) {
+            if (isWordStart(s, i) && Character.isLetterOrDigit(s.charAt(i))) {
+                out.add(gram(WORD_START, WORD_START, s.charAt(i)));
+                if (i + 1 < s.length()) {
+                    out.add(gram(WORD_START, s.charAt(i), s.charAt(i + 1)));
+                }
+            }
+        }
+    }
+
+    private static Set<Long> queryGrams(String q) {
+        Set<Long> grams = new HashSet<>();
+        if (q.length() == 1) {
+            grams.add(gram(WORD_START, WORD_START, q.charAt(0)));
+        } else if (q.length() == 2) {
+            grams.add(gram(WORD_START, q.charAt(0), q.charAt(1)));
+        } else {
+            for (int i = 0; i + 3 <= q.length(); i++) {
+                grams.add(gram(q.charAt(i), q.charAt(i + 1), q.charAt(i + 2)));
+            }
+        }
+        return grams;
+    }
+
+    // ---- Documents (callers hold the write lock) ----
+
+    private static long docKey(SearchHit.Type type, int id) {
+        return ((long) type.ordinal() << 32) | (id & 0xffffffffL);
+    }
+
+    private void put(SearchHit.Type type, int id, int parent, String title, String subtitle, String secondaryText) {
+        if (title == null) {
+            title = "";
+        }
+        Integer existing = slotByDoc.get(docKey(type, id));
+        if (existing != null) {
+            int s = existing;
+            if (parents[s] == parent && title.equals(titles[s]) && Objects.equals(subtitle, subtitles[s])) {
+                return;
+            }
+            remove(type, id);
+        }
+        if (size == ids.length) {
+            int n = size * 2;
+            types = Arrays.copyOf(types, n);
+            ids = Arrays.copyOf(ids, n);
+            parents = Arrays.copyOf(parents, n);
+            titles = Arrays.copyOf(titles, n);
+            subtitles = Arrays.copyOf(subtitles, n);
+            primary = Arrays.copyOf(primary, n);
+            secondary = Arrays.copyOf(secondary, n);
+        }
+        int slot = size++;
+        types[slot] = (byte) type.ordinal();
+        ids[slot] = id;
+        parents[slot] = parent;
+        titles[slot] = title;
+        subtitles[slot] = subtitle;
+        primary[slot] = normalize(title);
+        secondary[slot] = secondaryText != null ? normalize(secondaryText) : null;
+        slotByDoc.put(docKey(type, id), slot);
+
+        Set<Long> grams = new HashSet<>();
+        addGrams(primary[slot], grams);
+        addGrams(secondary[slot], grams);
+        for (long g : grams) {
+            postings.computeIfAbsent(g, k -> new Postings()).add(slot);
+        }
+    }
+
+    private void remove(SearchHit.Type type, int id) {
+        Integer slot = slotByDoc.remove(docKey(type, id));
+        if (slot == null) {
+            return;
+        }
+        titles[slot] = null;
+        subtitles[slot] = null;
+        primary[slot] = null;
+        secondary[slot] = null;
+        removed++;
+        if (removed > 1024 && removed > size / 2) {
+            compact();
+        }
+    }
+
+    /** Rebuilds slots and posting lists without the removed documents. */
+    private void compact() {
+        byte[] oldTypes = types;
+        int[] oldIds = ids;
+        int[] oldParents = parents;
+        String[] oldTitles = titles;
+        String[] oldSubtitles = subtitles;
+        String[] oldSecondary = secondary;
+        int oldSize = size;
+        clear(Math.max(1024, (oldSize - removed) * 2));
+        for (int s = 0; s < oldSize; s++) {
+            if (oldTitles[s] != null) {
+                put(TYPES[oldTypes[s]], oldIds[s], oldParents[s], oldTitles[s], oldSubtitles[s], oldSecondary[s]);
+            }
+        }
+    }
+
+    private void clear(int capacity) {
+        types = new byte[capacity];
+        ids = new int[capacity];
+        parents = new int[capacity];
+        titles = new String[capacity];
+        subtitles = new String[capacity];
+        primary = new String[capacity];
+        secondary = new String[capacity];
+        size = 0;
+        removed = 0;
+        slotByDoc.clear();
+        postings.clear();
+    }
+
+    // ---- Loading ----
+
+    private void ensureLoaded() {
+        if (loaded) {
+            return;
+        }
+        lock.writeLock().lock();
+        try {
+            if (loaded) {
+                return;
+            }
+            clear(1024);
+            // SKILL is read directly: going through SkillDAO's catalog here could
+            // deadlock with a catalog reload that is reporting to this index.
+            try (Connection conn = DBConnection.getConnection()) {
+                try (PreparedStatement ps = conn.prepareStatement("SELECT student_id, name, email FROM STUDENT");
+                     ResultSet rs = ps.executeQuery()) {
+                    while (rs.next()) {
+                        put(SearchHit.Type.STUDENT, rs.getInt(1), 0, rs.getString(2), rs.getString(3), rs.getString(3));
+                    }
+                }
+                try (PreparedStatement ps = conn.prepareStatement("SELECT skill_id, skill_name, status FROM SKILL");
+                     ResultSet rs = ps.executeQuery()) {
+                    while (rs.next()) {
+                        put(SearchHit.Type.SKILL, rs.getInt(1), 0, rs.getString(2), rs.getString(3), null);
+                    }
+                }
+                try (PreparedStatement ps = conn.prepareStatement("SELECT id, skill_id, title FROM MATERIAL");
+                     ResultSet rs = ps.executeQuery()) {
+                    while (rs.next()) {
+                        put(SearchHit.Type.MATERIAL, rs.getInt(1), rs.getInt(2), rs.getString(3), null, null);
+                    }
+                }
+                loaded = true;
+            } catch (SQLException | ClassNotFoundException e) {
+                Log.error("Loading the search index failed", e);
+                clear(1024);
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /** Applies a change if the index is loaded; otherwise the next load will read it. */
+    private void update(Runnable change) {
+        lock.writeLock().lock();
+        try {
+            if (loaded) {
+                change.run();
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    // ---- Change notifications from the DAOs (after commit) ----
+
+    void onStudentSaved(int studentId, String name, String email) {
+        update(() -> put(SearchHit.Type.STUDENT, studentId, 0, name, email, email));
+    }
+
+    void onStudentDeleted(int studentId) {
+        update(() -> remove(SearchHit.Type.STUDENT, studentId));
+    }
+
+    /** The skill catalog was reloaded: add, rename or drop courses to match it. */
+    void onCatalogChanged(List<Skill> skills) {
+        update(() -> {
+            Set<Integer> present = new HashSet<>();
+            for (Skill s : skills) {
+                present.add(s.getSkillId());
+                put(SearchHit.Type.SKILL, s.getSkillId(), 0, s.getSkillName(), s.getStatus(), null);
+            }
+            List<Integer> gone = new ArrayList<>();
+            for (int slot = 0; slot < size; slot++) {
+                if (titles[slot] != null && types[slot] == SearchHit.Type.SKILL.ordinal() && !present.contains(ids[slot])) {
+                    gone.add(ids[slot]);
+                }
+            }
+            for (int id : gone) {
+                remove(SearchHit.Type.SKILL, id);
+            }
+        });
+    }
+
+    void onMaterialSaved(int materialId, int skillId, String title) {
+        update(() -> put(SearchHit.Type.MATERIAL, materialId, skillId, title, null, null));
+    }
+
+    void onMaterialDeleted(int materialId) {
+        update(() -> remove(SearchHit.Type.MATERIAL, materialId));
+    }
+
+    /** A course was deleted together with its materials. */
+    void onSkillDeleted(int skillId) {
+        update(() -> {
+            List<Integer> materials = new ArrayList<>();
+            for (int slot = 0; slot < size; slot++) {
+                if (titles[slot] != null && types[slot] == SearchHit.Type.MATERIAL.ordinal() && parents[slot] == skillId) {
+                    materials.add(ids[slot]);
+                }
+            }
+            for (int id : materials) {
+                remove(SearchHit.Type.MATERIAL, id);
+            }
+            remove(SearchHit.Type.SKILL, skillId);
+        });
+    }
+}
@@ -2,19 +2,79 @@ package dao;
 
 import model.Skill;
 import util.DBConnection;
+import util.Log;
 
 import java.sql.Connection;
 import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicReference;
 
 public class SkillDAO {
 
-    public List<Skill> getAllSkills() {
+    /**
+     * Immutable snapshot of the SKILL table. The catalog only changes through
+     * addSkill, updateStatus and deleteSkill, which reload it and swap in a new
+     * snapshot with the next version number, so reads never hit the database.
+     * The Skill objects are shared between requests and must not be modified.
+     */
+    public static final class Catalog {
+        private final long version;
+        private final List<Skill> skills;
+        private final Map<Integer, Skill> byId;
+
+        private Catalog(long version, List<Skill> skills) {
+            this.version = version;
+            this.skills = Collections.unmodifiableList(skills);
+            Map<Integer, Skill> map = new HashMap<>();
+            for (Skill s : skills) {
+                map.put(s.getSkillId(), s);
+            }
+            this.byId = map;
+        }
+
+        /** Increases every time the catalog changes; usable as part of a cache key. */
+        public long getVersion() { return version; }
+        public List<Skill> getSkills() { return skills; }
+        public Skill getSkill(int skillId) { return byId.get(skillId); }
+        public int size() { return skills.size(); }
+    }
+
+    private static final AtomicReference<Catalog> catalog = new AtomicReference<>();
+    private static long lastVersion; // guarded by SkillDAO.class
+
+    private final ReadinessDAO readinessDAO = new ReadinessDAO();
+    private final ProgressEventDAO eventDAO = new ProgressEventDAO();
+    private final UploadStore uploadStore = new UploadStore();
+
+    /** Current catalog snapshot, loaded on first use. */
+    public static Catalog getCatalog() {
+        Catalog c = catalog.get();
+        return c != null ? c : reloadCatalog(false);
+    }
+
+    public static long getCatalogVersion() {
+        return getCatalog().getVersion();
+    }
+
+    /**
+     * Reads SKILL and installs a new snapshot. Serialized so a reload that started
+     * earlier can never replace a newer one. If the read fails on first use, an
+     * empty catalog is returned without caching it. If it fails after a write,
+     * the current snapshot may still show what the write changed, so it is
+     * dropped and the next read loads again.
+     *
+     * Writers call this after closing their own connection, so one admin write
+     * never holds two pooled connections at once.
+     */
+    private static synchronized Catalog reloadCatalog(boolean afterWrite) {
         List<Skill> skills = new ArrayList<>();
-        String sql = "SELECT * FROM SKILL";
+        String sql = "SELECT * FROM SKILL ORDER BY skill_id";
         
         try (Connection conn = DBConnection.getConnection();
              PreparedStatement pstmt = conn.prepareStatement(sql);
@@ -29,62 +89,68 @@ public class SkillDAO {
                 ));
             }
         } catch (SQLException | ClassNotFoundException e) {
-            e.printStackTrace();
+            Log.error("SkillDAO.reloadCatalog failed", e);
+            if (afterWrite) {
+                catalog.set(null);
+            }
+            Catalog current = catalog.get();
+            return current != null ? current : new Catalog(0, skills);
         }
-        return skills;
+        Catalog next = new Catalog(++lastVersion, skills);
+        catalog.set(next);
+        SearchIndex.getInstance().onCatalogChanged(next.getSkills());
+        return next;
+    }
+
+    public List<Skill> getAllSkills() {
+        return getCatalog().getSkills();
     }
     
     public Skill getSkillById(int skillId) {
-        String sql = "SELECT * FROM SKILL WHERE skill_id = ?";
-        try (Connection conn = DBConnection.getConnection();
-             PreparedStatement pstmt = conn.prepareStatement(sql)) {
-            pstmt.setInt(1, skillId);
-            try (ResultSet rs = pstmt.executeQuery()) {
-                if (rs.next()) {
-                    return new Skill(
-                        rs.getInt("skill_id"),
-                        rs.getString("skill_name"),
-                        rs.getString("image_url"),
-                        rs.getString("status")
-                    );
-                }
-            }
-        } catch (SQLException | ClassNotFoundException e) {
-            e.printStackTrace();
-        }
-        return null;
+        return getCatalog().getSkill(skillId);
     }
 
     public boolean addSkill(Skill skill) {
         String sql = "INSERT INTO SKILL (skill_name, image_url, status) VALUES (?, ?, ?)";
         
-        try (Connection conn = DBConnection.getConnection();
-             PreparedStatement pstmt = conn.prepareStatement(sql)) {
-            
-            pstmt.setString(1, skill.getSkillName());
-            pstmt.setString(2, skill.getImageUrl());
-            pstmt.setString(3, "active"); // Default
-            
-            int rowsAffected = pstmt.executeUpdate();
-            return rowsAffected > 0;
-            
+        int rowsAffected;
+        try (Connection conn = DBConnection.getConnection()) {
+            conn.setAutoCommit(false);
+            try {
+                try (PreparedStatement pstmt = conn.prepareStatement(sql)) {
+                    pstmt.setString(1, skill.getSkillName());
+                    pstmt.setString(2, skill.getImageUrl());
+                    pstmt.setString(3, "active"); // Default
+                    rowsAffected = pstmt.executeUpdate();
+                }
+                uploadStore.addReference(conn, skill.getImageUrl());
+                conn.commit();
+            } catch (SQLException ex) {
+                conn.rollback();
+                throw ex;
+            }
         } catch (SQLException | ClassNotFoundException e) {
-            e.printStackTrace();
+            Log.error("SkillDAO.addSkill failed", e);
             return false;
         }
+        reloadCatalog(true);
+        return rowsAffected > 0;
     }
     
     public boolean updateStatus(int skillId, String status) {
         String sql = "UPDATE SKILL SET status = ? WHERE skill_id = ?";
+        boolean updated;
         try (Connection conn = DBConnection.getConnection();
              PreparedStatement pstmt = conn.prepareStatement(sql)) {
             pstmt.setString(1, status);
             pstmt.setInt(2, skillId);
-            return pstmt.executeUpdate() > 0;
+            updated = pstmt.executeUpdate() > 0;
         } catch (SQLException | ClassNotFoundException e) {
-            e.printStackTrace();
+            Log.error("SkillDAO.updateStatus failed", e);
             return false;
         }
+        reloadCatalog(true);
+        return updated;
     }
     
     public boolean deleteSkill(int skillId) {
@@ -100,9 +166,15 @@ public class SkillDAO {
         String sqlDelMaterials = "DELETE FROM MATERIAL WHERE skill_id = ?";
         String sqlDelSkill = "DELETE FROM SKILL WHERE skill_id = ?";
 
+        boolean success;
         try (Connection conn = DBConnection.getConnection()) {
             conn.setAutoCommit(false); // Transaction
             try {
+                // 0. Delete readiness rows (they reference the skill) and progress history
+                readinessDAO.deleteBySkill(conn, skillId);
+                eventDAO.deleteBySkill(conn, skillId);
+                // The course image and material files lose their references (collected later)
+                uploadStore.releaseSkillReferences(conn, skillId);
                 // 1. Delete Student Progress for this skill's materials
                 try (PreparedStatement ps = conn.prepareStatement(sqlDelProgress)) {
                     ps.setInt(1, skillId);
@@ -119,21 +191,23 @@ public class SkillDAO {
                     ps.executeUpdate();
                 }
                 // 4. Delete Skill
-                boolean success;
                 try (PreparedStatement ps = conn.prepareStatement(sqlDelSkill)) {
                     ps.setInt(1, skillId);
                     success = ps.executeUpdate() > 0;
                 }
                 
                 conn.commit();
-                return success;
+                MaterialDAO.invalidateSkill(skillId);
+                SearchIndex.getInstance().onSkillDeleted(skillId);
             } catch (SQLException ex) {
                 conn.rollback();
                 throw ex;
             }
         } catch (SQLException | ClassNotFoundException e) {
-            e.printStackTrace();
+            Log.error("SkillDAO.deleteSkill failed", e);
             return false;
         }
+        reloadCatalog(true);
+        return success;
     }
 }
@@ -1,15 +1,22 @@
 package dao;
 
 import model.Student;
+import model.StudentQuery;
 import util.DBConnection;
+import util.Log;
 
 import java.sql.Connection;
 import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
 
 public class StudentDAO {
 
+    private final ReadinessDAO readinessDAO = new ReadinessDAO();
+    private final ProgressEventDAO eventDAO = new ProgressEventDAO();
+
     public java.util.List<Student> getAllStudents() {
         java.util.List<Student> students = new java.util.ArrayList<>();
         String sql = "SELECT * FROM STUDENT";
@@ -26,11 +33,89 @@ public class StudentDAO {
                 ));
             }
         } catch (SQLException | ClassNotFoundException e) {
-            e.printStackTrace();
+            Log.error("StudentDAO.getAllStudents failed", e);
         }
         return students;
     }
     
+    /**
+     * One page of the student directory. Filtering (EXISTS / NOT EXISTS on
+     * ENROLLMENT), prefix search and ordering all run in MySQL on indexed columns,
+     * and the page continues after the cursor row instead of using OFFSET, so every
+     * page costs the same however deep it is.
+     *
+     * Returns up to pageSize + 1 students; the extra row only tells the caller
+     * that another page exists.
+     */
+    public List<Student> findStudents(StudentQuery query) {
+        List<Student> students = new ArrayList<>();
+        StringBuilder sql = new StringBuilder("SELECT s.student_id, s.name, s.email FROM STUDENT s WHERE 1 = 1");
+        List<Object> params = new ArrayList<>();
+
+        if (query.getFilter() == StudentQuery.Filter.ACTIVE) {
+            sql.append(" AND EXISTS (SELECT 1 FROM ENROLLMENT e WHERE e.student_id = s.student_id)");
+        } else if (query.getFilter() == StudentQuery.Filter.INACTIVE) {
+            sql.append(" AND NOT EXISTS (SELECT 1 FROM ENROLLMENT e WHERE e.student_id = s.student_id)");
+        }
+
+        if (!query.getSearch().isEmpty()) {
+            // Prefix match so idx_student_name and the email index can be range-scanned
+            String pattern = escapeLike(query.getSearch()) + "%";
+            sql.append(" AND (s.name LIKE ? OR s.email LIKE ?)");
+            params.add(pattern);
+            params.add(pattern);
+        }
+
+        String column = "s." + query.getSort().getColumn();
+        String cmp = query.isDescending() ? "<" : ">";
+        if (!query.isFirstPage()) {
+            if (query.getSort() == StudentQuery.Sort.ID) {
+                sql.append(" AND s.student_id ").append(cmp).append(" ?");
+                params.add(query.getAfterId());
+            } else {
+                // Row-value comparison on (key, id) keeps ties on the key stable across pages
+                sql.append(" AND (").append(column).append(" ").append(cmp).append(" ? OR (")
+                   .append(column).append(" = ? AND s.student_id ").append(cmp).append(" ?))");
+                String key = query.getAfterKey() != null ? query.getAfterKey() : "";
+                params.add(key);
+                params.add(key);
+                params.add(query.getAfterId());
+            }
+        }
+
+        String dir = query.isDescending() ? " DESC" : " ASC";
+        sql.append(" ORDER BY ");
+        if (query.getSort() != StudentQuery.Sort.ID) {
+            sql.append(column).append(dir).append(", ");
+        }
+        sql.append("s.student_id").append(dir).append(" LIMIT ?");
+        params.add(query.getPageSize() + 1);
+
+        try (Connection conn = DBConnection.getConnection();
+             PreparedStatement pstmt = conn.prepareStatement(sql.toString())) {
+            for (int i = 0; i < params.size(); i++) {
+                pstmt.setObject(i + 1, params.get(i));
+            }
+            try (ResultSet rs = pstmt.executeQuery()) {
+                while (rs.next()) {
+                    students.add(new Student(
+                        rs.getInt("student_id"),
+                        rs.getString("name"),
+                        rs.getString("email"),
+                        "PROTECTED"
+                    ));
+                }
+            }
+        } catch (SQLException | ClassNotFoundException e) {
+            Log.error("StudentDAO.findStudents failed", e);
+        }
+        return students;
+    }
+
+    private static String escapeLike(String text) {
+        return text.replace("\\", "\\\\").replace("%", "\\%").replace("_", "\\_");
+    }
+
     public Student getStudentByEmail(String email) {
         String sql = "SELECT * FROM STUDENT WHERE email = ?";
         try (Connection conn = DBConnection.getConnection();
@@ -48,7 +133,7 @@ public class StudentDAO {
                 );
             }
         } catch (SQLException | ClassNotFoundException e) {
-            e.printStackTrace();
+            Log.error("StudentDAO.getStudentByEmail failed", e);
         }
         return null; // Not found or error
     }
@@ -70,7 +155,7 @@ public class StudentDAO {
                 );
             }
         } catch (SQLException | ClassNotFoundException e) {
-            e.printStackTrace();
+            Log.error("StudentDAO.getStudentById failed", e);
         }
         return null;
     }
@@ -88,20 +173,22 @@ public class StudentDAO {
             if (rows > 0) {
                 try (ResultSet generatedKeys = pstmt.getGeneratedKeys()) {
                     if (generatedKeys.next()) {
-                        return generatedKeys.getInt(1);
+                        int id = generatedKeys.getInt(1);
+                        SearchIndex.getInstance().onStudentSaved(id, student.getName(), student.getUsername());
+                        return id;
                     }
                 }
             }
             return 0; // Failed
             
         } catch (SQLException | ClassNotFoundException e) {
-            e.printStackTrace();
+            Log.error("StudentDAO.addStudent failed", e);
             return 0;
         }
     }
     
     public boolean deleteStudent(int studentId) {
-        // Delete in order: Progress -> Enrollments -> Student (FK constraints)
+        // Delete in order: Readiness -> Progress -> Enrollments -> Student (FK constraints)
         String sqlDelProgress = "DELETE FROM STUDENT_PROGRESS WHERE student_id = ?";
         String sqlDelEnroll = "DELETE FROM ENROLLMENT WHERE student_id = ?";
         String sqlDelStudent = "DELETE FROM STUDENT WHERE student_id = ?";
@@ -109,6 +196,9 @@ public class StudentDAO {
         try (Connection conn = DBConnection.getConnection()) {
             conn.setAutoCommit(false);
             try {
+                readinessDAO.deleteByStudent(conn, studentId);
+                // Re-snapshots their courses without them (needs the enrollments still there)
+                eventDAO.deleteByStudent(conn, studentId);
                 // 1. Delete Progress
                 try (PreparedStatement ps = conn.prepareStatement(sqlDelProgress)) {
                     ps.setInt(1, studentId);
@@ -126,13 +216,15 @@ public class StudentDAO {
                     success = ps.executeUpdate() > 0;
                 }
                 conn.commit();
+                ProgressIndex.getInstance().onStudentDeleted(studentId);
+                SearchIndex.getInstance().onStudentDeleted(studentId);
                 return success;
             } catch (SQLException ex) {
                 conn.rollback();
                 throw ex;
             }
         } catch (SQLException | ClassNotFoundException e) {
-            e.printStackTrace();
+            Log.error("StudentDAO.deleteStudent failed", e);
             return false;
         }
     }
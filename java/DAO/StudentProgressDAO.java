@@ -2,6 +2,7 @@ package dao;
 
 import model.StudentProgress;
 import util.DBConnection;
+import util.Log;
 
 import java.sql.Connection;
 import java.sql.PreparedStatement;
@@ -12,8 +13,18 @@ import java.util.List;
 
 public class StudentProgressDAO {
 
+    // Students handled per INSERT ... SELECT when fanning out a new material
+    private static final int FAN_OUT_CHUNK_SIZE = 1000;
+
+    private final ReadinessDAO readinessDAO = new ReadinessDAO();
+    private final ProgressEventDAO eventDAO = new ProgressEventDAO();
+
+    /** Receives progress updates from long-running bulk operations. */
+    public interface FanOutListener {
+        void onProgress(int processed, int total);
+    }
+
     public List<StudentProgress> getProgressByStudentId(int studentId) {
-        List<StudentProgress> list = new ArrayList<>();
         // Join STUDENT_PROGRESS -> MATERIAL -> SKILL
         String sql = "SELECT sp.id, sp.student_id, sp.material_id, sp.status, " +
                      "m.title, m.weight, m.type, m.resource_url, s.skill_name " +
@@ -21,11 +32,29 @@ public class StudentProgressDAO {
                      "JOIN MATERIAL m ON sp.material_id = m.id " +
                      "JOIN SKILL s ON m.skill_id = s.skill_id " +
                      "WHERE sp.student_id = ?";
-        
+        return queryProgress(sql, studentId);
+    }
+
+    // Progress rows of one student for one skill, in material order
+    public List<StudentProgress> getProgressByStudentAndSkill(int studentId, int skillId) {
+        String sql = "SELECT sp.id, sp.student_id, sp.material_id, sp.status, " +
+                     "m.title, m.weight, m.type, m.resource_url, s.skill_name " +
+                     "FROM STUDENT_PROGRESS sp " +
+                     "JOIN MATERIAL m ON sp.material_id = m.id " +
+                     "JOIN SKILL s ON m.skill_id = s.skill_id " +
+                     "WHERE sp.student_id = ? AND m.skill_id = ? " +
+                     "ORDER BY m.id";
+        return queryProgress(sql, studentId, skillId);
+    }
+
+    private List<StudentProgress> queryProgress(String sql, int... args) {
+        List<StudentProgress> list = new ArrayList<>();
         try (Connection conn = DBConnection.getConnection();
              PreparedStatement pstmt = conn.prepareStatement(sql)) {
             
-            pstmt.setInt(1, studentId);
+            for (int i = 0; i < args.length; i++) {
+                pstmt.setInt(i + 1, args[i]);
+            }
             ResultSet rs = pstmt.executeQuery();
             
             while (rs.next()) {
@@ -49,36 +78,104 @@ public class StudentProgressDAO {
                 list.add(sp);
             }
         } catch (SQLException | ClassNotFoundException e) {
-            e.printStackTrace();
+            Log.error("StudentProgressDAO.queryProgress failed", e);
         }
         return list;
     }
     
     // Enroll student in a specific skill by assigning all its materials
     public void enrollStudentInSkill(int studentId, int skillId) {
-        // Step 1: Fetch all material IDs first (Read Operation)
-        java.util.List<Integer> materialIds = new java.util.ArrayList<>();
-        String sqlSelect = "SELECT id FROM MATERIAL WHERE skill_id = ?";
-        
-        try (java.sql.Connection conn = util.DBConnection.getConnection();
-             java.sql.PreparedStatement pstmt = conn.prepareStatement(sqlSelect)) {
-             
-            pstmt.setInt(1, skillId);
-            try (java.sql.ResultSet rs = pstmt.executeQuery()) {
-                while (rs.next()) {
-                    materialIds.add(rs.getInt("id"));
-                }
+        try (Connection conn = DBConnection.getConnection()) {
+            conn.setAutoCommit(false);
+            try {
+                seedSkillProgress(conn, studentId, skillId);
+                readinessDAO.refreshEnrollment(conn, studentId, skillId);
+                eventDAO.recordEnrollment(conn, studentId, skillId);
+                conn.commit();
+            } catch (SQLException ex) {
+                conn.rollback();
+                throw ex;
             }
-        } catch (java.sql.SQLException | ClassNotFoundException e) {
-            e.printStackTrace();
+        } catch (SQLException | ClassNotFoundException e) {
+            Log.error("StudentProgressDAO.enrollStudentInSkill failed", e);
+        }
+    }
+
+    /**
+     * Creates a 'Not Started' row for every material of the skill in one statement.
+     * Rows that already exist are skipped by the unique (student_id, material_id) key.
+     * Runs on the caller's connection so it can share a transaction (see EnrollmentDAO).
+     */
+    int seedSkillProgress(Connection conn, int studentId, int skillId) throws SQLException {
+        String sql = "INSERT IGNORE INTO STUDENT_PROGRESS (student_id, material_id, status) " +
+                     "SELECT ?, id, 'Not Started' FROM MATERIAL WHERE skill_id = ?";
+        try (PreparedStatement pstmt = conn.prepareStatement(sql)) {
+            pstmt.setInt(1, studentId);
+            pstmt.setInt(2, skillId);
+            return pstmt.executeUpdate();
         }
+    }
 
-        // Step 2: Insert Progress for each material (Write Operation)
-        // This is done after the read connection is closed to avoid SQLITE_BUSY locks
-        for (Integer matId : materialIds) {
-            if (!isProgressExists(studentId, matId)) {
-                insertProgress(studentId, matId, "Not Started");
+    /**
+     * Creates a 'Not Started' row for a newly added material for every student
+     * enrolled in the skill. Students are processed in chunks of ENROLLMENT ids,
+     * each chunk being one INSERT ... SELECT, and the whole run is one transaction.
+     *
+     * @return number of enrolled students processed, or -1 if the transaction failed
+     */
+    public int seedMaterialForEnrolledStudents(int materialId, int skillId, FanOutListener listener) {
+        String sqlCount = "SELECT COUNT(*) FROM ENROLLMENT WHERE skill_id = ?";
+        // Upper student_id of the next chunk (the last id of at most CHUNK rows after 'lastId')
+        String sqlBound = "SELECT MAX(student_id) FROM (SELECT student_id FROM ENROLLMENT " +
+                          "WHERE skill_id = ? AND student_id > ? ORDER BY student_id LIMIT ?) chunk";
+        String sqlInsert = "INSERT IGNORE INTO STUDENT_PROGRESS (student_id, material_id, status) " +
+                           "SELECT student_id, ?, 'Not Started' FROM ENROLLMENT " +
+                           "WHERE skill_id = ? AND student_id > ? AND student_id <= ?";
+
+        try (Connection conn = DBConnection.getConnection()) {
+            conn.setAutoCommit(false);
+            try (PreparedStatement countStmt = conn.prepareStatement(sqlCount);
+                 PreparedStatement boundStmt = conn.prepareStatement(sqlBound);
+                 PreparedStatement insertStmt = conn.prepareStatement(sqlInsert)) {
+
+                int total = 0;
+                countStmt.setInt(1, skillId);
+                try (ResultSet rs = countStmt.executeQuery()) {
+                    if (rs.next()) total = rs.getInt(1);
+                }
+
+                int processed = 0;
+                int lastId = Integer.MIN_VALUE;
+                while (processed < total) {
+                    boundStmt.setInt(1, skillId);
+                    boundStmt.setInt(2, lastId);
+                    boundStmt.setInt(3, FAN_OUT_CHUNK_SIZE);
+                    int upperId;
+                    try (ResultSet rs = boundStmt.executeQuery()) {
+                        if (!rs.next() || rs.getObject(1) == null) break;
+                        upperId = rs.getInt(1);
+                    }
+
+                    insertStmt.setInt(1, materialId);
+                    insertStmt.setInt(2, skillId);
+                    insertStmt.setInt(3, lastId);
+                    insertStmt.setInt(4, upperId);
+                    insertStmt.executeUpdate();
+
+                    processed = Math.min(total, processed + FAN_OUT_CHUNK_SIZE);
+                    lastId = upperId;
+                    if (listener != null) listener.onProgress(processed, total);
+                }
+
+                conn.commit();
+                return processed;
+            } catch (SQLException ex) {
+                conn.rollback();
+                throw ex;
             }
+        } catch (SQLException | ClassNotFoundException e) {
+            Log.error("StudentProgressDAO.seedMaterialForEnrolledStudents failed", e);
+            return -1;
         }
     }
 
@@ -90,35 +187,85 @@ public class StudentProgressDAO {
             pstmt.setInt(2, materialId);
             return pstmt.executeQuery().next();
         } catch (SQLException | ClassNotFoundException e) {
-            e.printStackTrace();
+            Log.error("StudentProgressDAO.isProgressExists failed", e);
             return false;
         }
     }
 
     public void insertProgress(int studentId, int materialId, String status) {
         String sql = "INSERT INTO STUDENT_PROGRESS (student_id, material_id, status) VALUES (?, ?, ?)";
-        try (Connection conn = DBConnection.getConnection();
-             PreparedStatement pstmt = conn.prepareStatement(sql)) {
-            pstmt.setInt(1, studentId);
-            pstmt.setInt(2, materialId);
-            pstmt.setString(3, status);
-            pstmt.executeUpdate();
+        try (Connection conn = DBConnection.getConnection()) {
+            conn.setAutoCommit(false);
+            try {
+                try (PreparedStatement pstmt = conn.prepareStatement(sql)) {
+                    pstmt.setInt(1, studentId);
+                    pstmt.setInt(2, materialId);
+                    pstmt.setString(3, status);
+                    pstmt.executeUpdate();
+                }
+                if (isCompleted(status)) {
+                    readinessDAO.applyCompletionChange(conn, studentId, materialId, 1);
+                    eventDAO.recordStatusChange(conn, studentId, materialId, 1);
+                }
+                conn.commit();
+                ProgressIndex.getInstance().onStatusChanged(studentId, materialId, isCompleted(status));
+            } catch (SQLException ex) {
+                conn.rollback();
+                throw ex;
+            }
          } catch (SQLException | ClassNotFoundException ex) {
-             ex.printStackTrace();
+             Log.error("StudentProgressDAO.insertProgress failed", ex);
          }
     }
     
+    /**
+     * Changes the status of one progress row, moves the READINESS totals by the
+     * difference and logs the change (ProgressEventDAO), in one transaction. The row is locked while it is read
+     * so concurrent toggles of the same material cannot double count.
+     */
     public boolean updateStatus(int studentId, int materialId, String status) {
-        String sql = "UPDATE STUDENT_PROGRESS SET status = ? WHERE student_id = ? AND material_id = ?";
-        try (Connection conn = DBConnection.getConnection();
-             PreparedStatement pstmt = conn.prepareStatement(sql)) {
-            pstmt.setString(1, status);
-            pstmt.setInt(2, studentId);
-            pstmt.setInt(3, materialId);
-            return pstmt.executeUpdate() > 0;
+        String sqlCurrent = "SELECT status FROM STUDENT_PROGRESS WHERE student_id = ? AND material_id = ? FOR UPDATE";
+        String sqlUpdate = "UPDATE STUDENT_PROGRESS SET status = ? WHERE student_id = ? AND material_id = ?";
+        try (Connection conn = DBConnection.getConnection()) {
+            conn.setAutoCommit(false);
+            try {
+                String current;
+                try (PreparedStatement pstmt = conn.prepareStatement(sqlCurrent)) {
+                    pstmt.setInt(1, studentId);
+                    pstmt.setInt(2, materialId);
+                    try (ResultSet rs = pstmt.executeQuery()) {
+                        if (!rs.next()) {
+                            conn.rollback();
+                            return false;
+                        }
+                        current = rs.getString(1);
+                    }
+                }
+                try (PreparedStatement pstmt = conn.prepareStatement(sqlUpdate)) {
+                    pstmt.setString(1, status);
+                    pstmt.setInt(2, studentId);
+                    pstmt.setInt(3, materialId);
+                    pstmt.executeUpdate();
+                }
+                int delta = (isCompleted(status) ? 1 : 0) - (isCompleted(current) ? 1 : 0);
+                if (delta != 0) {
+                    readinessDAO.applyCompletionChange(conn, studentId, materialId, delta);
+                    eventDAO.recordStatusChange(conn, studentId, materialId, delta);
+                }
+                conn.commit();
+                ProgressIndex.getInstance().onStatusChanged(studentId, materialId, isCompleted(status));
+                return true;
+            } catch (SQLException ex) {
+                conn.rollback();
+                throw ex;
+            }
         } catch (SQLException | ClassNotFoundException e) {
-            e.printStackTrace();
+            Log.error("StudentProgressDAO.updateStatus failed", e);
             return false;
         }
     }
+
+    private static boolean isCompleted(String status) {
+        return "Completed".equalsIgnoreCase(status);
+    }
 }
@@ -0,0 +1,211 @@
+package dao;
+
+import util.DBConnection;
+import util.MultipartParser;
+import util.Thumbnails;
+import util.Log;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Content-addressed store for uploaded files.
+ *
+ * An upload is saved once under uploads/cas/&lt;sha256&gt;.&lt;ext&gt; (the hash is
+ * computed while the parser streams it), so the same PDF uploaded to ten
+ * courses is one file, and a stored path never changes content - it can be
+ * served with far-future caching. That path is what MATERIAL.resource_url and
+ * SKILL.image_url hold.
+ *
+ * UPLOAD_BLOB counts the rows referring to each file. MaterialDAO and SkillDAO
+ * add and release references in the same transaction as their own changes; the
+ * garbage collector deletes blobs that have had no references for a grace
+ * period (an upload is stored before the row that uses it is saved).
+ */
+public class UploadStore {
+
+    public static final String UPLOAD_DIR = "src/main/webapp/uploads";
+    public static final String CAS_PREFIX = "cas/";
+
+    private static final long GC_GRACE_MS = Long.getLong("upload.gcGraceMinutes", 60) * 60_000;
+    private static final long GC_INTERVAL_MINUTES = Long.getLong("upload.gcIntervalMinutes", 60);
+    private static final int GC_BATCH = 500;
+
+    // Storing a blob and collecting one must not interleave (file exists check vs delete)
+    private static final Object fileLock = new Object();
+
+    /**
+     * Stores the parser's uploaded file and returns its path relative to the
+     * upload folder, e.g. "cas/9f86d08...0f00a08.pdf". If the same content is
+     * already stored, the new copy is simply discarded.
+     */
+    public String store(MultipartParser parser) throws IOException {
+        String name = parser.getFileSha256() + "." + extensionOf(parser.getFileName());
+        String path = CAS_PREFIX + name;
+        File casDir = new File(UPLOAD_DIR, CAS_PREFIX);
+        synchronized (fileLock) {
+            File existing = new File(casDir, name);
+            if (existing.isFile() && existing.length() == parser.getFileSize()) {
+                parser.close();
+            } else {
+                parser.moveFileTo(casDir, name);
+            }
+            register(path, parser.getFileSha256(), parser.getFileSize());
+        }
+        return path;
+    }
+
+    public static boolean isBlobPath(String url) {
+        return url != null && url.startsWith(CAS_PREFIX);
+    }
+
+    private void register(String path, String sha256, long size) {
+        // Touching updated_at restarts the grace period of an unreferenced blob
+        String sql = "INSERT INTO UPLOAD_BLOB (path, sha256, size, ref_count) VALUES (?, ?, ?, 0) " +
+                     "ON DUPLICATE KEY UPDATE updated_at = CURRENT_TIMESTAMP";
+        try (Connection conn = DBConnection.getConnection();
+             PreparedStatement pstmt = conn.prepareStatement(sql)) {
+            pstmt.setString(1, path);
+            pstmt.setString(2, sha256);
+            pstmt.setLong(3, size);
+            pstmt.executeUpdate();
+        } catch (SQLException | ClassNotFoundException e) {
+            Log.error("UploadStore.register failed", e);
+        }
+    }
+
+    // ---- References (called inside the caller's transaction) ----
+
+    /** A MATERIAL or SKILL row now points at url; no-op for links, text and legacy uploads. */
+    void addReference(Connection conn, String url) throws SQLException {
+        changeReferences(conn, url, 1);
+    }
+
+    void releaseReference(Connection conn, String url) throws SQLException {
+        changeReferences(conn, url, -1);
+    }
+
+    private void changeReferences(Connection conn, String url, int delta) throws SQLException {
+        if (!isBlobPath(url)) {
+            return;
+        }
+        try (PreparedStatement pstmt = conn.prepareStatement(
+                "UPDATE UPLOAD_BLOB SET ref_count = ref_count + ? WHERE path = ?")) {
+            pstmt.setInt(1, delta);
+            pstmt.setString(2, url);
+            pstmt.executeUpdate();
+        }
+    }
+
+    /** Releases the course image and every material file of a skill that is about to be deleted. */
+    void releaseSkillReferences(Connection conn, int skillId) throws SQLException {
+        // Grouped first: several materials may share one blob, and a multi-table
+        // UPDATE changes each blob row only once
+        String sql = "UPDATE UPLOAD_BLOB b JOIN (" +
+                     "  SELECT url, COUNT(*) AS refs FROM (" +
+                     "    SELECT resource_url AS url FROM MATERIAL WHERE skill_id = ? " +
+                     "    UNION ALL SELECT image_url FROM SKILL WHERE skill_id = ?" +
+                     "  ) u WHERE url LIKE 'cas/%' GROUP BY url" +
+                     ") r ON r.url = b.path " +
+                     "SET b.ref_count = b.ref_count - r.refs";
+        try (PreparedStatement pstmt = conn.prepareStatement(sql)) {
+            pstmt.setInt(1, skillId);
+            pstmt.setInt(2, skillId);
+            pstmt.executeUpdate();
+        }
+    }
+
+    // ---- Garbage collection ----
+
+    /** Deletes blobs that have been unreferenced for longer than the grace period; returns how many. */
+    public int collectGarbage() {
+        Timestamp cutoff = new Timestamp(System.currentTimeMillis() - GC_GRACE_MS);
+        int deleted = 0;
+        try (Connection conn = DBConnection.getConnection()) {
+            List<String> candidates = new ArrayList<>();
+            try (PreparedStatement pstmt = conn.prepareStatement(
+                    "SELECT path FROM UPLOAD_BLOB WHERE ref_count <= 0 AND updated_at < ? LIMIT " + GC_BATCH)) {
+                pstmt.setTimestamp(1, cutoff);
+                try (ResultSet rs = pstmt.executeQuery()) {
+                    while (rs.next()) {
+                        candidates.add(rs.getString(1));
+                    }
+                }
+            }
+            for (String path : candidates) {
+                synchronized (fileLock) {
+                    // Re-checked in the DELETE: a reference may have been added since the SELECT
+                    try (PreparedStatement pstmt = conn.prepareStatement(
+                            "DELETE FROM UPLOAD_BLOB WHERE path = ? AND ref_count <= 0 AND updated_at < ?")) {
+                        pstmt.setString(1, path);
+                        pstmt.setTimestamp(2, cutoff);
+                        if (pstmt.executeUpdate() == 0) {
+                            continue;
+                        }
+                    }
+                    try {
+                        Files.deleteIfExists(new File(UPLOAD_DIR, path).toPath());
+                        Thumbnails.deleteVariants(path);
+                        deleted++;
+                    } catch (IOException e) {
+                        Log.error("Could not delete upload " + path, e);
+                    }
+                }
+            }
+        } catch (SQLException | ClassNotFoundException e) {
+            Log.error("UploadStore.collectGarbage failed", e);
+        }
+        return deleted;
+    }
+
+    /** Runs the collector every upload.gcIntervalMinutes on a daemon thread. */
+    public static void scheduleGarbageCollection() {
+        ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "upload-gc");
+            t.setDaemon(true);
+            return t;
+        });
+        UploadStore store = new UploadStore();
+        scheduler.scheduleWithFixedDelay(() -> {
+            int n = store.collectGarbage();
+            if (n > 0) {
+                Log.info("Upload GC removed " + n + " unreferenced file(s).");
+            }
+        }, GC_INTERVAL_MINUTES, GC_INTERVAL_MINUTES, TimeUnit.MINUTES);
+    }
+
+    static String extensionOf(String fileName) {
+        int dot = fileName != null ? fileName.lastIndexOf('.') : -1;
+        if (dot < 0) {
+            return "bin";
+        }
+        StringBuilder ext = new StringBuilder();
+        for (int i = dot + 1; i < fileName.length() && ext.length() < 10; i++) {
+            char c = Character.toLowerCase(fileName.charAt(i));
+            if ((c >= 'a' && c <= 'z') || (c >= '0' && c <= '9')) {
+                ext.append(c);
+            }
+        }
+        return ext.length() > 0 ? ext.toString() : "bin";
+    }
+
+    // Run the collector once: java -cp "out;lib/*" dao.UploadStore
+    public static void main(String[] args) {
+        try {
+            System.out.println("Removed " + new UploadStore().collectGarbage() + " unreferenced upload(s).");
+        } finally {
+            DBConnection.shutdown();
+        }
+    }
+}
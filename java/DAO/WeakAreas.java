@@ -0,0 +1,135 @@
+package dao;
+
+import model.CohortStats;
+import model.Material;
+import model.MaterialRank;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+
+/**
+ * Weak and strong areas of a course, and the modules a student should do next.
+ *
+ * Candidates are streamed from the cohort statistics or the student's
+ * completion bitmask into a bounded min-heap of size k, so only the current
+ * top k are ever kept. All scores are in readiness points.
+ */
+public class WeakAreas {
+
+    // Lowest score at the head; on equal scores the later material is dropped first
+    private static final Comparator<MaterialRank> HEAP_ORDER =
+            Comparator.comparingDouble(MaterialRank::getScore)
+                      .thenComparing(Comparator.comparingInt(MaterialRank::getMaterialId).reversed());
+
+    private final CohortAnalytics cohortAnalytics = new CohortAnalytics();
+    private final ProgressIndex index = ProgressIndex.getInstance();
+    private final MaterialDAO materialDAO = new MaterialDAO();
+
+    /**
+     * The k materials that cost the cohort the most readiness: (1 - completion rate)
+     * of the material times its share of the course weight, highest first.
+     */
+    public List<MaterialRank> getWeakestMaterials(int skillId, int k) {
+        return rankCohort(skillId, k, true);
+    }
+
+    /** The k materials with the highest completion rate (ties go to the heavier one). */
+    public List<MaterialRank> getStrongestMaterials(int skillId, int k) {
+        return rankCohort(skillId, k, false);
+    }
+
+    private List<MaterialRank> rankCohort(int skillId, int k, boolean weakest) {
+        ProgressIndex.SkillProgress sp = index.getSkill(skillId);
+        CohortStats stats = cohortAnalytics.getCohortStats(skillId);
+        // The stats must describe the same material list (the skill may have just been reloaded)
+        if (sp == null || stats == null || stats.getStudentCount() == 0 || k <= 0
+                || stats.getMaterialCount() != sp.getModuleCount()) {
+            return Collections.emptyList();
+        }
+        int[] weights = sp.weights();
+        int totalWeight = sum(weights);
+        Map<Integer, String> titles = titlesOf(skillId);
+
+        PriorityQueue<MaterialRank> heap = new PriorityQueue<>(k + 1, HEAP_ORDER);
+        for (int i = 0; i < stats.getMaterialCount(); i++) {
+            double rate = stats.getCompletionRate(i);
+            int weight = weights[i];
+            double score;
+            if (weakest) {
+                score = totalWeight > 0 ? (1 - rate) * weight * 100.0 / totalWeight : 0;
+            } else {
+                // Completion rate decides; the weight share only breaks ties
+                score = rate * 100 + (totalWeight > 0 ? (double) weight / totalWeight : 0) * 1e-3;
+            }
+            if (weakest && score <= 0) continue;
+            if (heap.size() == k && score <= heap.peek().getScore()) continue;
+            int id = stats.getMaterialId(i);
+            offer(heap, k, new MaterialRank(id, titles.get(id), weight, rate, score));
+        }
+        return drainDescending(heap);
+    }
+
+    /**
+     * The k materials the student has not completed that would add the most
+     * readiness (their share of the course weight), highest first.
+     */
+    public List<MaterialRank> getBestNextMaterials(int studentId, int skillId, int k) {
+        ProgressIndex.SkillProgress sp = index.getSkill(skillId);
+        if (sp == null || k <= 0 || sp.getTotalWeight() <= 0) {
+            return Collections.emptyList();
+        }
+        int[] ids = sp.materialIds();
+        int[] weights = sp.weights();
+        int totalWeight = sum(weights);
+        if (totalWeight <= 0) {
+            return Collections.emptyList();
+        }
+        Map<Integer, String> titles = titlesOf(skillId);
+
+        PriorityQueue<MaterialRank> heap = new PriorityQueue<>(k + 1, HEAP_ORDER);
+        sp.forEachIncomplete(studentId, pos -> {
+            double gain = weights[pos] * 100.0 / totalWeight;
+            if (heap.size() == k && gain <= heap.peek().getScore()) return;
+            offer(heap, k, new MaterialRank(ids[pos], titles.get(ids[pos]), weights[pos], 0, gain));
+        });
+        return drainDescending(heap);
+    }
+
+    // Total of one weights array, so it always matches the weights being ranked
+    private static int sum(int[] weights) {
+        int total = 0;
+        for (int w : weights) {
+            total += w;
+        }
+        return total;
+    }
+
+    private static void offer(PriorityQueue<MaterialRank> heap, int k, MaterialRank rank) {
+        heap.add(rank);
+        if (heap.size() > k) {
+            heap.poll();
+        }
+    }
+
+    private static List<MaterialRank> drainDescending(PriorityQueue<MaterialRank> heap) {
+        List<MaterialRank> list = new ArrayList<>(heap.size());
+        while (!heap.isEmpty()) {
+            list.add(heap.poll());
+        }
+        Collections.reverse(list);
+        return list;
+    }
+
+    private Map<Integer, String> titlesOf(int skillId) {
+        Map<Integer, String> titles = new HashMap<>();
+        for (Material m : materialDAO.getMaterialsBySkillId(skillId)) {
+            titles.put(m.getId(), m.getTitle());
+        }
+        return titles;
+    }
+}
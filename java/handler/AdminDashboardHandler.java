@@ -1,12 +1,6 @@
 package handlers;
 
-import com.sun.net.httpserver.HttpHandler;
-import com.sun.net.httpserver.HttpExchange;
 import java.io.IOException;
-import java.io.OutputStream;
-import java.io.File;
-import java.io.FileInputStream;
-import java.nio.charset.StandardCharsets;
 import java.time.LocalDate;
 import java.time.format.DateTimeFormatter;
 import java.util.List;
@@ -15,30 +9,24 @@ import dao.SkillDAO;
 import dao.StudentDAO;
 import model.Skill;
 import model.Student;
-import model.User;
-import model.Admin;
-import util.SimpleSessionManager;
+import util.HttpResponses;
+import util.Request;
+import util.Router;
+import util.Template;
+import util.Log;
 
 /**
  * Handles Admin Dashboard requests.
  * Reads HTML template and injects dynamic data.
  */
-public class AdminDashboardHandler implements HttpHandler {
+public class AdminDashboardHandler implements Router.Route {
 
     private StudentDAO studentDAO = new StudentDAO();
     private SkillDAO skillDAO = new SkillDAO();
     private dao.EnrollmentDAO enrollmentDAO = new dao.EnrollmentDAO();
 
     @Override
-    public void handle(HttpExchange exchange) throws IOException {
-        // Session Check
-        User user = SimpleSessionManager.getSessionUser(exchange);
-        if (user == null || !(user instanceof Admin)) {
-            exchange.getResponseHeaders().set("Location", "/admin_login.html");
-            exchange.sendResponseHeaders(302, -1);
-            return;
-        }
-
+    public void handle(Request request) throws IOException {
         // Fetch Stats from Database
         int studentCount = 0;
         int totalCourseCount = 0;
@@ -62,35 +50,23 @@ public class AdminDashboardHandler implements HttpHandler {
             
             activeStudentCount = enrollmentDAO.getTotalUniqueEnrolledStudents();
         } catch (Exception e) {
-            e.printStackTrace();
+            Log.error("AdminDashboardHandler.handle failed", e);
         }
 
         // Get today's date
         String today = LocalDate.now().format(DateTimeFormatter.ofPattern("EEEE, MMMM d, yyyy"));
 
-        // Read HTML Template
-        File templateFile = new File("src/main/webapp/admin_dashboard.html");
-        String html = "";
-        try (FileInputStream fis = new FileInputStream(templateFile)) {
-            html = new String(fis.readAllBytes(), StandardCharsets.UTF_8);
-        }
-
-        // Inject Dynamic Data (replace placeholders)
-        // Inject Dynamic Data (replace placeholders)
-        html = html.replace("{{today}}", today);
-        html = html.replace("{{studentCount}}", String.valueOf(studentCount));
-        html = html.replace("{{activeStudentCount}}", String.valueOf(activeStudentCount));
-        html = html.replace("{{inactiveStudentCount}}", String.valueOf(studentCount - activeStudentCount));
-        html = html.replace("{{totalCourseCount}}", String.valueOf(totalCourseCount));
-        html = html.replace("{{activeCourseCount}}", String.valueOf(activeCourseCount));
-        html = html.replace("{{inactiveCourseCount}}", String.valueOf(totalCourseCount - activeCourseCount));
+        // Inject Dynamic Data into the (pre-parsed) template
+        Template.Values page = Template.get("admin_dashboard.html").values()
+                .set("today", today)
+                .set("studentCount", studentCount)
+                .set("activeStudentCount", activeStudentCount)
+                .set("inactiveStudentCount", studentCount - activeStudentCount)
+                .set("totalCourseCount", totalCourseCount)
+                .set("activeCourseCount", activeCourseCount)
+                .set("inactiveCourseCount", totalCourseCount - activeCourseCount);
 
         // Send Response
-        byte[] bytes = html.getBytes(StandardCharsets.UTF_8);
-        exchange.getResponseHeaders().set("Content-Type", "text/html; charset=UTF-8");
-        exchange.sendResponseHeaders(200, bytes.length);
-        try (OutputStream os = exchange.getResponseBody()) {
-            os.write(bytes);
-        }
+        HttpResponses.sendHtml(request.getExchange(), page.render());
     }
 }
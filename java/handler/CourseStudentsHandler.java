@@ -1,58 +1,75 @@
 package handlers;
 
-import com.sun.net.httpserver.HttpHandler;
 import com.sun.net.httpserver.HttpExchange;
 import java.io.IOException;
-import java.io.OutputStream;
 import java.nio.charset.StandardCharsets;
 import java.util.List;
 import java.util.Map;
 import java.util.HashMap;
-import java.net.URLDecoder;
+import java.net.URLEncoder;
 
+import dao.CohortAnalytics;
 import dao.EnrollmentDAO;
-import dao.StudentProgressDAO;
-import model.Student;
-import model.StudentProgress;
-import model.User;
-import model.Admin;
-import util.SimpleSessionManager;
+import dao.MaterialDAO;
+import dao.ProgressEventDAO;
+import dao.WeakAreas;
+import model.CohortStats;
+import model.DailyProgress;
+import model.Material;
+import model.MaterialRank;
+import model.RosterEntry;
+import model.SkillReadiness;
+import util.HttpResponses;
+import util.Params;
+import util.Request;
+import util.Router;
+import util.Template;
 
-public class CourseStudentsHandler implements HttpHandler {
+public class CourseStudentsHandler implements Router.Route {
 
     private EnrollmentDAO enrollmentDAO = new EnrollmentDAO();
-    private StudentProgressDAO progressDAO = new StudentProgressDAO();
+    private MaterialDAO materialDAO = new MaterialDAO();
+    private CohortAnalytics cohortAnalytics = new CohortAnalytics();
+    private WeakAreas weakAreas = new WeakAreas();
+    private ProgressEventDAO eventDAO = new ProgressEventDAO();
+    private static final int AREA_COUNT = 5;
+    private static final int TREND_DAYS = 30;
+    private static final int PAGE_SIZE = 50;
 
     @Override
-    public void handle(HttpExchange exchange) throws IOException {
-        User user = SimpleSessionManager.getSessionUser(exchange);
-        if (user == null || !(user instanceof Admin)) {
-            exchange.getResponseHeaders().set("Location", "/admin_login.html");
-            exchange.sendResponseHeaders(302, -1);
-            return;
-        }
-
-        String query = exchange.getRequestURI().getQuery();
-        Map<String, String> params = parseQuery(query);
+    public void handle(Request request) throws IOException {
+        // Admins only (checked by the Router)
+        HttpExchange exchange = request.getExchange();
+        Params params = request.getQuery();
 
-        String skillIdParam = params.get("skillId");
-        if (skillIdParam == null) {
+        int skillId = params.getInt("skillId", -1);
+        if (skillId < 0) {
             exchange.getResponseHeaders().set("Location", "subjects");
             exchange.sendResponseHeaders(302, -1);
             return;
         }
         
-        int skillId = Integer.parseInt(skillIdParam);
-        String skillName = params.get("skillName") != null ? params.get("skillName") : "Course";
+        String skillName = params.get("skillName", "Course");
 
-        List<Student> students = enrollmentDAO.getEnrolledStudentsBySkill(skillId);
-        int totalEnrolled = students.size();
+        String sort = params.get("sort");
+        if (!EnrollmentDAO.SORT_READINESS_ASC.equals(sort) && !EnrollmentDAO.SORT_NAME.equals(sort)) {
+            sort = EnrollmentDAO.SORT_READINESS_DESC;
+        }
+        int totalEnrolled = enrollmentDAO.countEnrolledStudents(skillId);
+        int pageCount = Math.max(1, (totalEnrolled + PAGE_SIZE - 1) / PAGE_SIZE);
+        int page = Math.max(1, Math.min(params.getInt("page", 1), pageCount));
+
+        // Only the visible page is loaded; readiness is aggregated by the database
+        List<RosterEntry> roster = enrollmentDAO.getCourseRoster(skillId, sort, (page - 1) * PAGE_SIZE, PAGE_SIZE);
+        String baseUrl = "course_students?skillId=" + skillId + "&skillName=" + URLEncoder.encode(skillName, StandardCharsets.UTF_8);
+        // Cohort statistics over all enrolled students (cached until progress changes)
+        CohortStats stats = totalEnrolled > 0 ? cohortAnalytics.getCohortStats(skillId) : null;
 
         StringBuilder html = new StringBuilder();
         html.append("<!DOCTYPE html>");
         html.append("<html lang='en'><head>");
         html.append("<meta charset='UTF-8'><meta name='viewport' content='width=device-width, initial-scale=1.0'>");
-        html.append("<title>Analytics: " + skillName + " | Admin</title>");
+        html.append("<title>Analytics: " + Template.escape(skillName) + " | Admin</title>");
         html.append("<link rel='stylesheet' type='text/css' href='css/style.css?v=3'>");
         html.append("<link href='https://fonts.googleapis.com/css2?family=Inter:wght@300;400;500;600;700;800&display=swap' rel='stylesheet'>");
         html.append("<link rel='stylesheet' href='https://cdnjs.cloudflare.com/ajax/libs/font-awesome/6.4.0/css/all.min.css'>");
@@ -106,7 +123,7 @@ public class CourseStudentsHandler implements HttpHandler {
         html.append("<span style='color:#94a3b8'>/</span>");
         html.append("<a href='subjects?mode=view' style='color:#64748b;text-decoration:none'>Course Analytics</a>");
         html.append("<span style='color:#94a3b8'>/</span>");
-        html.append("<span style='color:#0f172a;font-weight:500'>").append(skillName).append("</span>");
+        html.append("<span style='color:#0f172a;font-weight:500'>").append(Template.escape(skillName)).append("</span>");
         html.append("</nav>");
         
         // Header
@@ -115,7 +132,7 @@ public class CourseStudentsHandler implements HttpHandler {
         html.append("<div style='display:flex; align-items:center; gap:12px; margin-bottom:8px;'>");
         html.append("<span style='background:#e0e7ff; color:#4338ca; padding:4px 10px; border-radius:20px; font-size:0.75rem; font-weight:700;'>COURSE ANALYTICS</span>");
         html.append("</div>");
-        html.append("<h1 style='font-size: 2rem; font-weight: 700; color: #0f172a; margin: 0;'>" + skillName + "</h1>");
+        html.append("<h1 style='font-size: 2rem; font-weight: 700; color: #0f172a; margin: 0;'>" + Template.escape(skillName) + "</h1>");
         html.append("</div>");
         html.append("<div>");
         html.append("</div>");
@@ -127,13 +144,18 @@ public class CourseStudentsHandler implements HttpHandler {
         html.append("<div class='stat-icon'><i class='fas fa-users'></i></div>");
         html.append("<div class='stat-info'><h3>" + totalEnrolled + "</h3><p>Total Enrolled Students</p></div>");
         html.append("</div>");
-        // Placeholder for future stats
-        html.append("<div class='stat-card' style='opacity:0.6; padding:0; border:2px dashed #e2e8f0; background:none; display:flex; align-items:center; justify-content:center; color:#94a3b8;'>");
-        html.append("More analytics coming soon...");
-        html.append("</div>");
+        if (stats != null) {
+            appendStatCard(html, "fa-chart-line", String.format("%.0f%%", stats.getMean()), "Mean Readiness");
+            appendStatCard(html, "fa-equals", String.format("%.0f%%", stats.getMedian()), "Median Readiness");
+            appendStatCard(html, "fa-trophy", String.format("%.0f%%", stats.getP90()), "90th Percentile");
+        }
         html.append("</div>");
 
-        if (students.isEmpty()) {
+        if (stats != null && stats.getStudentCount() > 0) {
+            appendCohortAnalytics(html, stats, skillId);
+        }
+
+        if (totalEnrolled == 0) {
             html.append("<div style='padding: 60px; text-align: center; background: white; border-radius: 12px; border: 1px dashed #cbd5e1;'>");
             html.append("<i class='fas fa-users-slash' style='font-size: 3rem; color: #cbd5e1; margin-bottom: 20px;'></i>");
             html.append("<p style='color: #64748b; font-size: 1.1rem;'>No students enrolled in this course yet.</p>");
@@ -143,43 +165,36 @@ public class CourseStudentsHandler implements HttpHandler {
             html.append("<table style='width: 100%; border-collapse: collapse;'>");
             html.append("<thead>");
             html.append("<tr>");
-            html.append("<th style='width:30%;'>Student Name</th>");
+            String nextReadinessSort = EnrollmentDAO.SORT_READINESS_DESC.equals(sort)
+                    ? EnrollmentDAO.SORT_READINESS_ASC : EnrollmentDAO.SORT_READINESS_DESC;
+            String readinessIcon = EnrollmentDAO.SORT_READINESS_DESC.equals(sort) ? "fa-sort-down"
+                    : (EnrollmentDAO.SORT_READINESS_ASC.equals(sort) ? "fa-sort-up" : "fa-sort");
+            String nameIcon = EnrollmentDAO.SORT_NAME.equals(sort) ? "fa-sort-up" : "fa-sort";
+            html.append("<th style='width:30%;'><a href='").append(baseUrl).append("&sort=").append(EnrollmentDAO.SORT_NAME)
+                    .append("' style='color:inherit;text-decoration:none'>Student Name <i class='fas ").append(nameIcon)
+                    .append("' style='font-size:0.8em;color:#cbd5e1;margin-left:4px'></i></a></th>");
             html.append("<th style='width:30%;'>Email Address</th>");
             html.append("<th style='text-align:center;'>Progress</th>");
-            html.append("<th style='text-align:right;'>Readiness Score</th>");
+            html.append("<th style='text-align:right;'><a href='").append(baseUrl).append("&sort=").append(nextReadinessSort)
+                    .append("' style='color:inherit;text-decoration:none'>Readiness Score <i class='fas ").append(readinessIcon)
+                    .append("' style='font-size:0.8em;color:#cbd5e1;margin-left:4px'></i></a></th>");
             html.append("</tr>");
             html.append("</thead>");
             html.append("<tbody>");
 
-            for (Student s : students) {
-                // Fetch ALL progress for student, then filter by this skill
-                List<StudentProgress> allProgress = progressDAO.getProgressByStudentId(s.getId());
-                
-                double totalWeight = 0;
-                double completedWeight = 0;
-                int totalMaterials = 0;
-                int completedMaterials = 0;
-                
-                for (StudentProgress sp : allProgress) {
-                    if (skillName.equals(sp.getSkillName())) { 
-                        totalMaterials++;
-                        totalWeight += sp.getMaterialWeight();
-                        if ("Completed".equalsIgnoreCase(sp.getStatus())) {
-                            completedWeight += sp.getMaterialWeight();
-                            completedMaterials++;
-                        }
-                    }
-                }
-                
-                double readiness = (totalWeight > 0) ? (completedWeight / totalWeight) * 100 : 0;
+            for (RosterEntry s : roster) {
+                SkillReadiness r = s.getReadiness();
+                int totalMaterials = r.getTotalCount();
+                int completedMaterials = r.getCompletedCount();
+                double readiness = r.getReadiness();
                 String initials = s.getName().length() > 0 ? s.getName().substring(0, 1).toUpperCase() : "?";
 
                 html.append("<tr>");
-                html.append("<td><div class='user-cell'><div class='user-avatar'>" + initials + "</div><strong>" + s.getName() + "</strong></div></td>");
-                html.append("<td>" + s.getUsername() + "</td>");
+                html.append("<td><div class='user-cell'><div class='user-avatar'>" + Template.escape(initials) + "</div><strong>" + Template.escape(s.getName()) + "</strong></div></td>");
+                html.append("<td>" + Template.escape(s.getEmail()) + "</td>");
                 
                 // Material Progress Bar
-                int matPercent = (totalMaterials > 0) ? (completedMaterials * 100 / totalMaterials) : 0;
+                int matPercent = r.getProgressPercent();
                 // Green if >= 80% (Rewarding), Orange if >= 40%, Blue otherwise
                 String matColor = matPercent >= 80 ? "#10b981" : (matPercent >= 40 ? "#3b82f6" : "#64748b");
                 html.append("<td style='vertical-align:middle'>");
@@ -198,33 +213,165 @@ public class CourseStudentsHandler implements HttpHandler {
             html.append("</tbody>");
             html.append("</table>");
             html.append("</div>");
+
+            // Pager
+            int first = (page - 1) * PAGE_SIZE + 1;
+            int last = Math.min(totalEnrolled, page * PAGE_SIZE);
+            String pageLink = "padding:8px 16px;border:1px solid #e2e8f0;border-radius:8px;background:white;color:#334155;text-decoration:none;font-weight:500;font-size:0.9rem";
+            html.append("<div style='display:flex;justify-content:space-between;align-items:center;margin-top:20px;color:#64748b;font-size:0.9rem'>");
+            html.append("<span>Showing " + first + "&ndash;" + last + " of " + totalEnrolled + " students</span>");
+            html.append("<div style='display:flex;gap:10px'>");
+            if (page > 1) {
+                html.append("<a href='").append(baseUrl).append("&sort=").append(sort).append("&page=").append(page - 1)
+                        .append("' style='").append(pageLink).append("'><i class='fas fa-chevron-left'></i> Previous</a>");
+            }
+            if (page < pageCount) {
+                html.append("<a href='").append(baseUrl).append("&sort=").append(sort).append("&page=").append(page + 1)
+                        .append("' style='").append(pageLink).append("'>Next <i class='fas fa-chevron-right'></i></a>");
+            }
+            html.append("</div>");
+            html.append("</div>");
         }
         html.append("</div>"); // End container
         html.append("</body></html>");
 
-        byte[] bytes = html.toString().getBytes(StandardCharsets.UTF_8);
-        exchange.getResponseHeaders().set("Content-Type", "text/html; charset=UTF-8");
-        exchange.sendResponseHeaders(200, bytes.length);
-        try (OutputStream os = exchange.getResponseBody()) {
-            os.write(bytes);
+        HttpResponses.sendHtml(exchange, html.toString());
+    }
+
+    private void appendStatCard(StringBuilder html, String icon, String value, String label) {
+        html.append("<div class='stat-card'>");
+        html.append("<div class='stat-icon'><i class='fas ").append(icon).append("'></i></div>");
+        html.append("<div class='stat-info'><h3>").append(value).append("</h3><p>").append(label).append("</p></div>");
+        html.append("</div>");
+    }
+
+    // Readiness distribution, threshold shares and per-module completion rates
+    private void appendCohortAnalytics(StringBuilder html, CohortStats stats, int skillId) {
+        String panel = "background:white;border:1px solid #e2e8f0;border-radius:12px;padding:24px;box-shadow:0 1px 3px rgba(0,0,0,0.05)";
+        String heading = "margin:0 0 20px;font-size:1rem;font-weight:600;color:#0f172a";
+        html.append("<div style='display:grid;grid-template-columns:repeat(auto-fit,minmax(420px,1fr));gap:24px'>");
+
+        // Histogram
+        int maxBucket = 1;
+        for (int b = 0; b < stats.getHistogramBuckets(); b++) {
+            maxBucket = Math.max(maxBucket, stats.getHistogramCount(b));
+        }
+        int bucketWidth = 100 / stats.getHistogramBuckets();
+        html.append("<div style='").append(panel).append("'>");
+        html.append("<h3 style='").append(heading).append("'>Readiness Distribution</h3>");
+        html.append("<div style='display:flex;align-items:flex-end;gap:6px;height:140px'>");
+        for (int b = 0; b < stats.getHistogramBuckets(); b++) {
+            int count = stats.getHistogramCount(b);
+            int height = count * 100 / maxBucket;
+            int low = b * bucketWidth;
+            String range = low + "&ndash;" + (b == stats.getHistogramBuckets() - 1 ? 100 : low + bucketWidth - 1) + "%";
+            html.append("<div title='").append(range).append(": ").append(count).append(" students' style='flex:1;background:#6366f1;border-radius:4px 4px 0 0;min-height:2px;height:")
+                    .append(height).append("%'></div>");
         }
+        html.append("</div>");
+        html.append("<div style='display:flex;gap:6px;font-size:0.7rem;color:#94a3b8;margin-top:6px'>");
+        for (int b = 0; b < stats.getHistogramBuckets(); b++) {
+            html.append("<span style='flex:1;text-align:center'>").append(b * bucketWidth).append("</span>");
+        }
+        html.append("</div>");
+
+        // Threshold shares
+        html.append("<div style='display:flex;gap:12px;margin-top:24px'>");
+        for (int i = 0; i < stats.getThresholdCount(); i++) {
+            html.append("<div style='flex:1;background:#f8fafc;border-radius:8px;padding:12px;text-align:center'>");
+            html.append("<div style='font-size:1.4rem;font-weight:700;color:#0f172a'>")
+                    .append(String.format("%.0f%%", stats.getShareAbove(i) * 100)).append("</div>");
+            html.append("<div style='font-size:0.8rem;color:#64748b'>at or above ").append(stats.getThreshold(i)).append("%</div>");
+            html.append("</div>");
+        }
+        html.append("</div>");
+        html.append("</div>");
+
+        // Per-module completion
+        Map<Integer, String> titles = new HashMap<>();
+        for (Material m : materialDAO.getMaterialsBySkillId(skillId)) {
+            titles.put(m.getId(), m.getTitle());
+        }
+        html.append("<div style='").append(panel).append("'>");
+        html.append("<h3 style='").append(heading).append("'>Module Completion</h3>");
+        if (stats.getMaterialCount() == 0) {
+            html.append("<p style='color:#64748b;margin:0'>This course has no modules yet.</p>");
+        }
+        for (int i = 0; i < stats.getMaterialCount(); i++) {
+            int rate = (int) Math.round(stats.getCompletionRate(i) * 100);
+            String title = titles.getOrDefault(stats.getMaterialId(i), "Module " + (i + 1));
+            html.append("<div style='margin-bottom:14px'>");
+            html.append("<div style='display:flex;justify-content:space-between;font-size:0.85rem;margin-bottom:4px;color:#334155'><span>")
+                    .append(Template.escape(title)).append("</span><span>").append(stats.getMaterialCompleted(i))
+                    .append(" &middot; ").append(rate).append("%</span></div>");
+            html.append("<div class='progress-track' style='margin-top:0;height:6px'><div class='progress-fill' style='width:")
+                    .append(rate).append("%;background:#10b981'></div></div>");
+            html.append("</div>");
+        }
+        html.append("</div>");
+
+        appendTrendPanel(html, panel, heading, eventDAO.getSkillTrend(skillId, TREND_DAYS));
+
+        // Weak and strong areas
+        appendAreaPanel(html, panel, heading, "fa-triangle-exclamation", "#dc2626", "Weak Areas",
+                weakAreas.getWeakestMaterials(skillId, AREA_COUNT), true);
+        appendAreaPanel(html, panel, heading, "fa-star", "#16a34a", "Strong Areas",
+                weakAreas.getStrongestMaterials(skillId, AREA_COUNT), false);
+
+        html.append("</div>");
     }
 
-    private Map<String, String> parseQuery(String query) {
-        Map<String, String> result = new HashMap<>();
-        if (query == null || query.isEmpty()) return result;
-        
-        for (String param : query.split("&")) {
-            String[] entry = param.split("=");
-            if (entry.length > 1) {
-                try {
-                result.put(
-                    URLDecoder.decode(entry[0], StandardCharsets.UTF_8.name()),
-                    URLDecoder.decode(entry[1], StandardCharsets.UTF_8.name())
-                );
-                } catch (Exception e) {}
+    // Completions per day (bars) with the cohort's average readiness at the start and end of the window
+    private void appendTrendPanel(StringBuilder html, String panel, String heading, List<DailyProgress> trend) {
+        html.append("<div style='").append(panel).append("'>");
+        html.append("<h3 style='").append(heading).append("'>Completions, last ").append(TREND_DAYS).append(" days</h3>");
+        if (trend.isEmpty()) {
+            html.append("<p style='color:#64748b;margin:0'>No progress history yet.</p></div>");
+            return;
+        }
+        int max = 1;
+        int total = 0;
+        for (DailyProgress d : trend) {
+            max = Math.max(max, d.getCompletions());
+            total += d.getCompletions();
+        }
+        html.append("<div style='display:flex;align-items:flex-end;gap:2px;height:100px'>");
+        for (DailyProgress d : trend) {
+            html.append("<div title='").append(d.getDay()).append(": ").append(d.getCompletions()).append(" completed, readiness ")
+                    .append(String.format("%.0f", d.getReadiness())).append("%' style='flex:1;background:#10b981;border-radius:2px 2px 0 0;min-height:1px;height:")
+                    .append(d.getCompletions() * 100 / max).append("%'></div>");
+        }
+        html.append("</div>");
+        DailyProgress firstDay = trend.get(0);
+        DailyProgress lastDay = trend.get(trend.size() - 1);
+        html.append("<div style='display:flex;justify-content:space-between;font-size:0.8rem;color:#64748b;margin-top:10px'>");
+        html.append("<span>").append(total).append(" modules completed</span>");
+        html.append("<span>Avg readiness ").append(String.format("%.0f", firstDay.getReadiness())).append("% &rarr; ")
+                .append(String.format("%.0f", lastDay.getReadiness())).append("%</span>");
+        html.append("</div>");
+        html.append("</div>");
+    }
+
+    private void appendAreaPanel(StringBuilder html, String panel, String heading, String icon, String color,
+                                 String title, List<MaterialRank> ranks, boolean weak) {
+        html.append("<div style='").append(panel).append("'>");
+        html.append("<h3 style='").append(heading).append("'><i class='fas ").append(icon).append("' style='color:")
+                .append(color).append(";margin-right:8px'></i>").append(title).append("</h3>");
+        if (ranks.isEmpty()) {
+            html.append("<p style='color:#64748b;margin:0'>").append(weak ? "No weak areas: every module is completed." : "No modules completed yet.").append("</p>");
+        }
+        for (MaterialRank r : ranks) {
+            String name = r.getTitle() != null ? r.getTitle() : "Module";
+            html.append("<div style='display:flex;justify-content:space-between;align-items:center;padding:10px 0;border-bottom:1px solid #f1f5f9;font-size:0.9rem'>");
+            html.append("<div><div style='font-weight:600;color:#334155'>").append(Template.escape(name)).append("</div>");
+            html.append("<div style='font-size:0.8rem;color:#94a3b8'>Weight ").append(r.getWeight()).append("% &middot; ")
+                    .append(Math.round(r.getCompletionRate() * 100)).append("% completed</div></div>");
+            if (weak) {
+                html.append("<span style='color:").append(color).append(";font-weight:600' title='Average readiness points lost per student'>&minus;")
+                        .append(String.format("%.1f", r.getScore())).append(" pts</span>");
             }
+            html.append("</div>");
         }
-        return result;
+        html.append("</div>");
     }
 }
@@ -1,70 +1,66 @@
 package handlers;
 
-import com.sun.net.httpserver.HttpHandler;
 import com.sun.net.httpserver.HttpExchange;
 import java.io.IOException;
-import java.io.OutputStream;
-import java.io.File;
-import java.io.FileInputStream;
-import java.nio.charset.StandardCharsets;
 import java.util.List;
 import java.util.Map;
-import java.util.HashMap;
 import java.util.ArrayList;
-import java.net.URLDecoder;
 
 import model.Student;
-import model.User;
 import model.StudentProgress;
 import model.Skill;
+import model.SkillReadiness;
 import model.Material;
-import util.SimpleSessionManager;
+import util.HttpResponses;
+import util.Params;
+import util.Request;
+import util.Router;
+import util.Template;
+import util.Thumbnails;
+import util.Log;
 
 /**
  * Handles Student Dashboard requests.
  * Reads HTML templates and injects dynamic data.
  */
-public class DashboardHandler implements HttpHandler {
+public class DashboardHandler implements Router.Route {
 
     private dao.StudentProgressDAO progressDAO = new dao.StudentProgressDAO();
     private dao.SkillDAO skillDAO = new dao.SkillDAO();
     private dao.EnrollmentDAO enrollmentDAO = new dao.EnrollmentDAO();
     private dao.MaterialDAO materialDAO = new dao.MaterialDAO();
+    private dao.ReadinessDAO readinessDAO = new dao.ReadinessDAO();
+    private dao.ProgressIndex progressIndex = dao.ProgressIndex.getInstance();
+    private dao.WeakAreas weakAreas = new dao.WeakAreas();
+    private dao.ProgressEventDAO eventDAO = new dao.ProgressEventDAO();
 
     @Override
-    public void handle(HttpExchange exchange) throws IOException {
-        String method = exchange.getRequestMethod();
-
-        // Session Check
-        User user = SimpleSessionManager.getSessionUser(exchange);
-        if (user == null || !(user instanceof Student)) {
-            exchange.getResponseHeaders().set("Location", "/login.html");
-            exchange.sendResponseHeaders(302, -1);
-            return;
-        }
-
-        if ("POST".equalsIgnoreCase(method)) {
-            handlePost(exchange, (Student) user);
+    public void handle(Request request) throws IOException {
+        // Students only (checked by the Router)
+        if (request.isPost()) {
+            handlePost(request.getExchange(), request.getForm(), request.getStudent());
         } else {
-            handleGet(exchange, (Student) user);
+            handleGet(request.getExchange(), request.getQuery(), request.getStudent());
         }
     }
 
-    private void handlePost(HttpExchange exchange, Student student) throws IOException {
-        String query = new String(exchange.getRequestBody().readAllBytes(), StandardCharsets.UTF_8);
-        Map<String, String> params = parseQuery(query);
-
-        int studentId = Integer.parseInt(params.get("studentId"));
-        int materialId = Integer.parseInt(params.get("materialId"));
+    private void handlePost(HttpExchange exchange, Params params, Student student) throws IOException {
+        // Students only change their own progress, and only to a status the table allows
+        int studentId = student.getId();
+        int materialId = params.getInt("materialId", -1);
         String status = params.get("status");
+        if (!"Completed".equals(status) && !"Not Started".equals(status)) {
+            HttpResponses.sendError(exchange, 400, "Unknown status.");
+            return;
+        }
 
         progressDAO.updateStatus(studentId, materialId, status);
 
         String view = params.get("view");
-        String skillId = params.get("skillId");
+        int skillId = params.getInt("skillId", -1);
 
         String redirectUrl = "/dashboard";
-        if ("details".equals(view) && skillId != null) {
+        if ("details".equals(view) && skillId >= 0) {
             redirectUrl += "?view=details&skillId=" + skillId;
         }
 
@@ -72,81 +68,65 @@ public class DashboardHandler implements HttpHandler {
         exchange.sendResponseHeaders(302, -1);
     }
 
-    private void handleGet(HttpExchange exchange, Student student) throws IOException {
-        String queryStr = exchange.getRequestURI().getQuery();
-        Map<String, String> params = parseQuery(queryStr);
-
-        String view = params.get("view");
+    private void handleGet(HttpExchange exchange, Params params, Student student) throws IOException {
+        String view = params.get("view", "");
         int studentId = student.getId();
         String studentName = student.getName();
+        int skillId = params.getInt("skillId", -1);
+
+        Template.Rendered page;
+
+        switch (view) {
+            case "active":
+                page = renderActiveCourses(studentId, studentName);
+                break;
+            case "available":
+                page = renderAvailableCourses(studentId, studentName);
+                break;
+            case "details":
+            case "preview":
+                if (skillId < 0) {
+                    exchange.getResponseHeaders().set("Location", "/dashboard");
+                    exchange.sendResponseHeaders(302, -1);
+                    return;
+                }
+                page = "details".equals(view)
+                        ? renderCourseDetails(studentId, studentName, skillId)
+                        : renderCoursePreview(studentName, skillId);
+                break;
+            default:
+                page = renderHome(studentId, studentName);
+        }
 
-        String html = "";
+        HttpResponses.sendHtml(exchange, page);
+    }
 
+    private Template.Rendered renderHome(int studentId, String studentName) throws IOException {
         // Date
         String today = java.time.LocalDate.now()
                 .format(java.time.format.DateTimeFormatter.ofPattern("EEEE, MMMM d, yyyy"));
 
-        if (view == null || view.isEmpty()) {
-            // Home view
-            html = readTemplate("student_dashboard.html");
-            html = html.replace("{{studentName}}", studentName);
-            html = html.replace("{{today}}", today);
-
-            // Stats
-            int enrolledCount = enrollmentDAO.getEnrolledSkillIds(studentId).size();
-            int totalCount = skillDAO.getAllSkills().size();
-
-            html = html.replace("{{enrolledCoursesCount}}", String.valueOf(enrolledCount));
-            html = html.replace("{{totalCoursesCount}}", String.valueOf(totalCount));
-        } else if ("active".equals(view)) {
-            html = renderActiveCourses(studentId, studentName);
-        } else if ("available".equals(view)) {
-            html = renderAvailableCourses(studentId, studentName);
-        } else if ("details".equals(view)) {
-            String skillIdStr = params.get("skillId");
-            if (skillIdStr != null) {
-                html = renderCourseDetails(studentId, studentName, Integer.parseInt(skillIdStr));
-            } else {
-                exchange.getResponseHeaders().set("Location", "/dashboard");
-                exchange.sendResponseHeaders(302, -1);
-                return;
-            }
-        } else if ("preview".equals(view)) {
-            String skillIdStr = params.get("skillId");
-            if (skillIdStr != null) {
-                html = renderCoursePreview(studentName, Integer.parseInt(skillIdStr));
-            } else {
-                exchange.getResponseHeaders().set("Location", "/dashboard");
-                exchange.sendResponseHeaders(302, -1);
-                return;
-            }
-        }
-
-        byte[] bytes = html.getBytes(StandardCharsets.UTF_8);
-        exchange.getResponseHeaders().set("Content-Type", "text/html; charset=UTF-8");
-        exchange.sendResponseHeaders(200, bytes.length);
-        try (OutputStream os = exchange.getResponseBody()) {
-            os.write(bytes);
-        }
-    }
+        // Stats
+        int enrolledCount = readinessDAO.getReadinessByStudent(studentId).size();
+        int totalCount = skillDAO.getAllSkills().size();
 
-    private String readTemplate(String filename) throws IOException {
-        File file = new File("src/main/webapp/" + filename);
-        try (FileInputStream fis = new FileInputStream(file)) {
-            return new String(fis.readAllBytes(), StandardCharsets.UTF_8);
-        }
+        return Template.get("student_dashboard.html").values()
+                .set("studentName", studentName)
+                .set("today", today)
+                .set("enrolledCoursesCount", enrolledCount)
+                .set("totalCoursesCount", totalCount)
+                .render();
     }
 
-    private String renderActiveCourses(int studentId, String studentName) throws IOException {
-        String html = readTemplate("active_courses.html");
-        html = html.replace("{{studentName}}", studentName);
+    private Template.Rendered renderActiveCourses(int studentId, String studentName) throws IOException {
 
-        List<Integer> enrolledSkillIds = enrollmentDAO.getEnrolledSkillIds(studentId);
+        // Progress for every enrolled course, from the READINESS rows
+        Map<Integer, SkillReadiness> readinessBySkill = readinessDAO.getReadinessByStudent(studentId);
         List<Skill> allSkills = skillDAO.getAllSkills();
         List<Skill> activeSkills = new ArrayList<>();
 
         for (Skill s : allSkills) {
-            if (enrolledSkillIds.contains(s.getSkillId())) {
+            if (readinessBySkill.containsKey(s.getSkillId())) {
                 activeSkills.add(s);
             }
         }
@@ -171,8 +151,8 @@ public class DashboardHandler implements HttpHandler {
                 content.append("<div class='course-card' onclick=\"").append(onClick).append("\" style='")
                         .append(cursorStyle).append("'>");
 
-                String img = (s.getImageUrl() != null && !s.getImageUrl().isEmpty()) ? "uploads/" + s.getImageUrl()
-                        : null;
+                // Card-sized thumbnail, not the original upload
+                String img = Thumbnails.cardUrl(s.getImageUrl());
                 if (img != null) {
                     content.append("<div class='course-img' style='background-image:url(\"").append(img)
                             .append("\");'>");
@@ -190,18 +170,10 @@ public class DashboardHandler implements HttpHandler {
                 content.append("</div>");
 
                 content.append("<div class='course-body'>");
-                content.append("<h3 class='course-title'>").append(s.getSkillName()).append("</h3>");
-
-                // Calculate Progress
-                List<StudentProgress> allProgress = progressDAO.getProgressByStudentId(studentId);
-                int completedMaterials = 0;
-                int totalMaterials = materialDAO.getMaterialsBySkillId(s.getSkillId()).size();
-                for (StudentProgress sp : allProgress) {
-                    if (s.getSkillName().equals(sp.getSkillName()) && "Completed".equalsIgnoreCase(sp.getStatus())) {
-                        completedMaterials++;
-                    }
-                }
-                int progressPercent = (totalMaterials > 0) ? (completedMaterials * 100 / totalMaterials) : 0;
+                content.append("<h3 class='course-title'>").append(Template.escape(s.getSkillName())).append("</h3>");
+
+                // Progress
+                int progressPercent = readinessBySkill.get(s.getSkillId()).getProgressPercent();
                 // Green if >= 80% (Rewarding), Orange if >= 40%, Blue otherwise
                 String progressColor = progressPercent >= 80 ? "#10b981"
                         : (progressPercent >= 40 ? "#f59e0b" : "#4f46e5");
@@ -229,13 +201,13 @@ public class DashboardHandler implements HttpHandler {
             content.append("</div>");
         }
 
-        html = html.replace("{{coursesContent}}", content.toString());
-        return html;
+        return Template.get("active_courses.html").values()
+                .set("studentName", studentName)
+                .setHtml("coursesContent", content.toString())
+                .render();
     }
 
-    private String renderAvailableCourses(int studentId, String studentName) throws IOException {
-        String html = readTemplate("available_courses.html");
-        html = html.replace("{{studentName}}", studentName);
+    private Template.Rendered renderAvailableCourses(int studentId, String studentName) throws IOException {
 
         List<Integer> enrolledSkillIds = enrollmentDAO.getEnrolledSkillIds(studentId);
         List<Skill> allSkills = skillDAO.getAllSkills();
@@ -262,8 +234,8 @@ public class DashboardHandler implements HttpHandler {
 
                 content.append("<div class='course-card'>");
 
-                String img = (s.getImageUrl() != null && !s.getImageUrl().isEmpty()) ? "uploads/" + s.getImageUrl()
-                        : null;
+                // Card-sized thumbnail, not the original upload
+                String img = Thumbnails.cardUrl(s.getImageUrl());
                 if (img != null) {
                     content.append("<div class='course-img' style='background-image:url(\"").append(img)
                             .append("\");'>");
@@ -281,7 +253,7 @@ public class DashboardHandler implements HttpHandler {
                 content.append("</div>");
 
                 content.append("<div class='course-body'>");
-                content.append("<h3 class='course-title'>").append(s.getSkillName()).append("</h3>");
+                content.append("<h3 class='course-title'>").append(Template.escape(s.getSkillName())).append("</h3>");
                 content.append("<p class='course-desc'>Master this subject by enrolling today.</p>");
 
                 content.append("<div class='btn-group' style='display:flex;gap:12px;'>");
@@ -301,26 +273,18 @@ public class DashboardHandler implements HttpHandler {
             content.append("</div>");
         }
 
-        html = html.replace("{{coursesContent}}", content.toString());
-        return html;
+        return Template.get("available_courses.html").values()
+                .set("studentName", studentName)
+                .setHtml("coursesContent", content.toString())
+                .render();
     }
 
-    private String renderCoursePreview(String studentName, int skillId) throws IOException {
-        String skillName = "Course Preview";
-        for (Skill s : skillDAO.getAllSkills()) {
-            if (s.getSkillId() == skillId) {
-                skillName = s.getSkillName();
-                break;
-            }
-        }
+    private Template.Rendered renderCoursePreview(String studentName, int skillId) throws IOException {
+        Skill skill = skillDAO.getSkillById(skillId);
+        String skillName = skill != null ? skill.getSkillName() : "Course Preview";
 
         List<Material> materials = materialDAO.getMaterialsBySkillId(skillId);
 
-        // Read template
-        String html = readTemplate("course_preview.html");
-        html = html.replace("{{studentName}}", studentName);
-        html = html.replace("{{skillName}}", skillName);
-
         // Build materials content exactly like original servlet
         StringBuilder content = new StringBuilder();
 
@@ -362,7 +326,7 @@ public class DashboardHandler implements HttpHandler {
                 // Header
                 content.append("<div class='material-header'>");
                 content.append("<div class='material-info'>");
-                content.append("<h3>").append(m.getTitle()).append("</h3>");
+                content.append("<h3>").append(Template.escape(m.getTitle())).append("</h3>");
                 content.append("<div class='material-type'><i class='fas ").append(typeIcon).append("'></i> ")
                         .append(typeName).append("</div>");
                 content.append("</div>");
@@ -374,20 +338,20 @@ public class DashboardHandler implements HttpHandler {
                 content.append("<div class='material-icon' style='background:").append(iconBg).append(";color:")
                         .append(iconColor).append("'><i class='fas ").append(typeIcon).append("'></i></div>");
                 content.append("<div class='material-details'>");
-                content.append("<div class='title'>").append(m.getTitle()).append("</div>");
+                content.append("<div class='title'>").append(Template.escape(m.getTitle())).append("</div>");
                 content.append("<div class='hint'>Preview content available.</div>");
                 content.append("</div>");
 
                 // Action button based on type
                 if ("TEXT".equals(m.getType())) {
-                    String safeTitle = m.getTitle() != null ? m.getTitle().replace("'", "\\'") : "Text Content";
+                    String safeTitle = m.getTitle() != null ? Template.escape(m.getTitle().replace("'", "\\'")) : "Text Content";
                     String base64Content = "";
                     if (m.getResourceUrl() != null) {
                         try {
                             base64Content = java.util.Base64.getEncoder()
                                     .encodeToString(m.getResourceUrl().getBytes("UTF-8"));
                         } catch (Exception e) {
-                            e.printStackTrace();
+                            Log.error("Encoding material " + m.getId() + " failed", e);
                         }
                     }
                     content.append("<button onclick=\"openTextModal('").append(safeTitle).append("', '")
@@ -396,13 +360,13 @@ public class DashboardHandler implements HttpHandler {
                     String href = m.getResourceUrl();
                     if (href != null && !href.startsWith("http"))
                         href = "http://" + href;
-                    content.append("<a href='").append(href).append(
+                    content.append("<a href='").append(Template.escape(href)).append(
                             "' target='_blank' class='btn-action'>Visit Link <i class='fas fa-external-link-alt' style='font-size:0.8em;margin-left:4px'></i></a>");
                 } else if ("FILE".equals(m.getType()) || "IMAGE".equals(m.getType())) {
                     String href = "uploads/"
                             + (m.getResourceUrl() != null ? m.getResourceUrl().replace(" ", "%20") : "");
                     String btnText = "IMAGE".equals(m.getType()) ? "View Image" : "Download File";
-                    content.append("<a href='").append(href).append("' target='_blank' class='btn-action'>")
+                    content.append("<a href='").append(Template.escape(href)).append("' target='_blank' class='btn-action'>")
                             .append(btnText)
                             .append(" <i class='fas fa-download' style='font-size:0.8em;margin-left:4px'></i></a>");
                 }
@@ -423,48 +387,70 @@ public class DashboardHandler implements HttpHandler {
             content.append("</div>");
         }
 
-        html = html.replace("{{materialsContent}}", content.toString());
-        return html;
+        return Template.get("course_preview.html").values()
+                .set("studentName", studentName)
+                .set("skillName", skillName)
+                .setHtml("materialsContent", content.toString())
+                .render();
     }
 
-    private String renderCourseDetails(int studentId, String studentName, int skillId) throws IOException {
-        String skillName = "Course Details";
-        for (Skill s : skillDAO.getAllSkills()) {
-            if (s.getSkillId() == skillId) {
-                skillName = s.getSkillName();
-                break;
-            }
-        }
+    private Template.Rendered renderCourseDetails(int studentId, String studentName, int skillId) throws IOException {
+        Skill skill = skillDAO.getSkillById(skillId);
+        String skillName = skill != null ? skill.getSkillName() : "Course Details";
 
-        List<StudentProgress> allProgress = progressDAO.getProgressByStudentId(studentId);
-        List<StudentProgress> courseMaterials = new ArrayList<>();
-        for (StudentProgress sp : allProgress) {
-            if (sp.getSkillName().equals(skillName)) {
-                courseMaterials.add(sp);
-            }
-        }
+        List<StudentProgress> courseMaterials = progressDAO.getProgressByStudentAndSkill(studentId, skillId);
 
-        double totalWeight = 0;
-        double completedWeight = 0;
-        for (StudentProgress sp : courseMaterials) {
-            totalWeight += sp.getMaterialWeight();
-            if ("Completed".equalsIgnoreCase(sp.getStatus())) {
-                completedWeight += sp.getMaterialWeight();
-            }
+        // Readiness and the next module come from the in-memory completion bitmasks
+        dao.ProgressIndex.SkillProgress index = progressIndex.getSkill(skillId);
+        double readiness;
+        int nextMaterialId;
+        if (index != null) {
+            readiness = index.getReadiness(studentId);
+            nextMaterialId = index.getNextIncomplete(studentId);
+        } else {
+            SkillReadiness skillReadiness = readinessDAO.getReadiness(studentId, skillId);
+            readiness = skillReadiness != null ? skillReadiness.getReadiness() : 0;
+            nextMaterialId = -1;
         }
-        double readiness = (totalWeight > 0) ? (completedWeight / totalWeight) * 100 : 0;
         String readinessColor = (readiness >= 100) ? "#10b981" : "#4f46e5";
 
-        // Read template
-        String html = readTemplate("course_details.html");
-        html = html.replace("{{studentName}}", studentName);
-        html = html.replace("{{skillName}}", skillName);
-        html = html.replace("{{readiness}}", String.format("%.0f", readiness));
-        html = html.replace("{{readinessColor}}", readinessColor);
-
         // Build materials content exactly like original servlet
         StringBuilder content = new StringBuilder();
 
+        // Last two weeks of progress, from the daily rollups
+        List<model.DailyProgress> trend = eventDAO.getStudentTrend(studentId, skillId, 14);
+        int recentCompletions = 0;
+        for (model.DailyProgress d : trend) {
+            recentCompletions += d.getCompletions();
+        }
+        if (!trend.isEmpty()) {
+            double gained = trend.get(trend.size() - 1).getReadiness() - trend.get(0).getReadiness();
+            content.append("<div style='display:flex;align-items:center;gap:20px;background:white;border:1px solid #e2e8f0;border-radius:12px;padding:16px 30px;margin-bottom:24px'>");
+            content.append("<div style='display:flex;align-items:flex-end;gap:2px;height:36px;width:140px'>");
+            for (model.DailyProgress d : trend) {
+                content.append("<div title='").append(d.getDay()).append(": ").append(String.format("%.0f", d.getReadiness()))
+                        .append("%' style='flex:1;background:#a5b4fc;min-height:1px;height:").append(Math.round(d.getReadiness())).append("%'></div>");
+            }
+            content.append("</div>");
+            content.append("<div style='font-size:0.9rem;color:#334155'><strong>").append(recentCompletions)
+                    .append("</strong> modules completed in the last 14 days &middot; readiness ")
+                    .append(gained >= 0 ? "+" : "").append(String.format("%.0f", gained)).append("%</div>");
+            content.append("</div>");
+        }
+
+        // Modules that would raise readiness the most
+        List<model.MaterialRank> focus = weakAreas.getBestNextMaterials(studentId, skillId, 3);
+        if (!focus.isEmpty() && readiness < 100) {
+            content.append("<div style='background:#eef2ff;border:1px solid #c7d2fe;border-radius:12px;padding:20px 30px;margin-bottom:24px'>");
+            content.append("<div style='font-weight:600;color:#3730a3;margin-bottom:10px'><i class='fas fa-bullseye'></i> Focus next</div>");
+            for (model.MaterialRank r : focus) {
+                content.append("<div style='display:flex;justify-content:space-between;font-size:0.9rem;color:#334155;padding:4px 0'><span>")
+                        .append(Template.escape(r.getTitle() != null ? r.getTitle() : "Module")).append("</span><span style='font-weight:600;color:#4338ca'>+")
+                        .append(String.format("%.0f", r.getScore())).append("% readiness</span></div>");
+            }
+            content.append("</div>");
+        }
+
         if (courseMaterials.isEmpty()) {
             content.append(
                     "<div class='empty-state'>No learning materials assigned to this course yet. Check back later!</div>");
@@ -472,7 +458,8 @@ public class DashboardHandler implements HttpHandler {
             content.append("<div class='materials-list' style='display: flex; flex-direction: column; gap: 20px;'>");
 
             for (StudentProgress sp : courseMaterials) {
-                boolean completed = "Completed".equalsIgnoreCase(sp.getStatus());
+                boolean completed = index != null ? index.isCompleted(studentId, sp.getMaterialId())
+                        : "Completed".equalsIgnoreCase(sp.getStatus());
 
                 content.append("<div class='material-card' style='background: white; border: 1px solid ")
                         .append(completed ? "#86efac" : "#e2e8f0")
@@ -485,7 +472,11 @@ public class DashboardHandler implements HttpHandler {
                         .append("; display: flex; justify-content: space-between; align-items: center;'>");
                 content.append("<div>");
                 content.append("<h3 style='margin: 0 0 5px 0; font-size: 1.1rem; color: #1e293b;'>")
-                        .append(sp.getMaterialTitle()).append("</h3>");
+                        .append(Template.escape(sp.getMaterialTitle()));
+                if (sp.getMaterialId() == nextMaterialId) {
+                    content.append(" <span style='background:#e0e7ff;color:#3730a3;font-size:0.75rem;font-weight:600;padding:2px 8px;border-radius:999px;vertical-align:middle'>Up next</span>");
+                }
+                content.append("</h3>");
                 content.append(
                         "<div style='display: flex; align-items: center; gap: 15px; font-size: 0.85rem; color: #64748b;'>");
                 content.append("<span><i class='fas fa-weight-hanging'></i> Weight: ").append(sp.getMaterialWeight())
@@ -514,7 +505,6 @@ public class DashboardHandler implements HttpHandler {
 
                 // Action
                 content.append("<form action='dashboard' method='POST' style='margin: 0;'>");
-                content.append("<input type='hidden' name='studentId' value='").append(studentId).append("'>");
                 content.append("<input type='hidden' name='materialId' value='").append(sp.getMaterialId())
                         .append("'>");
                 content.append("<input type='hidden' name='view' value='details'>");
@@ -563,14 +553,14 @@ public class DashboardHandler implements HttpHandler {
 
                     content.append("<div style='flex-grow: 1;'>");
                     content.append("<div style='font-weight: 600; color: #334155; margin-bottom: 4px;'>")
-                            .append(sp.getMaterialTitle()).append("</div>");
+                            .append(Template.escape(sp.getMaterialTitle())).append("</div>");
                     content.append(
                             "<div style='font-size: 0.85rem; color: #94a3b8;'>Access this resource to complete the module.</div>");
                     content.append("</div>");
 
                     // Resource Action
                     if ("TEXT".equals(sp.getType())) {
-                        String safeTitle = sp.getMaterialTitle() != null ? sp.getMaterialTitle().replace("'", "\\'")
+                        String safeTitle = sp.getMaterialTitle() != null ? Template.escape(sp.getMaterialTitle().replace("'", "\\'"))
                                 : "Text Content";
                         String base64Content = "";
                         if (sp.getResourceUrl() != null) {
@@ -578,7 +568,7 @@ public class DashboardHandler implements HttpHandler {
                                 base64Content = java.util.Base64.getEncoder()
                                         .encodeToString(sp.getResourceUrl().getBytes("UTF-8"));
                             } catch (Exception e) {
-                                e.printStackTrace();
+                                Log.error("Encoding material " + sp.getMaterialId() + " failed", e);
                             }
                         }
                         content.append("<button onclick=\"openTextModal('").append(safeTitle).append("', '")
@@ -588,13 +578,13 @@ public class DashboardHandler implements HttpHandler {
                         String href = sp.getResourceUrl();
                         if (href != null && !href.startsWith("http"))
                             href = "http://" + href;
-                        content.append("<a href='").append(href).append(
+                        content.append("<a href='").append(Template.escape(href)).append(
                                 "' target='_blank' style='text-decoration: none; background: white; border: 1px solid #cbd5e1; border-radius: 6px; padding: 8px 16px; cursor: pointer; font-size: 0.9rem; color: #475569; font-weight: 500; display: inline-block; transition: 0.2s;' onmouseover=\"this.style.backgroundColor='#f8fafc'\" onmouseout=\"this.style.backgroundColor='white'\">Open Link <i class='fas fa-external-link-alt' style='font-size:0.8em; margin-left:4px;'></i></a>");
                     } else if ("FILE".equals(sp.getType()) || "IMAGE".equals(sp.getType())) {
                         String href = "uploads/"
                                 + (sp.getResourceUrl() != null ? sp.getResourceUrl().replace(" ", "%20") : "");
                         String btnText = "IMAGE".equals(sp.getType()) ? "View Image" : "Download File";
-                        content.append("<a href='").append(href).append(
+                        content.append("<a href='").append(Template.escape(href)).append(
                                 "' target='_blank' style='text-decoration: none; background: white; border: 1px solid #cbd5e1; border-radius: 6px; padding: 8px 16px; cursor: pointer; font-size: 0.9rem; color: #475569; font-weight: 500; display: inline-block; transition: 0.2s;' onmouseover=\"this.style.backgroundColor='#f8fafc'\" onmouseout=\"this.style.backgroundColor='white'\">")
                                 .append(btnText)
                                 .append(" <i class='fas fa-download' style='font-size:0.8em; margin-left:4px;'></i></a>");
@@ -611,26 +601,12 @@ public class DashboardHandler implements HttpHandler {
             content.append("</div>");
         }
 
-        html = html.replace("{{materialsContent}}", content.toString());
-        return html;
-    }
-
-    private Map<String, String> parseQuery(String query) {
-        Map<String, String> result = new HashMap<>();
-        if (query == null || query.isEmpty())
-            return result;
-
-        for (String param : query.split("&")) {
-            String[] entry = param.split("=");
-            if (entry.length > 1) {
-                try {
-                    result.put(
-                            URLDecoder.decode(entry[0], StandardCharsets.UTF_8.name()),
-                            URLDecoder.decode(entry[1], StandardCharsets.UTF_8.name()));
-                } catch (Exception e) {
-                }
-            }
-        }
-        return result;
+        return Template.get("course_details.html").values()
+                .set("studentName", studentName)
+                .set("skillName", skillName)
+                .set("readiness", String.format("%.0f", readiness))
+                .set("readinessColor", readinessColor)
+                .setHtml("materialsContent", content.toString())
+                .render();
     }
 }
@@ -1,39 +1,27 @@
 package handlers;
 
-import com.sun.net.httpserver.HttpHandler;
 import com.sun.net.httpserver.HttpExchange;
 import java.io.IOException;
-import java.io.OutputStream;
-import java.io.InputStream;
-import java.nio.charset.StandardCharsets;
-import java.util.Map;
-import java.util.HashMap;
-import java.net.URLDecoder;
 
 import dao.StudentDAO;
 import dao.AdminDAO;
 import model.User;
+import util.Params;
+import util.Request;
+import util.Router;
 import util.SimpleSessionManager;
 
 /**
  * Handles Login POST requests.
  * Demonstrates POLYMORPHISM - handles both Admin and Student logins.
  */
-public class LoginHandler implements HttpHandler {
+public class LoginHandler implements Router.Route {
 
+    // Registered for POST only; the Router answers other methods with 405
     @Override
-    public void handle(HttpExchange exchange) throws IOException {
-        if ("POST".equalsIgnoreCase(exchange.getRequestMethod())) {
-            handlePost(exchange);
-        } else {
-            // Method Not Allowed
-            exchange.sendResponseHeaders(405, -1);
-        }
-    }
-
-    private void handlePost(HttpExchange exchange) throws IOException {
-        String query = new String(exchange.getRequestBody().readAllBytes(), StandardCharsets.UTF_8);
-        Map<String, String> params = parseQuery(query);
+    public void handle(Request request) throws IOException {
+        HttpExchange exchange = request.getExchange();
+        Params params = request.getForm();
 
         String email = params.get("email");
         String username = params.get("username"); 
@@ -91,20 +79,4 @@ public class LoginHandler implements HttpHandler {
             exchange.sendResponseHeaders(302, -1);
         }
     }
-
-    private Map<String, String> parseQuery(String query) {
-        Map<String, String> result = new HashMap<>();
-        if (query == null || query.isEmpty()) return result;
-        
-        for (String param : query.split("&")) {
-            String[] entry = param.split("=");
-            if (entry.length > 1) {
-                result.put(
-                    URLDecoder.decode(entry[0], StandardCharsets.UTF_8),
-                    URLDecoder.decode(entry[1], StandardCharsets.UTF_8)
-                );
-            }
-        }
-        return result;
-    }
 }
@@ -1,100 +1,88 @@
 package handlers;
 
-import com.sun.net.httpserver.HttpHandler;
 import com.sun.net.httpserver.HttpExchange;
 import java.io.IOException;
-import java.io.OutputStream;
 import java.io.File;
-import java.io.FileInputStream;
-import java.io.FileOutputStream;
 import java.nio.charset.StandardCharsets;
 import java.util.List;
-import java.util.Map;
-import java.util.HashMap;
-import java.net.URLDecoder;
 
 import dao.MaterialDAO;
 import dao.EnrollmentDAO;
 import dao.StudentProgressDAO;
 import dao.SkillDAO;
+import dao.UploadStore;
 import model.Material;
-import model.Student;
-import model.User;
-import model.Admin;
-import util.SimpleSessionManager;
+import util.BackgroundJobs;
+import util.HttpResponses;
 import util.MultipartParser;
+import util.Params;
+import util.Request;
+import util.Router;
+import util.Template;
 
 /**
  * Handles Material/Content management for courses.
  */
-public class MaterialsHandler implements HttpHandler {
+public class MaterialsHandler implements Router.Route {
 
     private MaterialDAO materialDAO = new MaterialDAO();
     private EnrollmentDAO enrollmentDAO = new EnrollmentDAO();
     private StudentProgressDAO progressDAO = new StudentProgressDAO();
     private SkillDAO skillDAO = new SkillDAO();
-    private static final String UPLOAD_DIR = "src/main/webapp/uploads";
+    private UploadStore uploadStore = new UploadStore();
+    // Same disk as the upload folder but outside the web root
+    private static final String SPOOL_DIR = "src/main/upload-spool";
+    // Courses with more enrolled students than this get their progress rows seeded in the background
+    private static final int BACKGROUND_FAN_OUT_THRESHOLD = 2000;
 
     @Override
-    public void handle(HttpExchange exchange) throws IOException {
-        User user = SimpleSessionManager.getSessionUser(exchange);
-        if (user == null || !(user instanceof Admin)) {
-            exchange.getResponseHeaders().set("Location", "/admin_login.html");
-            exchange.sendResponseHeaders(302, -1);
-            return;
-        }
-
-        String method = exchange.getRequestMethod();
-        
-        if ("POST".equalsIgnoreCase(method)) {
-            handlePost(exchange);
+    public void handle(Request request) throws IOException {
+        // Admins only (checked by the Router)
+        if (request.isPost()) {
+            handlePost(request);
         } else {
-            handleGet(exchange);
+            handleGet(request.getExchange(), request.getQuery());
         }
     }
 
-    private void handlePost(HttpExchange exchange) throws IOException {
-        String contentType = exchange.getRequestHeaders().getFirst("Content-Type");
-        Map<String, String> params = new HashMap<>();
+    private void handlePost(Request request) throws IOException {
+        HttpExchange exchange = request.getExchange();
+        Params params;
         String fileUrl = null;
         
-        if (contentType != null && contentType.contains("multipart/form-data")) {
-            MultipartParser parser = new MultipartParser();
-            parser.parse(exchange.getRequestBody(), contentType);
-            params = parser.getFields();
-            
-            if (parser.hasFile()) {
-                String fileName = System.currentTimeMillis() + "_" + parser.getFileName();
-                File uploadDir = new File(UPLOAD_DIR);
-                if (!uploadDir.exists()) uploadDir.mkdirs();
+        if (request.isMultipart()) {
+            // The upload streams to a spool file and is moved into the upload store when complete
+            try (MultipartParser parser = new MultipartParser(new File(SPOOL_DIR))) {
+                parser.parse(exchange.getRequestBody(), request.getContentType());
+                params = Params.of(parser.getFields());
                 
-                try (FileOutputStream fos = new FileOutputStream(new File(uploadDir, fileName))) {
-                    fos.write(parser.getFileData());
+                if (parser.hasFile()) {
+                    // Stored once per content: "cas/<sha256>.<ext>"
+                    fileUrl = uploadStore.store(parser);
                 }
-                fileUrl = fileName;
+            } catch (MultipartParser.TooLargeException e) {
+                HttpResponses.sendError(exchange, 413, "Upload rejected: " + e.getMessage() + ".");
+                return;
             }
         } else {
-            String body = new String(exchange.getRequestBody().readAllBytes(), StandardCharsets.UTF_8);
-            params = parseQuery(body);
+            params = request.getForm();
         }
         
-        String skillIdStr = params.get("skillId");
-        int skillId = (skillIdStr != null) ? Integer.parseInt(skillIdStr) : 0;
+        int skillId = params.getInt("skillId", 0);
         String action = params.get("action");
         String errorMsg = null;
+        boolean backgroundFanOut = false;
         
         if ("delete".equals(action)) {
-            String idStr = params.get("id");
-            if (idStr != null) {
-                materialDAO.deleteMaterial(Integer.parseInt(idStr));
+            int id = params.getInt("id", -1);
+            if (id >= 0) {
+                materialDAO.deleteMaterial(id);
             }
         } else if ("add".equals(action) || "update".equals(action)) {
             String title = params.get("title");
-            String weightStr = params.get("weight");
-            int weight = (weightStr != null) ? Integer.parseInt(weightStr) : 0;
+            int weight = params.getInt("weight", 0);
             String type = params.get("type");
-            String idStr = params.get("id");
-            int editingId = (idStr != null) ? Integer.parseInt(idStr) : -1;
+            int editingId = params.getInt("id", -1);
             
             // Weight Validation Logic
             int currentTotal = 0;
@@ -121,12 +109,7 @@ public class MaterialsHandler implements HttpHandler {
                      
                      int newMatId = materialDAO.addMaterial(m);
                      if (newMatId != -1) {
-                         List<Student> students = enrollmentDAO.getEnrolledStudentsBySkill(skillId);
-                         for (Student s : students) {
-                             if (!progressDAO.isProgressExists(s.getId(), newMatId)) {
-                                 progressDAO.insertProgress(s.getId(), newMatId, "Not Started");
-                             }
-                         }
+                         backgroundFanOut = seedProgressForNewMaterial(newMatId, skillId);
                      }
                 } else if ("update".equals(action)) {
                      if (resUrl == null || resUrl.isEmpty()) {
@@ -149,11 +132,13 @@ public class MaterialsHandler implements HttpHandler {
         if (errorMsg != null) {
             redirectUrl += "&error=" + java.net.URLEncoder.encode(errorMsg, StandardCharsets.UTF_8);
             if ("update".equals(action)) {
-                redirectUrl += "&editId=" + params.get("id");
+                redirectUrl += "&editId=" + params.getInt("id", -1);
             }
         } else {
             // Add success message
-            if ("add".equals(action)) redirectUrl += "&success=Module+added+successfully";
+            if ("add".equals(action)) redirectUrl += backgroundFanOut
+                    ? "&success=Module+added.+Enrolled+students+are+being+updated+in+the+background"
+                    : "&success=Module+added+successfully";
             if ("update".equals(action)) redirectUrl += "&success=Module+updated+successfully";
             if ("delete".equals(action)) redirectUrl += "&success=Module+deleted+successfully";
         }
@@ -162,84 +147,117 @@ public class MaterialsHandler implements HttpHandler {
         exchange.sendResponseHeaders(302, -1);
     }
     
-    private String getResourceUrl(String type, Map<String, String> params, String fileUrl) {
+    /**
+     * Creates progress rows for the new module for every enrolled student.
+     * Small courses are handled inline; large ones are queued as a background
+     * job whose progress is shown on the materials page. An inline run that was
+     * rolled back is retried the same way, so a failure shows up there too.
+     *
+     * @return true if the work was queued in the background
+     */
+    private boolean seedProgressForNewMaterial(int materialId, int skillId) {
+        int enrolled = enrollmentDAO.countEnrolledStudents(skillId);
+        if (enrolled <= BACKGROUND_FAN_OUT_THRESHOLD
+                && progressDAO.seedMaterialForEnrolledStudents(materialId, skillId, null) >= 0) {
+            return false;
+        }
+        BackgroundJobs.submit("skill:" + skillId, "Adding module to " + enrolled + " enrolled students", job -> {
+            job.setProgress(0, enrolled);
+            int processed = progressDAO.seedMaterialForEnrolledStudents(materialId, skillId, job::setProgress);
+            if (processed < 0) {
+                throw new IllegalStateException("Progress fan-out for material " + materialId + " was rolled back");
+            }
+        });
+        return true;
+    }
+
+    private String getResourceUrl(String type, Params params, String fileUrl) {
         if ("TEXT".equals(type)) return params.get("text_val");
         if ("LINK".equals(type)) return params.get("link_val");
         if ("FILE".equals(type) || "IMAGE".equals(type)) return fileUrl;
         return null;
     }
 
-    private void handleGet(HttpExchange exchange) throws IOException {
-        String query = exchange.getRequestURI().getQuery();
-        Map<String, String> params = parseQuery(query);
-        
-        String skillIdStr = params.get("skillId");
-        if (skillIdStr == null) {
+    private void handleGet(HttpExchange exchange, Params params) throws IOException {
+        int skillId = params.getInt("skillId", -1);
+        if (skillId < 0) {
             exchange.getResponseHeaders().set("Location", "/subjects?mode=manage");
             exchange.sendResponseHeaders(302, -1);
             return;
         }
-        int skillId = Integer.parseInt(skillIdStr);
         
-        List<Material> materials = materialDAO.getMaterialsBySkillId(skillId);
-        int totalWeight = materialDAO.getTotalWeightBySkillId(skillId);
+        MaterialDAO.SkillMaterials skillMaterials = materialDAO.getSkillMaterials(skillId);
+        List<Material> materials = skillMaterials.getMaterials();
+        int totalWeight = skillMaterials.getTotalWeight();
         
         Material editMaterial = null;
-        String editIdStr = params.get("editId");
-        if (editIdStr != null) {
-            editMaterial = materialDAO.getMaterialById(Integer.parseInt(editIdStr));
+        int editId = params.getInt("editId", -1);
+        if (editId >= 0) {
+            editMaterial = materialDAO.getMaterialById(editId);
         }
         
         String error = params.get("error");
         
-        // Read template
-        String html = readTemplate("admin_materials.html");
-        html = html.replace("{{skillId}}", String.valueOf(skillId));
-        html = html.replace("{{totalWeight}}", String.valueOf(totalWeight));
-        html = html.replace("{{weightClass}}", totalWeight == 100 ? "weight-ok" : "weight-warn");
+        Template.Values page = Template.get("admin_materials.html").values();
+        page.set("skillId", skillId);
+        page.set("totalWeight", totalWeight);
+        page.set("weightClass", totalWeight == 100 ? "weight-ok" : "weight-warn");
         
         // Get skill name for breadcrumbs
         String skillName = skillDAO.getSkillById(skillId).getSkillName();
-        html = html.replace("{{skillName}}", skillName != null ? skillName : "Course");
+        page.set("skillName", skillName != null ? skillName : "Course");
         
         // Form configuration
         if (editMaterial != null) {
-            html = html.replace("{{formTitle}}", "Edit Module");
-            html = html.replace("{{cancelButton}}", "<a href='materials?skillId=" + skillId + "' class='btn-secondary'>Cancel</a>");
-            html = html.replace("{{action}}", "update");
-            html = html.replace("{{editIdField}}", "<input type='hidden' name='id' value='" + editMaterial.getId() + "'>");
-            html = html.replace("{{editTitle}}", editMaterial.getTitle().replace("'", "&#39;"));
-            html = html.replace("{{editWeight}}", String.valueOf(editMaterial.getWeight()));
-            html = html.replace("{{editType}}", editMaterial.getType() != null ? editMaterial.getType() : "TEXT");
+            page.set("formTitle", "Edit Module");
+            page.setHtml("cancelButton", "<a href='materials?skillId=" + skillId + "' class='btn-secondary'>Cancel</a>");
+            page.set("action", "update");
+            page.setHtml("editIdField", "<input type='hidden' name='id' value='" + editMaterial.getId() + "'>");
+            page.set("editTitle", editMaterial.getTitle());
+            page.set("editWeight", editMaterial.getWeight());
+            page.set("editType", editMaterial.getType() != null ? editMaterial.getType() : "TEXT");
             String resUrl = editMaterial.getResourceUrl() != null ? editMaterial.getResourceUrl() : "";
-            html = html.replace("{{editTextVal}}", "TEXT".equals(editMaterial.getType()) ? resUrl : "");
-            html = html.replace("{{editLinkVal}}", "LINK".equals(editMaterial.getType()) ? resUrl : "");
+            page.set("editTextVal", "TEXT".equals(editMaterial.getType()) ? resUrl : "");
+            page.set("editLinkVal", "LINK".equals(editMaterial.getType()) ? resUrl : "");
             if (("FILE".equals(editMaterial.getType()) || "IMAGE".equals(editMaterial.getType())) && !resUrl.isEmpty()) {
-                html = html.replace("{{existingFileInfo}}", "<div style='font-size:0.8rem;color:#64748b;margin-bottom:5px'>Current: " + resUrl + "</div><input type='hidden' name='existing_file' value='" + resUrl + "'>");
+                String safeUrl = Template.escape(resUrl);
+                page.setHtml("existingFileInfo", "<div style='font-size:0.8rem;color:#64748b;margin-bottom:5px'>Current: " + safeUrl + "</div><input type='hidden' name='existing_file' value='" + safeUrl + "'>");
             } else {
-                html = html.replace("{{existingFileInfo}}", "");
+                page.set("existingFileInfo", "");
             }
-            html = html.replace("{{submitText}}", "Save Changes");
+            page.set("submitText", "Save Changes");
         } else {
-            html = html.replace("{{formTitle}}", "Create New Module");
-            html = html.replace("{{cancelButton}}", "");
-            html = html.replace("{{action}}", "add");
-            html = html.replace("{{editIdField}}", "");
-            html = html.replace("{{editTitle}}", "");
-            html = html.replace("{{editWeight}}", "");
-            html = html.replace("{{editType}}", "TEXT");
-            html = html.replace("{{editTextVal}}", "");
-            html = html.replace("{{editLinkVal}}", "");
-            html = html.replace("{{existingFileInfo}}", "");
-            html = html.replace("{{submitText}}", "Create Module");
+            page.set("formTitle", "Create New Module");
+            page.set("cancelButton", "");
+            page.set("action", "add");
+            page.set("editIdField", "");
+            page.set("editTitle", "");
+            page.set("editWeight", "");
+            page.set("editType", "TEXT");
+            page.set("editTextVal", "");
+            page.set("editLinkVal", "");
+            page.set("existingFileInfo", "");
+            page.set("submitText", "Create Module");
         }
         
-        // Error box
+        // Error box (plus status of any background progress updates for this course)
+        StringBuilder errorBox = new StringBuilder();
         if (error != null && !error.isEmpty()) {
-            html = html.replace("{{errorBox}}", "<div class='error-box'><i class='fas fa-exclamation-circle'></i> " + error + "</div>");
-        } else {
-            html = html.replace("{{errorBox}}", "");
+            errorBox.append("<div class='error-box'><i class='fas fa-exclamation-circle'></i> ").append(Template.escape(error)).append("</div>");
         }
+        for (BackgroundJobs.Job job : BackgroundJobs.getJobsByTag("skill:" + skillId)) {
+            if (job.getState() == BackgroundJobs.State.FAILED) {
+                errorBox.append("<div class='error-box'><i class='fas fa-exclamation-circle'></i> ")
+                        .append(Template.escape(job.getDescription())).append(" failed: ")
+                        .append(Template.escape(job.getError())).append("</div>");
+            } else if (!job.isFinished()) {
+                errorBox.append("<div class='error-box' style='background:#eff6ff;border-color:#93c5fd;color:#1d4ed8'>")
+                        .append("<i class='fas fa-sync fa-spin'></i> ").append(Template.escape(job.getDescription())).append(": ")
+                        .append(job.getProcessed()).append(" / ").append(job.getTotal())
+                        .append(" (").append(job.getPercent()).append("%). Refresh to update.</div>");
+            }
+        }
+        page.setHtml("errorBox", errorBox.toString());
         
         // Build materials list
         StringBuilder content = new StringBuilder();
@@ -262,7 +280,7 @@ public class MaterialsHandler implements HttpHandler {
                 content.append("<div class='material-header'>");
                 content.append("<div style='display:flex;align-items:center;gap:16px'>");
                 content.append("<div class='material-icon'><i class='fas ").append(icon).append("'></i></div>");
-                content.append("<h3 style='margin:0;font-size:1.1rem;font-weight:600;color:#0f172a'>").append(m.getTitle()).append("</h3>");
+                content.append("<h3 style='margin:0;font-size:1.1rem;font-weight:600;color:#0f172a'>").append(Template.escape(m.getTitle())).append("</h3>");
                 content.append("</div>");
                 content.append("<div style='display:flex;gap:12px'>");
                 content.append("<a href='materials?skillId=").append(skillId).append("&editId=").append(m.getId()).append("' class='btn-secondary action-btn'><i class='fas fa-pen'></i></a>");
@@ -278,7 +296,7 @@ public class MaterialsHandler implements HttpHandler {
             }
         }
         
-        html = html.replace("{{materialsContent}}", content.toString());
+        page.setHtml("materialsContent", content.toString());
         
         // Generate toast HTML if success param present
         String success = params.get("success");
@@ -289,46 +307,11 @@ public class MaterialsHandler implements HttpHandler {
             toastHtml.append("<div class='toast-icon'><i class='fas fa-check'></i></div>");
             toastHtml.append("<div class='toast-content'>");
             toastHtml.append("<p class='toast-title'>Success</p>");
-            toastHtml.append("<p class='toast-message'>").append(success.replace("+", " ")).append("</p>");
+            toastHtml.append("<p class='toast-message'>").append(Template.escape(success)).append("</p>");
             toastHtml.append("</div></div></div>");
         }
-        html = html.replace("{{toastHtml}}", toastHtml.toString());
-
-        byte[] bytes = html.getBytes(StandardCharsets.UTF_8);
-        exchange.getResponseHeaders().set("Content-Type", "text/html; charset=UTF-8");
-        exchange.sendResponseHeaders(200, bytes.length);
-        try (OutputStream os = exchange.getResponseBody()) {
-            os.write(bytes);
-        }
-    }
-
-    private String readTemplate(String filename) throws IOException {
-        File file = new File("src/main/webapp/" + filename);
-        try (FileInputStream fis = new FileInputStream(file)) {
-            return new String(fis.readAllBytes(), StandardCharsets.UTF_8);
-        }
-    }
+        page.setHtml("toastHtml", toastHtml.toString());
 
-    private Map<String, String> parseQuery(String query) {
-        Map<String, String> result = new HashMap<>();
-        if (query == null || query.isEmpty()) return result;
-        
-        for (String param : query.split("&")) {
-            String[] entry = param.split("=");
-            if (entry.length > 1) {
-                try {
-                    result.put(
-                        URLDecoder.decode(entry[0], StandardCharsets.UTF_8.name()),
-                        URLDecoder.decode(entry[1], StandardCharsets.UTF_8.name())
-                    );
-                } catch (Exception e) {
-                    e.printStackTrace();
-                    System.out.println("Error decoding param: " + param);
-                }
-            } else if (entry.length == 1) {
-                result.put(entry[0], "");
-            }
-        }
-        return result;
+        HttpResponses.sendHtml(exchange, page.render());
     }
 }
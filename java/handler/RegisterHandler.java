@@ -1,24 +1,22 @@
 package handlers;
 
-import com.sun.net.httpserver.HttpHandler;
 import com.sun.net.httpserver.HttpExchange;
 import java.io.IOException;
 import java.io.OutputStream;
-import java.nio.charset.StandardCharsets;
-import java.util.Map;
-import java.util.HashMap;
-import java.net.URLDecoder;
 
 import dao.StudentDAO;
 import model.Student;
+import util.Params;
+import util.Request;
+import util.Router;
 
-public class RegisterHandler implements HttpHandler {
+public class RegisterHandler implements Router.Route {
 
     @Override
-    public void handle(HttpExchange exchange) throws IOException {
-        System.out.println("RegisterHandler: " + exchange.getRequestMethod() + " " + exchange.getRequestURI());
-        if ("POST".equalsIgnoreCase(exchange.getRequestMethod())) {
-            handlePost(exchange);
+    public void handle(Request request) throws IOException {
+        HttpExchange exchange = request.getExchange();
+        if (request.isPost()) {
+            handlePost(exchange, request.getForm());
         } else {
             // Allow GET for debugging
             String response = "DEBUG: Received " + exchange.getRequestMethod() + " on RegisterHandler";
@@ -27,10 +25,7 @@ public class RegisterHandler implements HttpHandler {
         }
     }
 
-    private void handlePost(HttpExchange exchange) throws IOException {
-        String query = new String(exchange.getRequestBody().readAllBytes(), StandardCharsets.UTF_8);
-        Map<String, String> params = parseQuery(query);
-
+    private void handlePost(HttpExchange exchange, Params params) throws IOException {
         String name = params.get("name");
         String email = params.get("email");
         String password = params.get("password");
@@ -58,20 +53,4 @@ public class RegisterHandler implements HttpHandler {
         exchange.getResponseHeaders().set("Location", location);
         exchange.sendResponseHeaders(302, -1);
     }
-
-    private Map<String, String> parseQuery(String query) {
-        Map<String, String> result = new HashMap<>();
-        if (query == null || query.isEmpty()) return result;
-        
-        for (String param : query.split("&")) {
-            String[] entry = param.split("=");
-            if (entry.length > 1) {
-                result.put(
-                    URLDecoder.decode(entry[0], StandardCharsets.UTF_8),
-                    URLDecoder.decode(entry[1], StandardCharsets.UTF_8)
-                );
-            }
-        }
-        return result;
-    }
 }
@@ -0,0 +1,139 @@
+package handlers;
+
+import com.sun.net.httpserver.HttpExchange;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Set;
+
+import dao.SearchIndex;
+import dao.SkillDAO;
+import model.SearchHit;
+import model.Skill;
+import util.HttpResponses;
+import util.Params;
+import util.Request;
+import util.Router;
+
+/**
+ * Type-ahead search: GET /search?q=jo&limit=8&type=student,skill,material
+ * answers a small JSON document from the in-memory SearchIndex.
+ * Admins can search everything; students only see active courses.
+ * Any logged-in user may call it (the Router answers 401 otherwise).
+ */
+public class SearchHandler implements Router.Route {
+
+    private static final int DEFAULT_LIMIT = 8;
+    private static final int MAX_LIMIT = 50;
+
+    private final SearchIndex index = SearchIndex.getInstance();
+
+    @Override
+    public void handle(Request request) throws IOException {
+        HttpExchange exchange = request.getExchange();
+        boolean admin = request.isAdmin();
+
+        Params params = request.getQuery();
+        String q = params.get("q", "");
+        String typeParam = params.get("type");
+        int limit = Math.max(1, Math.min(MAX_LIMIT, params.getInt("limit", DEFAULT_LIMIT)));
+
+        Set<SearchHit.Type> types = parseTypes(typeParam);
+        if (!admin) {
+            types.retainAll(EnumSet.of(SearchHit.Type.SKILL));
+        }
+
+        long start = System.nanoTime();
+        List<SearchHit> hits = index.search(q, types, !admin, limit);
+        long micros = (System.nanoTime() - start) / 1000;
+
+        StringBuilder json = new StringBuilder(256);
+        json.append("{\"query\":").append(quote(q)).append(",\"tookMicros\":").append(micros).append(",\"results\":[");
+        for (int i = 0; i < hits.size(); i++) {
+            SearchHit hit = hits.get(i);
+            if (i > 0) {
+                json.append(',');
+            }
+            json.append("{\"type\":\"").append(hit.getType().name().toLowerCase()).append('"');
+            json.append(",\"id\":").append(hit.getId());
+            json.append(",\"title\":").append(quote(hit.getTitle()));
+            json.append(",\"subtitle\":").append(quote(subtitleOf(hit)));
+            json.append(",\"url\":").append(quote(urlOf(hit, admin)));
+            json.append(",\"score\":").append(Math.round(hit.getScore() * 10) / 10.0);
+            json.append('}');
+        }
+        json.append("]}");
+        sendJson(exchange, 200, json.toString());
+    }
+
+    private static Set<SearchHit.Type> parseTypes(String typeParam) {
+        if (typeParam == null || typeParam.isEmpty()) {
+            return EnumSet.allOf(SearchHit.Type.class);
+        }
+        Set<SearchHit.Type> types = EnumSet.noneOf(SearchHit.Type.class);
+        for (String t : typeParam.split(",")) {
+            switch (t.trim().toLowerCase()) {
+                case "student": types.add(SearchHit.Type.STUDENT); break;
+                case "skill":
+                case "course": types.add(SearchHit.Type.SKILL); break;
+                case "material":
+                case "module": types.add(SearchHit.Type.MATERIAL); break;
+                default: break;
+            }
+        }
+        return types;
+    }
+
+    private static String subtitleOf(SearchHit hit) {
+        switch (hit.getType()) {
+            case STUDENT:
+                return hit.getSubtitle();
+            case SKILL:
+                return "Course" + ("active".equals(hit.getSubtitle()) ? "" : " (" + hit.getSubtitle() + ")");
+            default:
+                Skill skill = SkillDAO.getCatalog().getSkill(hit.getParentId());
+                return skill != null ? "Module in " + skill.getSkillName() : "Module";
+        }
+    }
+
+    private static String urlOf(SearchHit hit, boolean admin) {
+        switch (hit.getType()) {
+            case STUDENT:
+                return "/students?action=view_courses&id=" + hit.getId();
+            case SKILL:
+                return admin ? "/materials?skillId=" + hit.getId() : "/dashboard?view=preview&skillId=" + hit.getId();
+            default:
+                return "/materials?skillId=" + hit.getParentId();
+        }
+    }
+
+    private static String quote(String s) {
+        if (s == null) {
+            return "null";
+        }
+        StringBuilder sb = new StringBuilder(s.length() + 2).append('"');
+        for (int i = 0; i < s.length(); i++) {
+            char c = s.charAt(i);
+            switch (c) {
+                case '"': sb.append("\\\""); break;
+                case '\\': sb.append("\\\\"); break;
+                case '\n': sb.append("\\n"); break;
+                case '\r': sb.append("\\r"); break;
+                case '\t': sb.append("\\t"); break;
+                default:
+                    if (c < 0x20 || c == '<' || c == '>' || c == '&') {
+                        sb.append(String.format("\\u%04x", (int) c));
+                    } else {
+                        sb.append(c);
+                    }
+            }
+        }
+        return sb.append('"').toString();
+    }
+
+    private static void sendJson(HttpExchange exchange, int status, String json) throws IOException {
+        exchange.getResponseHeaders().set("Cache-Control", "no-store");
+        HttpResponses.send(exchange, status, "application/json; charset=UTF-8", json.getBytes(StandardCharsets.UTF_8));
+    }
+}
@@ -2,60 +2,543 @@ package handlers;
 
 import com.sun.net.httpserver.HttpHandler;
 import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.Headers;
 import java.io.IOException;
+import java.io.InputStream;
 import java.io.OutputStream;
-import java.io.File;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
 import java.nio.file.Files;
-import java.io.FileInputStream;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLong;
+
+import util.Compression;
+import util.Thumbnails;
 
 /**
  * Handles serving of static content (HTML, CSS, Images).
  * Replaces DefaultServlet in Tomcat.
+ *
+ * Small files are kept in memory; larger ones are streamed from a FileChannel.
+ * Responses carry ETag / Last-Modified / Cache-Control, and conditional GETs
+ * (If-None-Match, If-Modified-Since) are answered with 304.
+ *
+ * Text assets are gzipped for clients that accept it: cached files are
+ * compressed once and the gzipped copy is kept next to the plain one, larger
+ * files are compressed while streaming. The gzip form has its own ETag.
+ *
+ * Byte ranges (Range / If-Range) are answered with 206, as one part or as
+ * multipart/byteranges, each part copied straight from the file channel, so
+ * seeking in a video or resuming a download only reads the requested bytes.
  */
 public class StaticFileHandler implements HttpHandler {
     private static final String WEB_ROOT = "src/main/webapp";
+    private static final Path ROOT = Paths.get(WEB_ROOT).toAbsolutePath().normalize();
+
+    // More ranges than this in one request are ignored (the whole file is sent)
+    private static final int MAX_RANGES = 32;
+
+    // Files up to this size are cached in memory, within an overall budget
+    private static final long MAX_CACHED_FILE_SIZE = 256 * 1024;
+    private static final long CACHE_BUDGET = 32L * 1024 * 1024;
+
+    private static final String CACHE_ASSETS = "public, max-age=3600";
+    private static final String CACHE_PAGES = "no-cache";
+    // Content-addressed uploads (and their thumbnails) never change under the same name
+    private static final String CACHE_IMMUTABLE = "public, max-age=31536000, immutable";
+    private static final String UPLOADS_PREFIX = "/uploads/";
+    private static final String THUMBS_PREFIX = "/uploads/thumbs/";
+
+    private static final Map<String, String> MIME_TYPES = new HashMap<>();
+    private static final Map<String, CachedFile> cache = new ConcurrentHashMap<>();
+    private static final AtomicLong cachedBytes = new AtomicLong();
+
+    static {
+        // Text
+        MIME_TYPES.put("html", "text/html; charset=UTF-8");
+        MIME_TYPES.put("htm", "text/html; charset=UTF-8");
+        MIME_TYPES.put("css", "text/css; charset=UTF-8");
+        MIME_TYPES.put("js", "application/javascript; charset=UTF-8");
+        MIME_TYPES.put("mjs", "application/javascript; charset=UTF-8");
+        MIME_TYPES.put("json", "application/json; charset=UTF-8");
+        MIME_TYPES.put("map", "application/json; charset=UTF-8");
+        MIME_TYPES.put("xml", "application/xml; charset=UTF-8");
+        MIME_TYPES.put("txt", "text/plain; charset=UTF-8");
+        MIME_TYPES.put("md", "text/markdown; charset=UTF-8");
+        MIME_TYPES.put("csv", "text/csv; charset=UTF-8");
+        MIME_TYPES.put("sql", "text/plain; charset=UTF-8");
+        // Images
+        MIME_TYPES.put("png", "image/png");
+        MIME_TYPES.put("jpg", "image/jpeg");
+        MIME_TYPES.put("jpeg", "image/jpeg");
+        MIME_TYPES.put("gif", "image/gif");
+        MIME_TYPES.put("webp", "image/webp");
+        MIME_TYPES.put("avif", "image/avif");
+        MIME_TYPES.put("svg", "image/svg+xml");
+        MIME_TYPES.put("ico", "image/x-icon");
+        MIME_TYPES.put("bmp", "image/bmp");
+        MIME_TYPES.put("tif", "image/tiff");
+        MIME_TYPES.put("tiff", "image/tiff");
+        // Fonts
+        MIME_TYPES.put("woff", "font/woff");
+        MIME_TYPES.put("woff2", "font/woff2");
+        MIME_TYPES.put("ttf", "font/ttf");
+        MIME_TYPES.put("otf", "font/otf");
+        MIME_TYPES.put("eot", "application/vnd.ms-fontobject");
+        // Audio / Video
+        MIME_TYPES.put("mp4", "video/mp4");
+        MIME_TYPES.put("m4v", "video/mp4");
+        MIME_TYPES.put("webm", "video/webm");
+        MIME_TYPES.put("ogv", "video/ogg");
+        MIME_TYPES.put("mov", "video/quicktime");
+        MIME_TYPES.put("avi", "video/x-msvideo");
+        MIME_TYPES.put("mkv", "video/x-matroska");
+        MIME_TYPES.put("mp3", "audio/mpeg");
+        MIME_TYPES.put("m4a", "audio/mp4");
+        MIME_TYPES.put("aac", "audio/aac");
+        MIME_TYPES.put("wav", "audio/wav");
+        MIME_TYPES.put("ogg", "audio/ogg");
+        MIME_TYPES.put("oga", "audio/ogg");
+        MIME_TYPES.put("flac", "audio/flac");
+        MIME_TYPES.put("vtt", "text/vtt; charset=UTF-8");
+        // Documents
+        MIME_TYPES.put("pdf", "application/pdf");
+        MIME_TYPES.put("rtf", "application/rtf");
+        MIME_TYPES.put("doc", "application/msword");
+        MIME_TYPES.put("docx", "application/vnd.openxmlformats-officedocument.wordprocessingml.document");
+        MIME_TYPES.put("xls", "application/vnd.ms-excel");
+        MIME_TYPES.put("xlsx", "application/vnd.openxmlformats-officedocument.spreadsheetml.sheet");
+        MIME_TYPES.put("ppt", "application/vnd.ms-powerpoint");
+        MIME_TYPES.put("pptx", "application/vnd.openxmlformats-officedocument.presentationml.presentation");
+        MIME_TYPES.put("odt", "application/vnd.oasis.opendocument.text");
+        MIME_TYPES.put("ods", "application/vnd.oasis.opendocument.spreadsheet");
+        MIME_TYPES.put("odp", "application/vnd.oasis.opendocument.presentation");
+        MIME_TYPES.put("epub", "application/epub+zip");
+        // Archives / binaries
+        MIME_TYPES.put("zip", "application/zip");
+        MIME_TYPES.put("gz", "application/gzip");
+        MIME_TYPES.put("tar", "application/x-tar");
+        MIME_TYPES.put("7z", "application/x-7z-compressed");
+        MIME_TYPES.put("rar", "application/vnd.rar");
+        MIME_TYPES.put("wasm", "application/wasm");
+    }
 
     @Override
     public void handle(HttpExchange exchange) throws IOException {
+        String method = exchange.getRequestMethod();
+        boolean head = "HEAD".equalsIgnoreCase(method);
+        if (!head && !"GET".equalsIgnoreCase(method)) {
+            exchange.getResponseHeaders().set("Allow", "GET, HEAD");
+            exchange.sendResponseHeaders(405, -1);
+            return;
+        }
+
         String path = exchange.getRequestURI().getPath();
-        System.out.println("StaticFileHandler: " + path);
-        
+
         // Default to index.html
         if (path.equals("/")) {
             path = "/index.html";
         }
 
-        File file = new File(WEB_ROOT + path);
+        // Image thumbnails are made on first request; if that is not possible, send the original
+        if (path.startsWith(THUMBS_PREFIX)) {
+            String variant = path.substring(UPLOADS_PREFIX.length());
+            if (!variant.contains("..") && Thumbnails.ensureVariant(variant) == null) {
+                String source = Thumbnails.sourceOf(variant);
+                if (source != null && Files.isRegularFile(ROOT.resolve("uploads").resolve(source).normalize())) {
+                    exchange.getResponseHeaders().set("Location", UPLOADS_PREFIX + source);
+                    exchange.sendResponseHeaders(302, -1);
+                    exchange.close();
+                    return;
+                }
+            }
+        }
+
+        // Resolve inside the web root only (no ../ escapes)
+        Path file = ROOT.resolve(path.substring(1)).normalize();
+        BasicFileAttributes attrs = null;
+        if (file.startsWith(ROOT)) {
+            try {
+                attrs = Files.readAttributes(file, BasicFileAttributes.class);
+            } catch (NoSuchFileException e) {
+                // 404 below
+            }
+        }
+        if (attrs == null || !attrs.isRegularFile()) {
+            sendNotFound(exchange);
+            return;
+        }
 
-        if (file.exists() && !file.isDirectory()) {
-            String mimeType = getMimeType(path);
-            exchange.getResponseHeaders().set("Content-Type", mimeType);
-            exchange.sendResponseHeaders(200, file.length());
+        long size = attrs.size();
+        long lastModified = attrs.lastModifiedTime().toMillis();
+        String etag = "\"" + Long.toHexString(size) + "-" + Long.toHexString(lastModified) + "\"";
+        String contentType = getMimeType(path);
 
-            try (OutputStream os = exchange.getResponseBody();
-                 FileInputStream fs = new FileInputStream(file)) {
-                final byte[] buffer = new byte[0x10000];
-                int count = 0;
-                while ((count = fs.read(buffer)) >= 0) {
-                    os.write(buffer, 0, count);
+        Headers headers = exchange.getResponseHeaders();
+        boolean gzip = Compression.shouldCompress(exchange, contentType, size);
+        if (Compression.isCompressible(contentType)) {
+            Compression.addVary(headers);
+        }
+        // Both encodings need different validators, or a cache could mix them up
+        String responseTag = gzip ? etag.substring(0, etag.length() - 1) + "-gz\"" : etag;
+        headers.set("ETag", responseTag);
+        headers.set("Last-Modified", formatHttpDate(lastModified));
+        if (isImmutable(path)) {
+            headers.set("Cache-Control", CACHE_IMMUTABLE);
+        } else {
+            headers.set("Cache-Control", contentType.startsWith("text/html") ? CACHE_PAGES : CACHE_ASSETS);
+        }
+
+        if (isNotModified(exchange.getRequestHeaders(), responseTag, lastModified)) {
+            exchange.sendResponseHeaders(304, -1);
+            exchange.close();
+            return;
+        }
+
+        headers.set("Content-Type", contentType);
+        headers.set("Accept-Ranges", "bytes");
+
+        String range = exchange.getRequestHeaders().getFirst("Range");
+        if (!head && range != null
+                && ifRangeMatches(exchange.getRequestHeaders().getFirst("If-Range"), etag, lastModified)) {
+            List<long[]> ranges = parseRanges(range, size);
+            if (ranges != null) {
+                if (ranges.isEmpty()) {
+                    headers.set("Content-Range", "bytes */" + size);
+                    exchange.sendResponseHeaders(416, -1);
+                    exchange.close();
+                    return;
                 }
+                // Ranges always refer to the uncompressed file
+                headers.set("ETag", etag);
+                sendRanges(exchange, file, contentType, size, ranges);
+                return;
             }
-        } else {
-            // 404 Not Found
-            String response = "404 Not Found";
-            exchange.sendResponseHeaders(404, response.length());
+        }
+
+        if (gzip) {
+            headers.set("Content-Encoding", "gzip");
+        }
+        if (head) {
+            // -1 sends no body and no length, so state the length a GET would get
+            // (unknown only for a large file that would be gzipped while streaming)
+            long length = gzip ? -1 : size;
+            if (gzip && size <= MAX_CACHED_FILE_SIZE) {
+                CachedFile cached = getCached(file, size, lastModified);
+                if (cached != null) {
+                    length = cached.gzipped().length;
+                }
+            }
+            if (length >= 0) {
+                headers.set("Content-Length", Long.toString(length));
+            }
+            exchange.sendResponseHeaders(200, -1);
+            exchange.close();
+            return;
+        }
+
+        if (size <= MAX_CACHED_FILE_SIZE) {
+            CachedFile cached = getCached(file, size, lastModified);
+            if (cached != null) {
+                byte[] body = gzip ? cached.gzipped() : cached.data;
+                exchange.sendResponseHeaders(200, body.length);
+                try (OutputStream os = exchange.getResponseBody()) {
+                    os.write(body);
+                }
+                return;
+            }
+        }
+
+        if (gzip) {
+            // Large text file: compress while streaming (length unknown, so chunked)
+            exchange.sendResponseHeaders(200, 0);
+            try (OutputStream os = Compression.gzipStream(exchange.getResponseBody());
+                 InputStream in = Files.newInputStream(file)) {
+                in.transferTo(os);
+            }
+            return;
+        }
+
+        // Large (or uncacheable) file: let the channel move the bytes
+        exchange.sendResponseHeaders(200, size);
+        try (OutputStream os = exchange.getResponseBody();
+             FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            transfer(channel, 0, size, Channels.newChannel(os));
+        }
+    }
+
+    /** Sends one range as a plain 206, several as multipart/byteranges. */
+    private void sendRanges(HttpExchange exchange, Path file, String contentType, long size, List<long[]> ranges)
+            throws IOException {
+        Headers headers = exchange.getResponseHeaders();
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            if (ranges.size() == 1) {
+                long[] r = ranges.get(0);
+                headers.set("Content-Range", "bytes " + r[0] + "-" + r[1] + "/" + size);
+                exchange.sendResponseHeaders(206, r[1] - r[0] + 1);
+                try (OutputStream os = exchange.getResponseBody()) {
+                    transfer(channel, r[0], r[1] - r[0] + 1, Channels.newChannel(os));
+                }
+                return;
+            }
+
+            String boundary = Long.toHexString(ThreadLocalRandom.current().nextLong())
+                    + Long.toHexString(System.nanoTime());
+            byte[][] partHeads = new byte[ranges.size()][];
+            long length = 0;
+            for (int i = 0; i < ranges.size(); i++) {
+                long[] r = ranges.get(i);
+                partHeads[i] = ("\r\n--" + boundary + "\r\nContent-Type: " + contentType
+                        + "\r\nContent-Range: bytes " + r[0] + "-" + r[1] + "/" + size + "\r\n\r\n")
+                        .getBytes(StandardCharsets.US_ASCII);
+                length += partHeads[i].length + (r[1] - r[0] + 1);
+            }
+            byte[] tail = ("\r\n--" + boundary + "--\r\n").getBytes(StandardCharsets.US_ASCII);
+            length += tail.length;
+
+            headers.set("Content-Type", "multipart/byteranges; boundary=" + boundary);
+            exchange.sendResponseHeaders(206, length);
             try (OutputStream os = exchange.getResponseBody()) {
-                os.write(response.getBytes());
+                WritableByteChannel target = Channels.newChannel(os);
+                for (int i = 0; i < ranges.size(); i++) {
+                    long[] r = ranges.get(i);
+                    os.write(partHeads[i]);
+                    transfer(channel, r[0], r[1] - r[0] + 1, target);
+                }
+                os.write(tail);
             }
         }
     }
 
-    private String getMimeType(String path) {
-        if (path.endsWith(".html")) return "text/html";
-        if (path.endsWith(".css")) return "text/css";
-        if (path.endsWith(".js")) return "application/javascript";
-        if (path.endsWith(".png")) return "image/png";
-        if (path.endsWith(".jpg")) return "image/jpeg";
+    /**
+     * Parses "bytes=0-99,200-,-500" into sorted, merged [first, last] pairs.
+     * Returns null if the header should be ignored (bad syntax, other unit, too
+     * many ranges) and an empty list if no range overlaps the file (416).
+     */
+    static List<long[]> parseRanges(String header, long size) {
+        String value = header.trim();
+        if (!value.regionMatches(true, 0, "bytes=", 0, 6)) {
+            return null;
+        }
+        String[] specs = value.substring(6).split(",");
+        if (specs.length > MAX_RANGES) {
+            return null;
+        }
+        List<long[]> ranges = new ArrayList<>();
+        for (String spec : specs) {
+            String s = spec.trim();
+            int dash = s.indexOf('-');
+            if (dash < 0) {
+                return null;
+            }
+            try {
+                String a = s.substring(0, dash).trim();
+                String b = s.substring(dash + 1).trim();
+                long first;
+                long last;
+                if (a.isEmpty()) {
+                    // Suffix range: the last n bytes
+                    long n = Long.parseLong(b);
+                    if (n < 0) {
+                        return null;
+                    }
+                    if (n == 0 || size == 0) {
+                        continue;
+                    }
+                    first = Math.max(0, size - n);
+                    last = size - 1;
+                } else {
+                    first = Long.parseLong(a);
+                    last = b.isEmpty() ? Long.MAX_VALUE : Long.parseLong(b);
+                    if (first < 0 || last < first) {
+                        return null;
+                    }
+                    if (first >= size) {
+                        continue;
+                    }
+                    last = Math.min(last, size - 1);
+                }
+                ranges.add(new long[] { first, last });
+            } catch (NumberFormatException e) {
+                return null;
+            }
+        }
+        // Overlapping or touching ranges are sent once
+        ranges.sort((x, y) -> Long.compare(x[0], y[0]));
+        List<long[]> merged = new ArrayList<>();
+        for (long[] r : ranges) {
+            long[] prev = merged.isEmpty() ? null : merged.get(merged.size() - 1);
+            if (prev != null && r[0] <= prev[1] + 1) {
+                prev[1] = Math.max(prev[1], r[1]);
+            } else {
+                merged.add(r);
+            }
+        }
+        return merged;
+    }
+
+    /** If-Range: ranges only apply while the file still has this ETag (or exact Last-Modified). */
+    private static boolean ifRangeMatches(String ifRange, String etag, long lastModified) {
+        if (ifRange == null) {
+            return true;
+        }
+        String v = ifRange.trim();
+        if (v.startsWith("\"") || v.startsWith("W/")) {
+            // Weak validators never match here
+            return v.equals(etag);
+        }
+        long date = parseHttpDate(v);
+        return date >= 0 && date / 1000 == lastModified / 1000;
+    }
+
+    /** Copies [position, position + count) of the file to the target channel. */
+    static void transfer(FileChannel channel, long position, long count, WritableByteChannel target) throws IOException {
+        long end = position + count;
+        while (position < end) {
+            long n = channel.transferTo(position, end - position, target);
+            if (n <= 0) {
+                break; // file shrank underneath us
+            }
+            position += n;
+        }
+    }
+
+    private static boolean isImmutable(String path) {
+        return path.startsWith(UPLOADS_PREFIX + "cas/")
+                || (path.startsWith(THUMBS_PREFIX) && path.contains("/cas/"));
+    }
+
+    private static boolean isNotModified(Headers request, String etag, long lastModified) {
+        String ifNoneMatch = request.getFirst("If-None-Match");
+        if (ifNoneMatch != null) {
+            // If-None-Match takes precedence over If-Modified-Since
+            for (String tag : ifNoneMatch.split(",")) {
+                String t = tag.trim();
+                if (t.startsWith("W/")) {
+                    t = t.substring(2);
+                }
+                if (t.equals("*") || t.equals(etag)) {
+                    return true;
+                }
+            }
+            return false;
+        }
+        String ifModifiedSince = request.getFirst("If-Modified-Since");
+        if (ifModifiedSince != null) {
+            long since = parseHttpDate(ifModifiedSince);
+            // HTTP dates have second precision
+            return since >= 0 && lastModified / 1000 <= since / 1000;
+        }
+        return false;
+    }
+
+    private CachedFile getCached(Path file, long size, long lastModified) throws IOException {
+        String key = file.toString();
+        CachedFile cached = cache.get(key);
+        if (cached != null && cached.size == size && cached.lastModified == lastModified) {
+            return cached;
+        }
+        if (cached != null && cache.remove(key, cached)) {
+            cachedBytes.addAndGet(-cached.memoryUsed());
+        }
+        if (cachedBytes.get() + size > CACHE_BUDGET) {
+            return null; // over budget: stream from disk instead
+        }
+        byte[] data = Files.readAllBytes(file);
+        if (data.length != size) {
+            return null; // changed while reading; serve from disk this time
+        }
+        CachedFile fresh = new CachedFile(data, size, lastModified);
+        if (cache.putIfAbsent(key, fresh) == null) {
+            cachedBytes.addAndGet(data.length);
+        }
+        return fresh;
+    }
+
+    private void sendNotFound(HttpExchange exchange) throws IOException {
+        // 404 Not Found
+        String response = "404 Not Found";
+        exchange.sendResponseHeaders(404, response.length());
+        try (OutputStream os = exchange.getResponseBody()) {
+            os.write(response.getBytes());
+        }
+    }
+
+    static String getMimeType(String path) {
+        int slash = path.lastIndexOf('/');
+        int dot = path.lastIndexOf('.');
+        if (dot > slash) {
+            String type = MIME_TYPES.get(path.substring(dot + 1).toLowerCase());
+            if (type != null) {
+                return type;
+            }
+        }
         return "application/octet-stream";
     }
+
+    static String formatHttpDate(long millis) {
+        return DateTimeFormatter.RFC_1123_DATE_TIME.format(
+                ZonedDateTime.ofInstant(Instant.ofEpochMilli(millis), ZoneOffset.UTC));
+    }
+
+    /** Parses an RFC 1123 date, or returns -1 if it is not one. */
+    static long parseHttpDate(String value) {
+        try {
+            return ZonedDateTime.parse(value.trim(), DateTimeFormatter.RFC_1123_DATE_TIME).toInstant().toEpochMilli();
+        } catch (DateTimeParseException e) {
+            return -1;
+        }
+    }
+
+    /** In-memory copy of a small file, valid while size and mtime are unchanged. */
+    private static class CachedFile {
+        final byte[] data;
+        final long size;
+        final long lastModified;
+        private volatile byte[] gzipped;
+
+        CachedFile(byte[] data, long size, long lastModified) {
+            this.data = data;
+            this.size = size;
+            this.lastModified = lastModified;
+        }
+
+        /** The gzipped body, compressed on first use and then kept with the file. */
+        byte[] gzipped() {
+            byte[] gz = gzipped;
+            if (gz == null) {
+                synchronized (this) {
+                    gz = gzipped;
+                    if (gz == null) {
+                        gz = Compression.gzip(data);
+                        gzipped = gz;
+                        cachedBytes.addAndGet(gz.length);
+                    }
+                }
+            }
+            return gz;
+        }
+
+        long memoryUsed() {
+            byte[] gz = gzipped;
+            return data.length + (gz != null ? gz.length : 0);
+        }
+    }
 }
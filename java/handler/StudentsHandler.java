@@ -1,79 +1,57 @@
 package handlers;
 
-import com.sun.net.httpserver.HttpHandler;
 import com.sun.net.httpserver.HttpExchange;
 import java.io.IOException;
-import java.io.OutputStream;
-import java.io.File;
-import java.io.FileInputStream;
+import java.net.URLEncoder;
 import java.nio.charset.StandardCharsets;
 import java.util.List;
+import java.util.Map;
 
 import dao.StudentDAO;
 import dao.EnrollmentDAO;
-import dao.MaterialDAO;
-import dao.StudentProgressDAO;
+import dao.ReadinessDAO;
 import model.Student;
-import model.StudentProgress;
 import model.Skill;
-import model.User;
-import model.Admin;
-import util.SimpleSessionManager;
+import model.SkillReadiness;
+import model.StudentQuery;
+import util.HttpResponses;
+import util.Params;
+import util.Request;
+import util.Router;
+import util.Template;
+import util.Thumbnails;
 
 /**
  * Handles Admin Students list page.
  * Reads HTML template and injects student data.
  */
-public class StudentsHandler implements HttpHandler {
+public class StudentsHandler implements Router.Route {
+
+    private static final int PAGE_SIZE = 50;
 
     private StudentDAO studentDAO = new StudentDAO();
     private EnrollmentDAO enrollmentDAO = new EnrollmentDAO();
 
-    private MaterialDAO materialDAO = new MaterialDAO();
-    private StudentProgressDAO progressDAO = new StudentProgressDAO();
+    private ReadinessDAO readinessDAO = new ReadinessDAO();
 
     @Override
-    public void handle(HttpExchange exchange) throws IOException {
-        // Session Check
-        User user = SimpleSessionManager.getSessionUser(exchange);
-        if (user == null || !(user instanceof Admin)) {
-            exchange.getResponseHeaders().set("Location", "/admin_login.html");
-            exchange.sendResponseHeaders(302, -1);
-            return;
-        }
-
-        String query = exchange.getRequestURI().getQuery();
-        String filter = null;
-        String action = null;
-        String idStr = null;
-        String successMsg = null;
-
-        String searchQuery = "";
-        if (query != null) {
-            for (String param : query.split("&")) {
-                String[] kv = param.split("=");
-                if (kv.length == 2) {
-                    if ("filter".equals(kv[0]))
-                        filter = kv[1];
-                    if ("action".equals(kv[0]))
-                        action = kv[1];
-                    if ("id".equals(kv[0]))
-                        idStr = kv[1];
-                    if ("success".equals(kv[0]))
-                        successMsg = kv[1];
-                    if ("q".equals(kv[0])) {
-                        try {
-                            searchQuery = java.net.URLDecoder.decode(kv[1], StandardCharsets.UTF_8.name());
-                        } catch (Exception e) {
-                        }
-                    }
-                }
-            }
-        }
+    public void handle(Request request) throws IOException {
+        // Admins only (checked by the Router)
+        HttpExchange exchange = request.getExchange();
+        Params params = request.getQuery();
+        String filter = params.get("filter");
+        String action = params.get("action");
+        int studentId = params.getInt("id", -1);
+        String successMsg = params.get("success");
+
+        String searchQuery = params.get("q", "");
+        String sortParam = params.get("sort");
+        String dirParam = params.get("dir");
+        String afterKey = params.get("after");
+        int afterId = params.getInt("afterId", 0);
 
         // Handle delete action
-        if ("delete".equals(action) && idStr != null) {
-            int studentId = Integer.parseInt(idStr);
+        if ("delete".equals(action) && studentId >= 0) {
             studentDAO.deleteStudent(studentId);
             exchange.getResponseHeaders().set("Location", "/students?success=Student+deleted+successfully");
             exchange.sendResponseHeaders(302, -1);
@@ -81,78 +59,65 @@ public class StudentsHandler implements HttpHandler {
         }
 
         // View student courses
-        if ("view_courses".equals(action) && idStr != null) {
-            int studentId = Integer.parseInt(idStr);
+        if ("view_courses".equals(action) && studentId >= 0) {
             sendStudentCourses(exchange, studentId);
             return;
         }
 
-        // List students
-        List<Student> students;
+        // List one page of students; filtering, search and sorting run in the database
+        StudentQuery studentQuery = new StudentQuery();
+        studentQuery.setSearch(searchQuery);
+        studentQuery.setSort(StudentQuery.Sort.parse(sortParam));
+        studentQuery.setDescending("desc".equals(dirParam));
+        studentQuery.setPageSize(PAGE_SIZE);
+        studentQuery.setAfter(afterKey, afterId);
+
         String pageTitle;
         String badge;
-
         if ("active".equals(filter)) {
-            students = enrollmentDAO.getAllActiveStudents();
+            studentQuery.setFilter(StudentQuery.Filter.ACTIVE);
             pageTitle = "Active Students";
             badge = "ACTIVE LEARNERS";
         } else if ("inactive".equals(filter)) {
-            List<Student> all = studentDAO.getAllStudents();
-            List<Student> active = enrollmentDAO.getAllActiveStudents();
-            // Get IDs of active students
-            java.util.Set<Integer> activeIds = new java.util.HashSet<>();
-            for (Student s : active)
-                activeIds.add(s.getId());
-
-            // Filter all to get inactive
-            students = new java.util.ArrayList<>();
-            if (all != null) {
-                for (Student s : all) {
-                    if (!activeIds.contains(s.getId())) {
-                        students.add(s);
-                    }
-                }
-            }
+            studentQuery.setFilter(StudentQuery.Filter.INACTIVE);
             pageTitle = "Inactive Students";
             badge = "INACTIVE LEARNERS";
         } else {
-            students = studentDAO.getAllStudents();
+            filter = null;
             pageTitle = "All Registered Students";
             badge = "ADMIN DIRECTORY";
         }
-
-        // Apply Search Filter
-        if (students != null && !searchQuery.isEmpty()) {
-            List<Student> filtered = new java.util.ArrayList<>();
-            String qLower = searchQuery.toLowerCase();
-            for (Student s : students) {
-                if ((s.getName() != null && s.getName().toLowerCase().contains(qLower)) ||
-                        (s.getUsername() != null && s.getUsername().toLowerCase().contains(qLower))) {
-                    filtered.add(s);
-                }
-            }
-            students = filtered;
+        if (!studentQuery.getSearch().isEmpty()) {
             pageTitle = "Search Results";
-            badge = "FOUND " + students.size() + " STUDENTS";
+            badge = "NAME OR EMAIL STARTING WITH \"" + studentQuery.getSearch().toUpperCase() + "\"";
+        }
+
+        List<Student> students = studentDAO.findStudents(studentQuery);
+        boolean hasMore = students.size() > PAGE_SIZE;
+        if (hasMore) {
+            students = students.subList(0, PAGE_SIZE);
         }
 
-        // Read template
-        String html = readTemplate("admin_students.html");
-        html = html.replace("{{pageTitle}}", pageTitle);
-        html = html.replace("{{badge}}", badge);
-        html = html.replace("{{searchQuery}}", searchQuery);
+        Template.Values page = Template.get("admin_students.html").values();
+        page.set("pageTitle", pageTitle);
+        page.set("badge", badge);
+        page.set("searchQuery", searchQuery);
+        page.setHtml("filterField", filter != null ? "<input type='hidden' name='filter' value='" + filter + "'>" : "");
 
         String clearBtn = "";
         if (!searchQuery.isEmpty()) {
-            clearBtn = "<a href='students' class='btn-small' style='background:#f1f5f9;color:#64748b;border:1px solid #cbd5e1;height:38px;padding:0 16px;box-sizing:border-box;display:inline-flex;align-items:center;text-decoration:none;'>Clear</a>";
+            clearBtn = "<a href='" + listUrl(filter, "", null, false) + "' class='btn-small' style='background:#f1f5f9;color:#64748b;border:1px solid #cbd5e1;height:38px;padding:0 16px;box-sizing:border-box;display:inline-flex;align-items:center;text-decoration:none;'>Clear</a>";
         }
-        html = html.replace("{{clearFilterBtn}}", clearBtn);
+        page.setHtml("clearFilterBtn", clearBtn);
 
         // Build table content
         StringBuilder content = new StringBuilder();
-        if (students == null || students.isEmpty()) {
+        if (students.isEmpty() && studentQuery.isFirstPage()) {
             content.append("<div class='empty-state'>");
-            if ("inactive".equals(filter)) {
+            if (!studentQuery.getSearch().isEmpty()) {
+                content.append("<i class='fas fa-search'></i>");
+                content.append("<p>No students match your search.</p>");
+            } else if ("inactive".equals(filter)) {
                 content.append("<i class='fas fa-user-check'></i>");
                 content.append("<p>No inactive students found.</p>");
                 content.append(
@@ -166,12 +131,9 @@ public class StudentsHandler implements HttpHandler {
             content.append("<div class='table-container'>");
             content.append("<table>");
             content.append("<thead><tr>");
-            content.append(
-                    "<th style='width:100px;cursor:pointer' onclick='sortTable(0)'>ID <i class='fas fa-sort' style='font-size:0.8em;color:#cbd5e1;margin-left:4px'></i></th>");
-            content.append(
-                    "<th style='cursor:pointer' onclick='sortTable(1)'>Student Name <i class='fas fa-sort' style='font-size:0.8em;color:#cbd5e1;margin-left:4px'></i></th>");
-            content.append(
-                    "<th style='cursor:pointer' onclick='sortTable(2)'>Email Address <i class='fas fa-sort' style='font-size:0.8em;color:#cbd5e1;margin-left:4px'></i></th>");
+            appendSortHeader(content, "ID", StudentQuery.Sort.ID, "width:100px", studentQuery, filter);
+            appendSortHeader(content, "Student Name", StudentQuery.Sort.NAME, null, studentQuery, filter);
+            appendSortHeader(content, "Email Address", StudentQuery.Sort.EMAIL, null, studentQuery, filter);
             content.append("<th style='text-align:right'>Actions</th>");
             content.append("</tr></thead>");
             content.append("<tbody>");
@@ -184,25 +146,39 @@ public class StudentsHandler implements HttpHandler {
                 content.append("<tr>");
                 content.append("<td><span style='color:#64748b;font-family:monospace'>#").append(s.getId())
                         .append("</span></td>");
-                content.append("<td><div class='user-cell'><div class='user-avatar'>").append(initials)
-                        .append("</div><strong>").append(s.getName()).append("</strong></div></td>");
-                content.append("<td>").append(s.getUsername()).append("</td>");
+                content.append("<td><div class='user-cell'><div class='user-avatar'>").append(Template.escape(initials))
+                        .append("</div><strong>").append(Template.escape(s.getName())).append("</strong></div></td>");
+                content.append("<td>").append(Template.escape(s.getUsername())).append("</td>");
                 content.append("<td style='text-align:right'>");
                 content.append("<div style='display:flex;gap:10px;justify-content:flex-end'>");
                 content.append("<a href='students?action=view_courses&id=").append(s.getId())
                         .append("' class='btn-view'>View Courses <i class='fas fa-chevron-right'></i></a>");
                 content.append("<a href='students?action=delete&id=").append(s.getId())
                         .append("' onclick=\"return confirm('Are you sure you want to delete ")
-                        .append(s.getName().replace("'", "\\'"))
+                        .append(Template.escape(s.getName().replace("'", "\\'")))
                         .append("? This will also delete their enrollments and progress.')\" style='background:#fef2f2;border:1px solid #fecaca;color:#dc2626;padding:8px 16px;border-radius:8px;text-decoration:none;font-weight:600;font-size:0.9rem;display:inline-flex;align-items:center;gap:8px'><i class='fas fa-trash'></i></a>");
                 content.append("</div></td>");
                 content.append("</tr>");
             }
 
             content.append("</tbody></table></div>");
+
+            // Pager: cursor links only, there is no page count to compute
+            content.append("<div style='display:flex;justify-content:flex-end;gap:10px;margin-top:16px'>");
+            String base = listUrl(filter, searchQuery, studentQuery.getSort(), studentQuery.isDescending());
+            if (!studentQuery.isFirstPage()) {
+                content.append("<a href='").append(base).append("' class='btn-small'><i class='fas fa-angle-double-left'></i> First page</a>");
+            }
+            if (hasMore) {
+                Student last = students.get(students.size() - 1);
+                content.append("<a href='").append(base).append("&after=").append(encode(sortKey(last, studentQuery.getSort())))
+                        .append("&afterId=").append(last.getId())
+                        .append("' class='btn-small'>Next page <i class='fas fa-angle-right'></i></a>");
+            }
+            content.append("</div>");
         }
 
-        html = html.replace("{{tableContent}}", content.toString());
+        page.setHtml("tableContent", content.toString());
 
         // Generate toast HTML if success param present
         StringBuilder toastHtml = new StringBuilder();
@@ -212,22 +188,58 @@ public class StudentsHandler implements HttpHandler {
             toastHtml.append("<div class='toast-icon'><i class='fas fa-check'></i></div>");
             toastHtml.append("<div class='toast-content'>");
             toastHtml.append("<p class='toast-title'>Success</p>");
-            toastHtml.append("<p class='toast-message'>").append(successMsg.replace("+", " ")).append("</p>");
+            toastHtml.append("<p class='toast-message'>").append(Template.escape(successMsg)).append("</p>");
             toastHtml.append("</div></div></div>");
         }
-        html = html.replace("{{toastHtml}}", toastHtml.toString());
+        page.setHtml("toastHtml", toastHtml.toString());
+
+        HttpResponses.sendHtml(exchange, page.render());
+    }
 
-        byte[] bytes = html.getBytes(StandardCharsets.UTF_8);
-        exchange.getResponseHeaders().set("Content-Type", "text/html; charset=UTF-8");
-        exchange.sendResponseHeaders(200, bytes.length);
-        try (OutputStream os = exchange.getResponseBody()) {
-            os.write(bytes);
+    /** Column header that links to the first page sorted by it (clicking the current sort flips direction). */
+    private void appendSortHeader(StringBuilder content, String label, StudentQuery.Sort sort, String style,
+            StudentQuery current, String filter) {
+        boolean active = current.getSort() == sort;
+        boolean descending = active && !current.isDescending();
+        String icon = !active ? "fa-sort" : (current.isDescending() ? "fa-sort-down" : "fa-sort-up");
+        content.append("<th").append(style != null ? " style='" + style + "'" : "").append(">");
+        content.append("<a href='").append(listUrl(filter, current.getSearch(), sort, descending))
+                .append("' style='color:inherit;text-decoration:none'>").append(label)
+                .append(" <i class='fas ").append(icon).append("' style='font-size:0.8em;color:")
+                .append(active ? "#6366f1" : "#cbd5e1").append(";margin-left:4px'></i></a></th>");
+    }
+
+    private static String listUrl(String filter, String search, StudentQuery.Sort sort, boolean descending) {
+        StringBuilder url = new StringBuilder("students?sort=");
+        url.append(sort != null ? sort.name().toLowerCase() : "id");
+        if (descending) {
+            url.append("&dir=desc");
+        }
+        if (filter != null) {
+            url.append("&filter=").append(encode(filter));
         }
+        if (search != null && !search.isEmpty()) {
+            url.append("&q=").append(encode(search));
+        }
+        return url.toString();
+    }
+
+    private static String sortKey(Student s, StudentQuery.Sort sort) {
+        switch (sort) {
+            case NAME: return s.getName();
+            case EMAIL: return s.getUsername();
+            default: return "";
+        }
+    }
+
+    private static String encode(String value) {
+        return URLEncoder.encode(value != null ? value : "", StandardCharsets.UTF_8);
     }
 
     private void sendStudentCourses(HttpExchange exchange, int studentId) throws IOException {
         Student student = studentDAO.getStudentById(studentId);
         List<Skill> courses = enrollmentDAO.getEnrolledSkills(studentId);
+        Map<Integer, SkillReadiness> readinessBySkill = readinessDAO.getReadinessByStudent(studentId);
 
         StringBuilder html = new StringBuilder();
         html.append("<!DOCTYPE html><html lang='en'><head><meta charset='UTF-8'>");
@@ -300,12 +312,12 @@ public class StudentsHandler implements HttpHandler {
         html.append("<span style='color:#94a3b8'>/</span>");
         html.append("<a href='students' style='color:#64748b;text-decoration:none'>Students</a>");
         html.append("<span style='color:#94a3b8'>/</span>");
-        html.append("<span style='color:#0f172a;font-weight:500'>").append(student.getUsername())
+        html.append("<span style='color:#0f172a;font-weight:500'>").append(Template.escape(student.getUsername()))
                 .append("'s Courses</span>");
         html.append("</nav>");
 
         html.append("<h1 style='font-size: 1.75rem; font-weight: 700; color: #0f172a; margin: 0 0 10px;'>Courses for "
-                + student.getName() + "</h1>");
+                + Template.escape(student.getName()) + "</h1>");
         html.append("<p style='color: #64748b; margin-bottom: 30px;'>Viewing all enrolled courses.</p>");
 
         if (courses == null || courses.isEmpty()) {
@@ -314,23 +326,16 @@ public class StudentsHandler implements HttpHandler {
         } else {
             html.append("<div class='courses-grid'>");
             for (Skill s : courses) {
-                String imgUrl = (s.getImageUrl() != null && !s.getImageUrl().isEmpty()) ? "uploads/" + s.getImageUrl()
-                        : null;
+                // Card-sized thumbnail, not the original upload
+                String imgUrl = Thumbnails.cardUrl(s.getImageUrl());
                 boolean isActive = "active".equals(s.getStatus());
                 String badgeStyle = isActive ? "background:#dcfce7;color:#166534;"
                         : "background:#f1f5f9;color:#64748b;";
                 String badgeText = isActive ? "Active" : "Inactive";
-                int moduleCount = materialDAO.getMaterialsBySkillId(s.getSkillId()).size();
-
-                // Calculate Progress
-                List<StudentProgress> allProgress = progressDAO.getProgressByStudentId(studentId);
-                int completedMaterials = 0;
-                for (StudentProgress sp : allProgress) {
-                    if (s.getSkillName().equals(sp.getSkillName()) && "Completed".equalsIgnoreCase(sp.getStatus())) {
-                        completedMaterials++;
-                    }
-                }
-                int progressPercent = (moduleCount > 0) ? (completedMaterials * 100 / moduleCount) : 0;
+                // Module count and progress come from the course's READINESS row
+                SkillReadiness r = readinessBySkill.get(s.getSkillId());
+                int moduleCount = r != null ? r.getTotalCount() : 0;
+                int progressPercent = r != null ? r.getProgressPercent() : 0;
                 // Green if >= 80% (Rewarding), Orange if >= 40%, Blue otherwise
                 String progressColor = progressPercent >= 80 ? "#10b981"
                         : (progressPercent >= 40 ? "#f59e0b" : "#4f46e5");
@@ -350,7 +355,7 @@ public class StudentsHandler implements HttpHandler {
 
                 // Body
                 html.append("<div class='card-body'>");
-                html.append("<h3 class='course-title'>").append(s.getSkillName()).append("</h3>");
+                html.append("<h3 class='course-title'>").append(Template.escape(s.getSkillName())).append("</h3>");
                 html.append("<div class='course-meta'><i class='far fa-folder'></i> ").append(moduleCount)
                         .append(" Modules</div>");
 
@@ -366,7 +371,7 @@ public class StudentsHandler implements HttpHandler {
                 // Action
                 html.append("<div class='card-action'>");
                 html.append("<a href='course_students?skillId=").append(s.getSkillId()).append("&skillName=")
-                        .append(s.getSkillName())
+                        .append(URLEncoder.encode(s.getSkillName(), StandardCharsets.UTF_8))
                         .append("' class='btn-view'>View Analytics <i class='fas fa-arrow-right'></i></a>");
                 html.append("</div>");
 
@@ -377,18 +382,6 @@ public class StudentsHandler implements HttpHandler {
 
         html.append("</div></body></html>");
 
-        byte[] bytes = html.toString().getBytes(StandardCharsets.UTF_8);
-        exchange.getResponseHeaders().set("Content-Type", "text/html; charset=UTF-8");
-        exchange.sendResponseHeaders(200, bytes.length);
-        try (OutputStream os = exchange.getResponseBody()) {
-            os.write(bytes);
-        }
-    }
-
-    private String readTemplate(String filename) throws IOException {
-        File file = new File("src/main/webapp/" + filename);
-        try (FileInputStream fis = new FileInputStream(file)) {
-            return new String(fis.readAllBytes(), StandardCharsets.UTF_8);
-        }
+        HttpResponses.sendHtml(exchange, html.toString());
     }
 }
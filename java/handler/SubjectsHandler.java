@@ -1,98 +1,81 @@
 package handlers;
 
-import com.sun.net.httpserver.HttpHandler;
 import com.sun.net.httpserver.HttpExchange;
 import java.io.IOException;
-import java.io.OutputStream;
 import java.io.File;
-import java.io.FileInputStream;
-import java.io.FileOutputStream;
+import java.net.URLEncoder;
 import java.nio.charset.StandardCharsets;
 import java.util.List;
-import java.util.Map;
-import java.util.HashMap;
 import java.util.ArrayList;
-import java.net.URLDecoder;
 
 import dao.SkillDAO;
 import dao.MaterialDAO;
+import dao.UploadStore;
 import model.Skill;
-import model.User;
-import model.Admin;
-import util.SimpleSessionManager;
+import util.HttpResponses;
 import util.MultipartParser;
+import util.Params;
+import util.Request;
+import util.Router;
+import util.Template;
+import util.Thumbnails;
 
 /**
  * Handles Admin Subjects/Courses management.
  */
-public class SubjectsHandler implements HttpHandler {
+public class SubjectsHandler implements Router.Route {
 
     private SkillDAO skillDAO = new SkillDAO();
     private MaterialDAO materialDAO = new MaterialDAO();
-    private static final String UPLOAD_DIR = "src/main/webapp/uploads";
+    private UploadStore uploadStore = new UploadStore();
+    // Same disk as the upload folder but outside the web root
+    private static final String SPOOL_DIR = "src/main/upload-spool";
+    // Course images are small; reject anything bigger early
+    private static final long MAX_IMAGE_BYTES = Long.getLong("upload.maxImageBytes", 20L * 1024 * 1024);
 
     @Override
-    public void handle(HttpExchange exchange) throws IOException {
-        // Session Check
-        User user = SimpleSessionManager.getSessionUser(exchange);
-        if (user == null || !(user instanceof Admin)) {
-            exchange.getResponseHeaders().set("Location", "/admin_login.html");
-            exchange.sendResponseHeaders(302, -1);
-            return;
-        }
-
-        String method = exchange.getRequestMethod();
-
-        if ("POST".equalsIgnoreCase(method)) {
-            handlePost(exchange);
+    public void handle(Request request) throws IOException {
+        // Admins only (checked by the Router)
+        if (request.isPost()) {
+            handlePost(request);
         } else {
-            handleGet(exchange);
+            handleGet(request.getExchange(), request.getQuery());
         }
     }
 
-    private void handlePost(HttpExchange exchange) throws IOException {
-        String contentType = exchange.getRequestHeaders().getFirst("Content-Type");
-
-        Map<String, String> params = new HashMap<>();
+    private void handlePost(Request request) throws IOException {
+        HttpExchange exchange = request.getExchange();
+        Params params;
         String imageUrl = null;
 
         // Check if it's multipart form data
-        if (contentType != null && contentType.contains("multipart/form-data")) {
-            MultipartParser parser = new MultipartParser();
-            parser.parse(exchange.getRequestBody(), contentType);
-            params = parser.getFields();
-
-            // Handle file upload
-            if (parser.hasFile()) {
-                String originalName = parser.getFileName();
-                String fileName = System.currentTimeMillis() + "_" + originalName;
-
-                // Ensure upload directory exists
-                File uploadDir = new File(UPLOAD_DIR);
-                if (!uploadDir.exists()) {
-                    uploadDir.mkdirs();
+        if (request.isMultipart()) {
+            // The image streams to a spool file and is moved into the upload store when complete
+            try (MultipartParser parser = new MultipartParser(new File(SPOOL_DIR), MAX_IMAGE_BYTES)) {
+                parser.parse(exchange.getRequestBody(), request.getContentType());
+                params = Params.of(parser.getFields());
+
+                // Handle file upload
+                if (parser.hasFile()) {
+                    // Stored once per content: "cas/<sha256>.<ext>"
+                    imageUrl = uploadStore.store(parser);
+                    Thumbnails.pregenerate(imageUrl);
                 }
-
-                // Save file
-                File outFile = new File(uploadDir, fileName);
-                try (FileOutputStream fos = new FileOutputStream(outFile)) {
-                    fos.write(parser.getFileData());
-                }
-                imageUrl = fileName;
+            } catch (MultipartParser.TooLargeException e) {
+                HttpResponses.sendError(exchange, 413, "Upload rejected: " + e.getMessage() + ".");
+                return;
             }
         } else {
             // Regular form data
-            String body = new String(exchange.getRequestBody().readAllBytes(), StandardCharsets.UTF_8);
-            params = parseQuery(body);
+            params = request.getForm();
         }
 
         String action = params.get("action");
+        int skillId = params.getInt("skillId", -1);
 
-        if ("delete".equals(action)) {
-            int skillId = Integer.parseInt(params.get("skillId"));
+        if ("delete".equals(action) && skillId >= 0) {
             skillDAO.deleteSkill(skillId);
-        } else if ("toggleStatus".equals(action)) {
-            int skillId = Integer.parseInt(params.get("skillId"));
+        } else if ("toggleStatus".equals(action) && skillId >= 0) {
             String newStatus = params.get("newStatus");
             skillDAO.updateStatus(skillId, newStatus);
         } else if ("add".equals(action)) {
@@ -116,10 +99,7 @@ public class SubjectsHandler implements HttpHandler {
         exchange.sendResponseHeaders(302, -1);
     }
 
-    private void handleGet(HttpExchange exchange) throws IOException {
-        String query = exchange.getRequestURI().getQuery();
-        Map<String, String> params = parseQuery(query);
-
+    private void handleGet(HttpExchange exchange, Params params) throws IOException {
         String mode = params.get("mode");
         String filter = params.get("filter");
         boolean isViewMode = "view".equals(mode);
@@ -136,7 +116,7 @@ public class SubjectsHandler implements HttpHandler {
             } else if (isInactiveFilter) {
                 pageTitle = "Inactive Courses";
                 pageDescription = "View archived or disabled courses.";
-            } else if (params.containsKey("analytics")) {
+            } else if (params.has("analytics")) {
                 pageTitle = "Course Analytics";
                 pageDescription = "Monitor student performance and readiness across all subjects.";
             } else {
@@ -148,18 +128,17 @@ public class SubjectsHandler implements HttpHandler {
             pageDescription = "Create new subjects and manage learning materials.";
         }
 
-        // Read template
-        String html = readTemplate("admin_subjects.html");
-        html = html.replace("{{pageTitle}}", pageTitle);
-        html = html.replace("{{pageDescription}}", pageDescription);
+        Template.Values page = Template.get("admin_subjects.html").values();
+        page.set("pageTitle", pageTitle);
+        page.set("pageDescription", pageDescription);
 
         // Inject Filter Selections
-        html = html.replace("{{filterAllSelected}}", (filter == null || filter.isEmpty()) ? "selected" : "");
-        html = html.replace("{{filterActiveSelected}}", isActiveFilter ? "selected" : "");
-        html = html.replace("{{filterInactiveSelected}}", isInactiveFilter ? "selected" : "");
+        page.set("filterAllSelected", (filter == null || filter.isEmpty()) ? "selected" : "");
+        page.set("filterActiveSelected", isActiveFilter ? "selected" : "");
+        page.set("filterInactiveSelected", isInactiveFilter ? "selected" : "");
 
         // Inject current mode for the filter form
-        html = html.replace("value=\"manage\"", "value=\"" + (mode != null ? mode : "manage") + "\"");
+        page.set("mode", mode != null ? mode : "manage");
 
         // Add form section (only in manage mode)
         StringBuilder addForm = new StringBuilder();
@@ -178,7 +157,7 @@ public class SubjectsHandler implements HttpHandler {
                     "<button type='submit' class='btn-primary' style='padding:12px 24px;border-radius:8px;font-weight:600;border:none;cursor:pointer;font-size:0.95rem'>Create Course</button>");
             addForm.append("</form></div>");
         }
-        html = html.replace("{{addFormSection}}", addForm.toString());
+        page.setHtml("addFormSection", addForm.toString());
 
         // Build courses content
         List<Skill> skills = skillDAO.getAllSkills();
@@ -272,7 +251,7 @@ public class SubjectsHandler implements HttpHandler {
             }
         }
 
-        html = html.replace("{{coursesContent}}", content.toString());
+        page.setHtml("coursesContent", content.toString());
 
         // Generate toast HTML if success param present
         String success = params.get("success");
@@ -283,26 +262,22 @@ public class SubjectsHandler implements HttpHandler {
             toastHtml.append("<div class='toast-icon'><i class='fas fa-check'></i></div>");
             toastHtml.append("<div class='toast-content'>");
             toastHtml.append("<p class='toast-title'>Success</p>");
-            toastHtml.append("<p class='toast-message'>").append(success.replace("+", " ")).append("</p>");
+            toastHtml.append("<p class='toast-message'>").append(Template.escape(success)).append("</p>");
             toastHtml.append("</div></div></div>");
         }
-        html = html.replace("{{toastHtml}}", toastHtml.toString());
+        page.setHtml("toastHtml", toastHtml.toString());
 
-        byte[] bytes = html.getBytes(StandardCharsets.UTF_8);
-        exchange.getResponseHeaders().set("Content-Type", "text/html; charset=UTF-8");
-        exchange.sendResponseHeaders(200, bytes.length);
-        try (OutputStream os = exchange.getResponseBody()) {
-            os.write(bytes);
-        }
+        HttpResponses.sendHtml(exchange, page.render());
     }
 
     private String renderCourseCard(Skill s, boolean isViewMode, MaterialDAO materialDAO) {
         StringBuilder content = new StringBuilder();
-        String img = (s.getImageUrl() != null && !s.getImageUrl().isEmpty()) ? "uploads/" + s.getImageUrl() : null;
+        // Card-sized thumbnail, not the original upload
+        String img = Thumbnails.cardUrl(s.getImageUrl());
         boolean isActive = "active".equals(s.getStatus());
         String badgeStyle = isActive ? "background:#dcfce7;color:#166534;" : "background:#f1f5f9;color:#64748b;";
         String badgeText = isActive ? "Active" : "Inactive";
-        int moduleCount = materialDAO.getMaterialsBySkillId(s.getSkillId()).size();
+        int moduleCount = materialDAO.getModuleCount(s.getSkillId());
 
         content.append("<div class='course-card'>");
 
@@ -319,7 +294,7 @@ public class SubjectsHandler implements HttpHandler {
 
         // Body
         content.append("<div class='card-body'>");
-        content.append("<h3 class='course-title'>").append(s.getSkillName()).append("</h3>");
+        content.append("<h3 class='course-title'>").append(Template.escape(s.getSkillName())).append("</h3>");
         content.append("<div class='course-meta'><i class='far fa-folder'></i> ").append(moduleCount)
                 .append(" Modules</div>");
 
@@ -327,7 +302,7 @@ public class SubjectsHandler implements HttpHandler {
         content.append("<div class='card-action'>");
         if (isViewMode) {
             content.append("<a href='course_students?skillId=").append(s.getSkillId()).append("&skillName=")
-                    .append(s.getSkillName())
+                    .append(Template.escape(URLEncoder.encode(s.getSkillName(), StandardCharsets.UTF_8)))
                     .append("' class='btn-view'>View Analytics <i class='fas fa-arrow-right'></i></a>");
         } else {
             content.append("<div style='display:flex;gap:10px'>");
@@ -353,32 +328,4 @@ public class SubjectsHandler implements HttpHandler {
         content.append("</div></div></div>");
         return content.toString();
     }
-
-    private String readTemplate(String filename) throws IOException {
-        File file = new File("src/main/webapp/" + filename);
-        try (FileInputStream fis = new FileInputStream(file)) {
-            return new String(fis.readAllBytes(), StandardCharsets.UTF_8);
-        }
-    }
-
-    private Map<String, String> parseQuery(String query) {
-        Map<String, String> result = new HashMap<>();
-        if (query == null || query.isEmpty())
-            return result;
-
-        for (String param : query.split("&")) {
-            String[] entry = param.split("=");
-            if (entry.length > 1) {
-                try {
-                    result.put(
-                            URLDecoder.decode(entry[0], StandardCharsets.UTF_8.name()),
-                            URLDecoder.decode(entry[1], StandardCharsets.UTF_8.name()));
-                } catch (Exception e) {
-                }
-            } else if (entry.length == 1) {
-                result.put(entry[0], "");
-            }
-        }
-        return result;
-    }
 }
@@ -0,0 +1,58 @@
+package model;
+
+/**
+ * Readiness statistics of everyone enrolled in one course, plus how many
+ * students completed each material. Readiness values are percentages.
+ */
+public class CohortStats {
+    private final int skillId;
+    private final int studentCount;
+    private final double mean;
+    private final double median;
+    private final double p90;
+    private final int[] histogram;      // 10 buckets of 10 points; 100% falls in the last one
+    private final int[] thresholds;     // readiness thresholds in percent
+    private final int[] aboveThreshold; // students at or above each threshold
+    private final int[] materialIds;    // in material order
+    private final int[] materialCompleted;
+
+    public CohortStats(int skillId, int studentCount, double mean, double median, double p90, int[] histogram,
+                       int[] thresholds, int[] aboveThreshold, int[] materialIds, int[] materialCompleted) {
+        this.skillId = skillId;
+        this.studentCount = studentCount;
+        this.mean = mean;
+        this.median = median;
+        this.p90 = p90;
+        this.histogram = histogram;
+        this.thresholds = thresholds;
+        this.aboveThreshold = aboveThreshold;
+        this.materialIds = materialIds;
+        this.materialCompleted = materialCompleted;
+    }
+
+    public int getSkillId() { return skillId; }
+    public int getStudentCount() { return studentCount; }
+    public double getMean() { return mean; }
+    public double getMedian() { return median; }
+    public double getP90() { return p90; }
+
+    public int getHistogramBuckets() { return histogram.length; }
+    public int getHistogramCount(int bucket) { return histogram[bucket]; }
+
+    public int getThresholdCount() { return thresholds.length; }
+    public int getThreshold(int i) { return thresholds[i]; }
+
+    /** Share (0..1) of students whose readiness is at least threshold i. */
+    public double getShareAbove(int i) {
+        return studentCount > 0 ? (double) aboveThreshold[i] / studentCount : 0;
+    }
+
+    public int getMaterialCount() { return materialIds.length; }
+    public int getMaterialId(int i) { return materialIds[i]; }
+    public int getMaterialCompleted(int i) { return materialCompleted[i]; }
+
+    /** Share (0..1) of students who completed material i. */
+    public double getCompletionRate(int i) {
+        return studentCount > 0 ? (double) materialCompleted[i] / studentCount : 0;
+    }
+}
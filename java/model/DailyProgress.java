@@ -0,0 +1,31 @@
+package model;
+
+import java.time.LocalDate;
+
+/**
+ * Progress of a course or of one student on one day: completions, undone
+ * completions, net completed weight gained and readiness at the end of the day.
+ */
+public class DailyProgress {
+    private final LocalDate day;
+    private final int completions;
+    private final int reverts;
+    private final long weightDelta;
+    private final double readiness;
+
+    public DailyProgress(LocalDate day, int completions, int reverts, long weightDelta, double readiness) {
+        this.day = day;
+        this.completions = completions;
+        this.reverts = reverts;
+        this.weightDelta = weightDelta;
+        this.readiness = readiness;
+    }
+
+    public LocalDate getDay() { return day; }
+    public int getCompletions() { return completions; }
+    public int getReverts() { return reverts; }
+    public long getWeightDelta() { return weightDelta; }
+
+    /** Readiness in percent at the end of the day. */
+    public double getReadiness() { return readiness; }
+}
@@ -0,0 +1,29 @@
+package model;
+
+/**
+ * One material in a ranking (weak/strong areas, best next modules).
+ * The meaning of score depends on the ranking; it is always in readiness points.
+ */
+public class MaterialRank {
+    private final int materialId;
+    private final String title;
+    private final int weight;
+    private final double completionRate;
+    private final double score;
+
+    public MaterialRank(int materialId, String title, int weight, double completionRate, double score) {
+        this.materialId = materialId;
+        this.title = title;
+        this.weight = weight;
+        this.completionRate = completionRate;
+        this.score = score;
+    }
+
+    public int getMaterialId() { return materialId; }
+    public String getTitle() { return title; }
+    public int getWeight() { return weight; }
+
+    /** Share (0..1) of enrolled students who completed the material. */
+    public double getCompletionRate() { return completionRate; }
+    public double getScore() { return score; }
+}
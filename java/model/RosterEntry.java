@@ -0,0 +1,23 @@
+package model;
+
+/**
+ * One row of a course roster: an enrolled student and their readiness in that course.
+ */
+public class RosterEntry {
+    private int studentId;
+    private String name;
+    private String email;
+    private SkillReadiness readiness;
+
+    public RosterEntry(int studentId, String name, String email, SkillReadiness readiness) {
+        this.studentId = studentId;
+        this.name = name;
+        this.email = email;
+        this.readiness = readiness;
+    }
+
+    public int getStudentId() { return studentId; }
+    public String getName() { return name; }
+    public String getEmail() { return email; }
+    public SkillReadiness getReadiness() { return readiness; }
+}
@@ -0,0 +1,35 @@
+package model;
+
+/**
+ * One type-ahead search result. For materials parentId is the course (skill) id;
+ * for courses the subtitle is their status, for students their email.
+ */
+public class SearchHit {
+
+    public enum Type { STUDENT, SKILL, MATERIAL }
+
+    private final Type type;
+    private final int id;
+    private final int parentId;
+    private final String title;
+    private final String subtitle;
+    private final double score;
+
+    public SearchHit(Type type, int id, int parentId, String title, String subtitle, double score) {
+        this.type = type;
+        this.id = id;
+        this.parentId = parentId;
+        this.title = title;
+        this.subtitle = subtitle;
+        this.score = score;
+    }
+
+    public Type getType() { return type; }
+    public int getId() { return id; }
+    public int getParentId() { return parentId; }
+    public String getTitle() { return title; }
+    public String getSubtitle() { return subtitle; }
+
+    /** Higher is better: exact match, then prefix, then word prefix, then substring. */
+    public double getScore() { return score; }
+}
@@ -0,0 +1,37 @@
+package model;
+
+/**
+ * Aggregated progress of one student in one skill (course):
+ * material counts and weight sums, from which readiness is derived.
+ */
+public class SkillReadiness {
+    private int skillId;
+    private int completedCount;
+    private int totalCount;
+    private long completedWeight;
+    private long totalWeight;
+
+    public SkillReadiness(int skillId, int completedCount, int totalCount, long completedWeight, long totalWeight) {
+        this.skillId = skillId;
+        this.completedCount = completedCount;
+        this.totalCount = totalCount;
+        this.completedWeight = completedWeight;
+        this.totalWeight = totalWeight;
+    }
+
+    public int getSkillId() { return skillId; }
+    public int getCompletedCount() { return completedCount; }
+    public int getTotalCount() { return totalCount; }
+    public long getCompletedWeight() { return completedWeight; }
+    public long getTotalWeight() { return totalWeight; }
+
+    /** Weighted readiness in percent: completed weight / total weight. */
+    public double getReadiness() {
+        return totalWeight > 0 ? (completedWeight * 100.0) / totalWeight : 0;
+    }
+
+    /** Share of materials completed, in whole percent. */
+    public int getProgressPercent() {
+        return totalCount > 0 ? (completedCount * 100 / totalCount) : 0;
+    }
+}
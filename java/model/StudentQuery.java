@@ -0,0 +1,61 @@
+package model;
+
+/**
+ * One page request for the admin student directory: which students, in what
+ * order, and where the previous page ended (keyset cursor, not an offset).
+ */
+public class StudentQuery {
+
+    public enum Filter { ALL, ACTIVE, INACTIVE }
+
+    public enum Sort {
+        ID("student_id"), NAME("name"), EMAIL("email");
+
+        private final String column;
+
+        Sort(String column) { this.column = column; }
+
+        public String getColumn() { return column; }
+
+        public static Sort parse(String value) {
+            if ("name".equals(value)) return NAME;
+            if ("email".equals(value)) return EMAIL;
+            return ID;
+        }
+    }
+
+    private Filter filter = Filter.ALL;
+    private String search = "";
+    private Sort sort = Sort.ID;
+    private boolean descending;
+    private int pageSize = 50;
+    // Sort key and id of the last row on the previous page; afterId 0 means first page
+    private String afterKey;
+    private int afterId;
+
+    public Filter getFilter() { return filter; }
+    public void setFilter(Filter filter) { this.filter = filter != null ? filter : Filter.ALL; }
+
+    /** Name or email prefix; empty means no search. */
+    public String getSearch() { return search; }
+    public void setSearch(String search) { this.search = search != null ? search.trim() : ""; }
+
+    public Sort getSort() { return sort; }
+    public void setSort(Sort sort) { this.sort = sort != null ? sort : Sort.ID; }
+
+    public boolean isDescending() { return descending; }
+    public void setDescending(boolean descending) { this.descending = descending; }
+
+    public int getPageSize() { return pageSize; }
+    public void setPageSize(int pageSize) { this.pageSize = Math.max(1, Math.min(pageSize, 500)); }
+
+    public String getAfterKey() { return afterKey; }
+    public int getAfterId() { return afterId; }
+
+    public void setAfter(String afterKey, int afterId) {
+        this.afterKey = afterKey;
+        this.afterId = afterId;
+    }
+
+    public boolean isFirstPage() { return afterId <= 0; }
+}
@@ -0,0 +1,117 @@
+package util;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Runs long admin operations off the HTTP thread and keeps their progress
+ * so pages can show it. Jobs run one at a time on a single daemon thread;
+ * finished jobs are forgotten after a while.
+ */
+public class BackgroundJobs {
+
+    private static final long FINISHED_RETENTION_MS = 10 * 60_000;
+
+    private static final ExecutorService worker = Executors.newSingleThreadExecutor(r -> {
+        Thread t = new Thread(r, "background-jobs");
+        t.setDaemon(true);
+        return t;
+    });
+    private static final Map<Integer, Job> jobs = new ConcurrentHashMap<>();
+    private static final AtomicInteger nextId = new AtomicInteger(1);
+
+    public enum State { QUEUED, RUNNING, DONE, FAILED }
+
+    /** Work to run in the background; report progress through the given job. */
+    public interface Task {
+        void run(Job job) throws Exception;
+    }
+
+    public static class Job {
+        private final int id;
+        private final String tag;
+        private final String description;
+        private volatile State state = State.QUEUED;
+        private volatile int processed;
+        private volatile int total;
+        private volatile String error;
+        private volatile long finishedAt;
+
+        Job(int id, String tag, String description) {
+            this.id = id;
+            this.tag = tag;
+            this.description = description;
+        }
+
+        public void setProgress(int processed, int total) {
+            this.processed = processed;
+            this.total = total;
+        }
+
+        public int getId() { return id; }
+        public String getTag() { return tag; }
+        public String getDescription() { return description; }
+        public State getState() { return state; }
+        public int getProcessed() { return processed; }
+        public int getTotal() { return total; }
+        public String getError() { return error; }
+        public boolean isFinished() { return state == State.DONE || state == State.FAILED; }
+
+        public int getPercent() {
+            int t = total;
+            return t > 0 ? (int) ((long) processed * 100 / t) : (state == State.DONE ? 100 : 0);
+        }
+    }
+
+    /**
+     * Queues a task. The tag groups jobs for lookup, e.g. "skill:12".
+     */
+    public static Job submit(String tag, String description, Task task) {
+        prune();
+        Job job = new Job(nextId.getAndIncrement(), tag, description);
+        jobs.put(job.id, job);
+        worker.submit(() -> {
+            job.state = State.RUNNING;
+            State result;
+            try {
+                task.run(job);
+                result = State.DONE;
+            } catch (Exception e) {
+                Log.error("Background job " + job.id + " (" + job.description + ") failed", e);
+                job.error = e.getMessage();
+                result = State.FAILED;
+            }
+            // finishedAt first: prune() takes a finished job with no time as long expired
+            job.finishedAt = System.currentTimeMillis();
+            job.state = result;
+        });
+        return job;
+    }
+
+    public static Job getJob(int id) {
+        return jobs.get(id);
+    }
+
+    /** Jobs with the given tag, oldest first. */
+    public static List<Job> getJobsByTag(String tag) {
+        prune();
+        List<Job> list = new ArrayList<>();
+        for (Job job : jobs.values()) {
+            if (job.tag.equals(tag)) {
+                list.add(job);
+            }
+        }
+        list.sort((a, b) -> Integer.compare(a.id, b.id));
+        return list;
+    }
+
+    private static void prune() {
+        long cutoff = System.currentTimeMillis() - FINISHED_RETENTION_MS;
+        jobs.values().removeIf(job -> job.isFinished() && job.finishedAt < cutoff);
+    }
+}
@@ -0,0 +1,108 @@
+package util;
+
+import com.sun.net.httpserver.Headers;
+import com.sun.net.httpserver.HttpExchange;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Gzip content negotiation for responses.
+ *
+ * Only text-like types are compressed and only above a minimum size (tiny
+ * bodies get bigger, not smaller). Settings come from system properties:
+ *   -Dgzip.enabled=true|false  -Dgzip.minBytes=1024  -Dgzip.level=1..9 (default 6)
+ */
+public class Compression {
+
+    public static final boolean ENABLED = !"false".equalsIgnoreCase(System.getProperty("gzip.enabled"));
+    public static final int MIN_BYTES = Integer.getInteger("gzip.minBytes", 1024);
+    public static final int LEVEL = Math.max(1, Math.min(9, Integer.getInteger("gzip.level", 6)));
+
+    /** True if the client accepts gzip (an explicit q=0 refuses it). */
+    public static boolean acceptsGzip(HttpExchange exchange) {
+        if (!ENABLED) {
+            return false;
+        }
+        String header = exchange.getRequestHeaders().getFirst("Accept-Encoding");
+        if (header == null) {
+            return false;
+        }
+        boolean wildcard = false;
+        for (String part : header.split(",")) {
+            String[] tokens = part.trim().split(";");
+            String coding = tokens[0].trim().toLowerCase();
+            boolean refused = false;
+            for (int i = 1; i < tokens.length; i++) {
+                String p = tokens[i].trim();
+                if (p.startsWith("q=")) {
+                    try {
+                        refused = Double.parseDouble(p.substring(2)) <= 0;
+                    } catch (NumberFormatException e) {
+                        refused = true;
+                    }
+                }
+            }
+            if ("gzip".equals(coding) || "x-gzip".equals(coding)) {
+                return !refused;
+            }
+            if ("*".equals(coding)) {
+                wildcard = !refused;
+            }
+        }
+        return wildcard;
+    }
+
+    /** Text formats that shrink well; images, video and archives are already compressed. */
+    public static boolean isCompressible(String contentType) {
+        if (contentType == null) {
+            return false;
+        }
+        String type = contentType.toLowerCase();
+        return type.startsWith("text/")
+                || type.startsWith("application/javascript")
+                || type.startsWith("application/json")
+                || type.startsWith("application/xml")
+                || type.startsWith("image/svg+xml")
+                || type.startsWith("image/x-icon")
+                || type.startsWith("font/ttf")
+                || type.startsWith("font/otf")
+                || type.startsWith("application/vnd.ms-fontobject");
+    }
+
+    /** Whether a body of this type and size should be gzipped for this request. */
+    public static boolean shouldCompress(HttpExchange exchange, String contentType, long length) {
+        return length >= MIN_BYTES && isCompressible(contentType) && acceptsGzip(exchange);
+    }
+
+    /** Marks a response that depends on Accept-Encoding, so shared caches keep both forms apart. */
+    public static void addVary(Headers headers) {
+        String vary = headers.getFirst("Vary");
+        if (vary == null) {
+            headers.set("Vary", "Accept-Encoding");
+        } else if (!vary.toLowerCase().contains("accept-encoding")) {
+            headers.set("Vary", vary + ", Accept-Encoding");
+        }
+    }
+
+    /** Gzip stream at the configured level. */
+    public static GZIPOutputStream gzipStream(OutputStream out) throws IOException {
+        return new GZIPOutputStream(out, 8192) {
+            {
+                def.setLevel(LEVEL);
+            }
+        };
+    }
+
+    /** Compresses a whole body in memory (static files are done once and cached). */
+    public static byte[] gzip(byte[] data) {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(data.length / 4 + 64);
+        try (GZIPOutputStream gz = gzipStream(bytes)) {
+            gz.write(data);
+        } catch (IOException e) {
+            throw new IllegalStateException(e); // cannot happen in memory
+        }
+        return bytes.toByteArray();
+    }
+}
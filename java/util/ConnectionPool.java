@@ -0,0 +1,332 @@
+package util;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.SQLException;
+import java.util.Iterator;
+import java.util.concurrent.ConcurrentLinkedDeque;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Small bounded JDBC connection pool used behind DBConnection.
+ *
+ * Callers get a proxy Connection; calling close() on it hands the physical
+ * connection back to the pool instead of closing the socket, so the
+ * existing try-with-resources blocks in the DAOs work unchanged.
+ */
+public class ConnectionPool {
+
+    private final String url;
+    private final String user;
+    private final String pass;
+
+    private final int maxSize;
+    private final int minIdle;
+    private final long acquireTimeoutMs;
+    private final long idleTimeoutMs;
+    private final long maxLifetimeMs;
+    private final long validationIntervalMs;
+    private static final int VALIDATION_TIMEOUT_SEC = 2;
+
+    // One permit per connection that may be handed out at the same time
+    private final Semaphore permits;
+    // Most recently returned connection first, so warm connections get reused
+    private final ConcurrentLinkedDeque<PooledEntry> idle = new ConcurrentLinkedDeque<>();
+    private final ScheduledExecutorService housekeeper;
+    private volatile boolean closed = false;
+
+    // Statistics
+    private final AtomicInteger total = new AtomicInteger();
+    private final AtomicInteger active = new AtomicInteger();
+    private final AtomicLong createdCount = new AtomicLong();
+    private final AtomicLong closedCount = new AtomicLong();
+    private final AtomicLong acquireCount = new AtomicLong();
+    private final AtomicLong timeoutCount = new AtomicLong();
+    private final AtomicLong waitNanos = new AtomicLong();
+
+    public ConnectionPool(String url, String user, String pass, int maxSize, int minIdle,
+                          long acquireTimeoutMs, long idleTimeoutMs, long maxLifetimeMs, long validationIntervalMs) {
+        this.url = url;
+        this.user = user;
+        this.pass = pass;
+        this.maxSize = maxSize;
+        this.minIdle = Math.min(minIdle, maxSize);
+        this.acquireTimeoutMs = acquireTimeoutMs;
+        this.idleTimeoutMs = idleTimeoutMs;
+        this.maxLifetimeMs = maxLifetimeMs;
+        this.validationIntervalMs = validationIntervalMs;
+        this.permits = new Semaphore(maxSize, true);
+
+        this.housekeeper = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "db-pool-housekeeper");
+            t.setDaemon(true);
+            return t;
+        });
+        long period = Math.max(1000, Math.min(idleTimeoutMs, maxLifetimeMs) / 4);
+        housekeeper.scheduleWithFixedDelay(this::evict, period, period, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Borrows a connection, waiting up to the acquire timeout for one to be returned
+     * when the pool is exhausted.
+     */
+    public Connection getConnection() throws SQLException {
+        if (closed) {
+            throw new SQLException("Connection pool is shut down");
+        }
+        long start = System.nanoTime();
+        boolean acquired;
+        try {
+            acquired = permits.tryAcquire(acquireTimeoutMs, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new SQLException("Interrupted while waiting for a database connection", e);
+        }
+        waitNanos.addAndGet(System.nanoTime() - start);
+        if (!acquired) {
+            timeoutCount.incrementAndGet();
+            throw new SQLException("Timed out after " + acquireTimeoutMs + " ms waiting for a database connection ("
+                    + getStats() + ")");
+        }
+
+        try {
+            PooledEntry entry = takeIdle();
+            if (entry == null) {
+                entry = open();
+            }
+            active.incrementAndGet();
+            acquireCount.incrementAndGet();
+            return entry.lease();
+        } catch (SQLException | RuntimeException e) {
+            permits.release();
+            throw e;
+        }
+    }
+
+    /** Takes the freshest usable idle connection, discarding stale or broken ones. */
+    private PooledEntry takeIdle() {
+        PooledEntry entry;
+        while ((entry = idle.pollFirst()) != null) {
+            long now = System.currentTimeMillis();
+            if (now - entry.createdAt >= maxLifetimeMs) {
+                discard(entry);
+                continue;
+            }
+            if (now - entry.lastUsedAt >= validationIntervalMs && !isValid(entry.physical)) {
+                discard(entry);
+                continue;
+            }
+            return entry;
+        }
+        return null;
+    }
+
+    private PooledEntry open() throws SQLException {
+        Connection physical = DriverManager.getConnection(url, user, pass);
+        total.incrementAndGet();
+        createdCount.incrementAndGet();
+        return new PooledEntry(physical);
+    }
+
+    private boolean isValid(Connection conn) {
+        try {
+            return conn.isValid(VALIDATION_TIMEOUT_SEC);
+        } catch (SQLException e) {
+            return false;
+        }
+    }
+
+    private void release(PooledEntry entry) {
+        active.decrementAndGet();
+        try {
+            boolean reusable = !closed
+                    && System.currentTimeMillis() - entry.createdAt < maxLifetimeMs
+                    && reset(entry.physical);
+            if (reusable) {
+                entry.lastUsedAt = System.currentTimeMillis();
+                idle.offerFirst(entry);
+            } else {
+                discard(entry);
+            }
+        } finally {
+            permits.release();
+        }
+    }
+
+    /** Undoes per-lease state so the next borrower sees a clean auto-commit connection. */
+    private boolean reset(Connection conn) {
+        try {
+            if (conn.isClosed()) {
+                return false;
+            }
+            if (!conn.getAutoCommit()) {
+                conn.rollback();
+                conn.setAutoCommit(true);
+            }
+            if (conn.isReadOnly()) {
+                conn.setReadOnly(false);
+            }
+            conn.clearWarnings();
+            return true;
+        } catch (SQLException e) {
+            return false;
+        }
+    }
+
+    private void discard(PooledEntry entry) {
+        total.decrementAndGet();
+        closedCount.incrementAndGet();
+        try {
+            entry.physical.close();
+        } catch (SQLException ignored) {
+            // Connection is being thrown away anyway
+        }
+    }
+
+    /** Closes idle connections past their idle timeout or max lifetime, keeping minIdle around. */
+    private void evict() {
+        long now = System.currentTimeMillis();
+        Iterator<PooledEntry> it = idle.descendingIterator(); // oldest returned first
+        while (it.hasNext()) {
+            PooledEntry entry = it.next();
+            boolean expired = now - entry.createdAt >= maxLifetimeMs;
+            boolean idleTooLong = now - entry.lastUsedAt >= idleTimeoutMs && idle.size() > minIdle;
+            if ((expired || idleTooLong) && idle.remove(entry)) {
+                discard(entry);
+            }
+        }
+    }
+
+    /** Closes every idle connection; leased ones are closed as they are returned. */
+    public void shutdown() {
+        closed = true;
+        housekeeper.shutdownNow();
+        PooledEntry entry;
+        while ((entry = idle.pollFirst()) != null) {
+            discard(entry);
+        }
+    }
+
+    public Stats getStats() {
+        return new Stats(maxSize, total.get(), active.get(), idle.size(), permits.getQueueLength(),
+                createdCount.get(), closedCount.get(), acquireCount.get(), timeoutCount.get(),
+                TimeUnit.NANOSECONDS.toMillis(waitNanos.get()));
+    }
+
+    /** Point-in-time snapshot of pool counters. */
+    public static class Stats {
+        private final int maxSize;
+        private final int total;
+        private final int active;
+        private final int idle;
+        private final int waiting;
+        private final long created;
+        private final long closed;
+        private final long acquired;
+        private final long timeouts;
+        private final long totalWaitMs;
+
+        Stats(int maxSize, int total, int active, int idle, int waiting,
+              long created, long closed, long acquired, long timeouts, long totalWaitMs) {
+            this.maxSize = maxSize;
+            this.total = total;
+            this.active = active;
+            this.idle = idle;
+            this.waiting = waiting;
+            this.created = created;
+            this.closed = closed;
+            this.acquired = acquired;
+            this.timeouts = timeouts;
+            this.totalWaitMs = totalWaitMs;
+        }
+
+        public int getMaxSize() { return maxSize; }
+        public int getTotal() { return total; }
+        public int getActive() { return active; }
+        public int getIdle() { return idle; }
+        public int getWaiting() { return waiting; }
+        public long getCreated() { return created; }
+        public long getClosed() { return closed; }
+        public long getAcquired() { return acquired; }
+        public long getTimeouts() { return timeouts; }
+        public long getTotalWaitMs() { return totalWaitMs; }
+
+        @Override
+        public String toString() {
+            return "max=" + maxSize + ", total=" + total + ", active=" + active + ", idle=" + idle
+                    + ", waiting=" + waiting + ", created=" + created + ", closed=" + closed
+                    + ", acquired=" + acquired + ", timeouts=" + timeouts + ", waitMs=" + totalWaitMs;
+        }
+    }
+
+    /** A physical connection plus the bookkeeping the pool needs for it. */
+    private class PooledEntry {
+        final Connection physical;
+        final long createdAt;
+        volatile long lastUsedAt;
+
+        PooledEntry(Connection physical) {
+            this.physical = physical;
+            this.createdAt = System.currentTimeMillis();
+            this.lastUsedAt = createdAt;
+        }
+
+        Connection lease() {
+            return (Connection) Proxy.newProxyInstance(
+                    Connection.class.getClassLoader(),
+                    new Class<?>[] { Connection.class },
+                    new LeaseHandler(this));
+        }
+    }
+
+    /** Routes calls to the physical connection until the borrower closes its lease. */
+    private class LeaseHandler implements InvocationHandler {
+        private final PooledEntry entry;
+        private boolean returned = false;
+
+        LeaseHandler(PooledEntry entry) {
+            this.entry = entry;
+        }
+
+        @Override
+        public synchronized Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+            String name = method.getName();
+            if ("close".equals(name)) {
+                if (!returned) {
+                    returned = true;
+                    release(entry);
+                }
+                return null;
+            }
+            if ("isClosed".equals(name)) {
+                return returned || entry.physical.isClosed();
+            }
+            if ("equals".equals(name)) {
+                return proxy == args[0];
+            }
+            if ("hashCode".equals(name)) {
+                return System.identityHashCode(proxy);
+            }
+            if ("toString".equals(name)) {
+                return "PooledConnection[" + entry.physical + (returned ? ", returned" : "") + "]";
+            }
+            if (returned) {
+                throw new SQLException("Connection has already been returned to the pool");
+            }
+            try {
+                return method.invoke(entry.physical, args);
+            } catch (InvocationTargetException e) {
+                throw e.getCause();
+            }
+        }
+    }
+}
@@ -1,7 +1,6 @@
 package util;
 
 import java.sql.Connection;
-import java.sql.DriverManager;
 import java.sql.SQLException;
 
 public class DBConnection {
@@ -9,17 +8,60 @@ public class DBConnection {
     private static final String USER = "root";
     private static final String PASS = "diks@123";
 
+    // Pool settings (can be overridden with -Ddb.pool.* system properties)
+    private static final int POOL_MAX_SIZE = Integer.getInteger("db.pool.maxSize", 20);
+    private static final int POOL_MIN_IDLE = Integer.getInteger("db.pool.minIdle", 2);
+    private static final long ACQUIRE_TIMEOUT_MS = Long.getLong("db.pool.acquireTimeoutMs", 5_000);
+    private static final long IDLE_TIMEOUT_MS = Long.getLong("db.pool.idleTimeoutMs", 5 * 60_000);
+    private static final long MAX_LIFETIME_MS = Long.getLong("db.pool.maxLifetimeMs", 30 * 60_000);
+    private static final long VALIDATION_INTERVAL_MS = Long.getLong("db.pool.validationIntervalMs", 30_000);
+
+    private static volatile ConnectionPool pool;
+
+    /**
+     * Returns a pooled connection. Closing it returns it to the pool,
+     * so callers keep using try-with-resources as before.
+     */
     public static Connection getConnection() throws SQLException, ClassNotFoundException {
         try {
-            // Load MySQL JDBC Driver
-            Class.forName("com.mysql.cj.jdbc.Driver");
-            return DriverManager.getConnection(URL, USER, PASS);
+            return getPool().getConnection();
         } catch (ClassNotFoundException | SQLException e) {
-            e.printStackTrace();
+            Log.error("Could not get a database connection", e);
             throw e;
         }
     }
-    
+
+    private static ConnectionPool getPool() throws ClassNotFoundException {
+        ConnectionPool p = pool;
+        if (p == null) {
+            synchronized (DBConnection.class) {
+                p = pool;
+                if (p == null) {
+                    // Load MySQL JDBC Driver (once, not per connection)
+                    Class.forName("com.mysql.cj.jdbc.Driver");
+                    p = new ConnectionPool(URL, USER, PASS, POOL_MAX_SIZE, POOL_MIN_IDLE,
+                            ACQUIRE_TIMEOUT_MS, IDLE_TIMEOUT_MS, MAX_LIFETIME_MS, VALIDATION_INTERVAL_MS);
+                    pool = p;
+                }
+            }
+        }
+        return p;
+    }
+
+    /** Current pool counters, or null if no connection has been requested yet. */
+    public static ConnectionPool.Stats getPoolStats() {
+        ConnectionPool p = pool;
+        return p != null ? p.getStats() : null;
+    }
+
+    /** Closes all pooled connections (call on server shutdown). */
+    public static synchronized void shutdown() {
+        if (pool != null) {
+            pool.shutdown();
+            pool = null;
+        }
+    }
+
     // Test the connection
     public static void main(String[] args) {
         try {
@@ -27,10 +69,13 @@ public class DBConnection {
             if (conn != null) {
                 System.out.println("Connection to MySQL has been established.");
                 conn.close();
+                System.out.println("Pool: " + getPoolStats());
             }
         } catch (Exception e) {
             System.out.println("Connection Failed.");
             e.printStackTrace();
+        } finally {
+            shutdown();
         }
     }
 }
@@ -0,0 +1,69 @@
+package util;
+
+import com.sun.net.httpserver.HttpExchange;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Shared helpers for writing HTML responses from the handlers.
+ * Pages are gzipped on the fly when the client accepts it (see Compression).
+ */
+public class HttpResponses {
+
+    private static final String HTML_TYPE = "text/html; charset=UTF-8";
+
+    /** Sends a rendered template, streaming its segments straight to the response body. */
+    public static void sendHtml(HttpExchange exchange, Template.Rendered page) throws IOException {
+        exchange.getResponseHeaders().set("Content-Type", HTML_TYPE);
+        Compression.addVary(exchange.getResponseHeaders());
+        if (Compression.shouldCompress(exchange, HTML_TYPE, page.length())) {
+            exchange.getResponseHeaders().set("Content-Encoding", "gzip");
+            exchange.sendResponseHeaders(200, 0); // chunked: compressed size is not known up front
+            try (OutputStream os = Compression.gzipStream(exchange.getResponseBody())) {
+                page.writeTo(os);
+            }
+            return;
+        }
+        exchange.sendResponseHeaders(200, page.length());
+        try (OutputStream os = exchange.getResponseBody()) {
+            page.writeTo(os);
+        }
+    }
+
+    /**
+     * Sends a short error page with the given status. The connection is closed
+     * afterwards, so an unread request body (e.g. a rejected upload) is not drained.
+     */
+    public static void sendError(HttpExchange exchange, int status, String message) throws IOException {
+        byte[] bytes = ("<!DOCTYPE html><html><body><h1>" + status + "</h1><p>" + Template.escape(message)
+                + "</p><p><a href='javascript:history.back()'>Back</a></p></body></html>").getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().set("Content-Type", HTML_TYPE);
+        exchange.getResponseHeaders().set("Connection", "close");
+        exchange.sendResponseHeaders(status, bytes.length);
+        try (OutputStream os = exchange.getResponseBody()) {
+            os.write(bytes);
+        }
+    }
+
+    /** Sends a page built as a string. */
+    public static void sendHtml(HttpExchange exchange, String html) throws IOException {
+        send(exchange, 200, HTML_TYPE, html.getBytes(StandardCharsets.UTF_8));
+    }
+
+    /** Sends a body of any type, gzipped if it is text, large enough and the client accepts it. */
+    public static void send(HttpExchange exchange, int status, String contentType, byte[] bytes) throws IOException {
+        exchange.getResponseHeaders().set("Content-Type", contentType);
+        if (Compression.isCompressible(contentType)) {
+            Compression.addVary(exchange.getResponseHeaders());
+            if (Compression.shouldCompress(exchange, contentType, bytes.length)) {
+                bytes = Compression.gzip(bytes);
+                exchange.getResponseHeaders().set("Content-Encoding", "gzip");
+            }
+        }
+        exchange.sendResponseHeaders(status, bytes.length);
+        try (OutputStream os = exchange.getResponseBody()) {
+            os.write(bytes);
+        }
+    }
+}
@@ -0,0 +1,290 @@
+package util;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintWriter;
+import java.io.StringWriter;
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.format.DateTimeFormatter;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Access and application log.
+ *
+ * Request threads never touch a file or a lock: a line is put into a bounded
+ * ring buffer with one CAS, and a single background thread drains the rings
+ * and writes the lines in batches. When a ring is full the line is dropped
+ * and counted instead of making the handler wait; the count is written to
+ * the application log.
+ *
+ *   logs/access.log - one line per request: method, path, status, latency, bytes
+ *   logs/app.log    - warnings and errors (with stack traces) from DAOs and handlers
+ *
+ * Files rotate by size (access.log.1 ... access.log.N). Settings:
+ *   -Dlog.dir=logs -Dlog.bufferSize=8192 -Dlog.maxFileBytes=10485760 -Dlog.maxFiles=5
+ */
+public class Log {
+
+    private static final String DIR = System.getProperty("log.dir", "logs");
+    private static final int BUFFER_SIZE = Integer.highestOneBit(Math.max(64, Integer.getInteger("log.bufferSize", 8192)));
+    private static final long MAX_FILE_BYTES = Long.getLong("log.maxFileBytes", 10L * 1024 * 1024);
+    private static final int MAX_FILES = Integer.getInteger("log.maxFiles", 5);
+    private static final long IDLE_PARK_NANOS = 20_000_000; // writer sleeps 20ms when both rings are empty
+    private static final int BATCH_BYTES = 64 * 1024;
+
+    private static final DateTimeFormatter TIME =
+            DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss.SSS").withZone(ZoneId.systemDefault());
+
+    private static final Ring accessRing = new Ring(BUFFER_SIZE);
+    private static final Ring appRing = new Ring(BUFFER_SIZE);
+    private static final LongAdder dropped = new LongAdder();
+    private static final RotatingFile accessFile = new RotatingFile("access.log");
+    private static final RotatingFile appFile = new RotatingFile("app.log");
+    private static volatile Thread writer;
+    private static boolean closed;      // guarded by Log.class
+    private static long reportedDrops;  // guarded by Log.class
+
+    /** One request: written as "time method path status latency bytes". */
+    public static void access(String method, String path, int status, long nanos, long bytes) {
+        StringBuilder sb = new StringBuilder(48 + path.length());
+        sb.append(method).append(' ').append(path).append(' ').append(status).append(' ')
+                .append(nanos / 1_000_000).append('.').append((nanos / 100_000) % 10).append("ms ")
+                .append(bytes);
+        offer(accessRing, new Entry(System.currentTimeMillis(), sb.toString()));
+    }
+
+    public static void info(String message) {
+        offer(appRing, new Entry(System.currentTimeMillis(), "INFO  " + message));
+    }
+
+    public static void warn(String message) {
+        offer(appRing, new Entry(System.currentTimeMillis(), "WARN  " + message));
+    }
+
+    /** Logs the message with the exception's stack trace. */
+    public static void error(String message, Throwable t) {
+        StringWriter trace = new StringWriter();
+        trace.append("ERROR ").append(message).append(System.lineSeparator());
+        if (t != null) {
+            t.printStackTrace(new PrintWriter(trace));
+        }
+        String text = trace.toString();
+        offer(appRing, new Entry(System.currentTimeMillis(), text.stripTrailing()));
+    }
+
+    /** Lines thrown away so far because the writer could not keep up. */
+    public static long getDropped() {
+        return dropped.sum();
+    }
+
+    private static void offer(Ring ring, Entry entry) {
+        if (writer == null) {
+            startWriter();
+        }
+        if (!ring.offer(entry)) {
+            dropped.increment();
+        }
+    }
+
+    private static synchronized void startWriter() {
+        if (writer != null) {
+            return;
+        }
+        Thread t = new Thread(Log::writeLoop, "log-writer");
+        t.setDaemon(true);
+        writer = t;
+        t.start();
+        // Write out what is still buffered when the server stops
+        Runtime.getRuntime().addShutdownHook(new Thread(Log::flushOnShutdown, "log-flush"));
+    }
+
+    private static void writeLoop() {
+        while (true) {
+            boolean wrote;
+            // The rings have a single consumer: this thread, or the shutdown flush
+            synchronized (Log.class) {
+                if (closed) {
+                    return;
+                }
+                reportDrops();
+                wrote = drain(accessRing, accessFile) | drain(appRing, appFile);
+            }
+            if (!wrote) {
+                LockSupport.parkNanos(IDLE_PARK_NANOS);
+            }
+        }
+    }
+
+    private static synchronized void flushOnShutdown() {
+        closed = true;
+        drain(accessRing, accessFile);
+        reportDrops();
+        drain(appRing, appFile);
+        accessFile.close();
+        appFile.close();
+    }
+
+    /** Notes newly dropped lines in the application log (caller holds Log.class). */
+    private static void reportDrops() {
+        long drops = dropped.sum();
+        if (drops != reportedDrops) {
+            appRing.offer(new Entry(System.currentTimeMillis(),
+                    "WARN  " + (drops - reportedDrops) + " log lines dropped (buffer full), " + drops + " in total"));
+            reportedDrops = drops;
+        }
+    }
+
+    /** Writes everything currently in the ring; returns false if it was empty. */
+    private static boolean drain(Ring ring, RotatingFile file) {
+        Entry entry = ring.poll();
+        if (entry == null) {
+            return false;
+        }
+        StringBuilder batch = new StringBuilder(4096);
+        while (entry != null) {
+            TIME.formatTo(Instant.ofEpochMilli(entry.time), batch);
+            batch.append(' ').append(entry.text).append('\n');
+            if (batch.length() >= BATCH_BYTES) {
+                file.write(batch);
+                batch.setLength(0);
+            }
+            entry = ring.poll();
+        }
+        if (batch.length() > 0) {
+            file.write(batch);
+        }
+        file.flush();
+        return true;
+    }
+
+    private static class Entry {
+        final long time;
+        final String text;
+
+        Entry(long time, String text) {
+            this.time = time;
+            this.text = text;
+        }
+    }
+
+    /**
+     * Bounded multi-producer, single-consumer queue. Producers claim a slot by
+     * advancing tail with CAS and then publish the entry into it; the consumer
+     * takes entries in order and frees the slot by nulling it.
+     */
+    private static class Ring {
+        private final AtomicReferenceArray<Entry> slots;
+        private final int mask;
+        private final AtomicLong tail = new AtomicLong();
+        private volatile long head; // written by the consumer only
+
+        Ring(int capacity) {
+            slots = new AtomicReferenceArray<>(capacity);
+            mask = capacity - 1;
+        }
+
+        boolean offer(Entry entry) {
+            long t;
+            do {
+                t = tail.get();
+                if (t - head >= slots.length()) {
+                    return false;
+                }
+            } while (!tail.compareAndSet(t, t + 1));
+            slots.lazySet((int) t & mask, entry);
+            return true;
+        }
+
+        Entry poll() {
+            long h = head;
+            int index = (int) h & mask;
+            // null also while a producer has claimed the slot but not yet filled it
+            Entry entry = slots.get(index);
+            if (entry == null) {
+                return null;
+            }
+            slots.lazySet(index, null);
+            head = h + 1;
+            return entry;
+        }
+    }
+
+    /** A log file that is renamed to name.1, name.2, ... when it grows past MAX_FILE_BYTES. */
+    private static class RotatingFile {
+        private final String name;
+        private OutputStream out;
+        private long size;
+        private boolean broken;
+
+        RotatingFile(String name) {
+            this.name = name;
+        }
+
+        void write(CharSequence text) {
+            byte[] bytes = text.toString().getBytes(StandardCharsets.UTF_8);
+            try {
+                if (out == null || size + bytes.length > MAX_FILE_BYTES) {
+                    open(out != null);
+                }
+                out.write(bytes);
+                size += bytes.length;
+            } catch (IOException e) {
+                if (!broken) {
+                    broken = true;
+                    System.err.println("Cannot write " + DIR + "/" + name + ": " + e.getMessage());
+                }
+                // Keep the lines on the console rather than losing them
+                System.err.print(text);
+                out = null;
+            }
+        }
+
+        private void open(boolean rotate) throws IOException {
+            close();
+            File dir = new File(DIR);
+            dir.mkdirs();
+            File file = new File(dir, name);
+            if (rotate && file.exists()) {
+                new File(dir, name + "." + MAX_FILES).delete();
+                for (int i = MAX_FILES - 1; i >= 1; i--) {
+                    File older = new File(dir, name + "." + i);
+                    if (older.exists()) {
+                        older.renameTo(new File(dir, name + "." + (i + 1)));
+                    }
+                }
+                file.renameTo(new File(dir, name + ".1"));
+            }
+            out = new FileOutputStream(file, true);
+            size = file.length();
+            broken = false;
+        }
+
+        void flush() {
+            if (out != null) {
+                try {
+                    out.flush();
+                } catch (IOException e) {
+                    out = null;
+                }
+            }
+        }
+
+        void close() {
+            if (out != null) {
+                try {
+                    out.close();
+                } catch (IOException ignored) {
+                    // nothing left to do with it
+                }
+                out = null;
+            }
+        }
+    }
+}
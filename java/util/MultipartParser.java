@@ -0,0 +1,407 @@
+package util;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.security.DigestOutputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Streaming multipart/form-data parser.
+ *
+ * The body is read through one fixed-size buffer. Text fields are kept in
+ * memory (each capped at a few KB); the uploaded file is written straight to a
+ * temp file in the spool directory, so memory use does not depend on the
+ * upload size. Limits are checked while streaming and a too-large upload stops
+ * with TooLargeException as soon as it crosses the limit.
+ *
+ * Usage:
+ *   try (MultipartParser parser = new MultipartParser(new File(SPOOL_DIR))) {
+ *       parser.parse(exchange.getRequestBody(), contentType);
+ *       if (parser.hasFile()) parser.moveFileTo(new File(UPLOAD_DIR), name);
+ *   }
+ * Closing the parser deletes the temp file if it was not moved.
+ *
+ * Limits: -Dupload.maxFileBytes (default 512 MB), -Dupload.maxFieldBytes
+ * (default 64 KB per field), -Dupload.maxParts (default 100).
+ */
+public class MultipartParser implements AutoCloseable {
+
+    private static final long MAX_FILE_BYTES = Long.getLong("upload.maxFileBytes", 512L * 1024 * 1024);
+    private static final int MAX_FIELD_BYTES = Integer.getInteger("upload.maxFieldBytes", 64 * 1024);
+    private static final int MAX_PARTS = Integer.getInteger("upload.maxParts", 100);
+    private static final int BUFFER_SIZE = 64 * 1024;
+    private static final int MAX_HEADER_LINE = 8 * 1024;
+
+    /** Thrown when a file or field is over its limit; the handler should answer 413. */
+    public static class TooLargeException extends IOException {
+        private static final long serialVersionUID = 1L;
+
+        public TooLargeException(String message) {
+            super(message);
+        }
+    }
+
+    private final File spoolDir;
+    private final long maxFileBytes;
+    private final Map<String, String> fields = new HashMap<>();
+    private String fileName;
+    private String fileField;
+    private long fileSize;
+    private String fileSha256;
+    private Path tempFile;
+
+    // Read buffer: valid bytes are buf[start, end)
+    private final byte[] buf = new byte[BUFFER_SIZE];
+    private int start;
+    private int end;
+    private InputStream in;
+    private boolean eof;
+
+    /** Spools uploads to the system temp directory. */
+    public MultipartParser() {
+        this(new File(System.getProperty("java.io.tmpdir")));
+    }
+
+    /** Spools uploads to spoolDir; keep it on the same disk as the upload folder so the final move is a rename. */
+    public MultipartParser(File spoolDir) {
+        this(spoolDir, MAX_FILE_BYTES);
+    }
+
+    public MultipartParser(File spoolDir, long maxFileBytes) {
+        this.spoolDir = spoolDir;
+        this.maxFileBytes = maxFileBytes;
+    }
+
+    public void parse(InputStream body, String contentType) throws IOException {
+        String boundary = boundaryOf(contentType);
+        if (boundary == null) {
+            throw new IOException("multipart boundary missing");
+        }
+        byte[] delimiter = ("\r\n--" + boundary).getBytes(StandardCharsets.ISO_8859_1);
+        this.in = body;
+
+        // The first boundary has no CRLF in front of it; pretend it has one
+        buf[0] = '\r';
+        buf[1] = '\n';
+        start = 0;
+        end = 2;
+        copyUntil(delimiter, null, Long.MAX_VALUE); // preamble
+
+        int parts = 0;
+        while (true) {
+            // After a boundary: "--" ends the body, otherwise the line ends and headers follow
+            if (!ensure(2)) {
+                throw new IOException("unexpected end of multipart body");
+            }
+            if (buf[start] == '-' && buf[start + 1] == '-') {
+                break;
+            }
+            readLine();
+            if (++parts > MAX_PARTS) {
+                throw new TooLargeException("too many form parts");
+            }
+
+            String name = null;
+            String filename = null;
+            String line;
+            while (!(line = readLine()).isEmpty()) {
+                if (line.regionMatches(true, 0, "Content-Disposition:", 0, 20)) {
+                    name = dispositionParam(line, "name");
+                    filename = dispositionParam(line, "filename");
+                }
+            }
+
+            if (filename == null) {
+                FieldBuffer value = new FieldBuffer();
+                copyUntil(delimiter, value, MAX_FIELD_BYTES);
+                if (name != null) {
+                    fields.put(name, value.toString(StandardCharsets.UTF_8));
+                }
+            } else if (tempFile == null && !filename.isEmpty()) {
+                spoolFile(delimiter, name, filename);
+            } else {
+                // No file chosen, or a second file: skip its bytes
+                copyUntil(delimiter, null, Long.MAX_VALUE);
+            }
+        }
+    }
+
+    private void spoolFile(byte[] delimiter, String name, String filename) throws IOException {
+        Files.createDirectories(spoolDir.toPath());
+        tempFile = Files.createTempFile(spoolDir.toPath(), "upload-", ".part");
+        MessageDigest sha256;
+        try {
+            sha256 = MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+        // Hashed on the way to disk, so content addressing needs no second read
+        try (OutputStream out = new DigestOutputStream(new FileOutputStream(tempFile.toFile()), sha256)) {
+            fileSize = copyUntil(delimiter, out, maxFileBytes);
+        } catch (IOException e) {
+            close();
+            throw e;
+        }
+        StringBuilder hex = new StringBuilder(64);
+        for (byte b : sha256.digest()) {
+            hex.append(Character.forDigit((b >> 4) & 0xf, 16)).append(Character.forDigit(b & 0xf, 16));
+        }
+        fileSha256 = hex.toString();
+        fileField = name;
+        fileName = safeFileName(filename);
+    }
+
+    // ---- Streaming ----
+
+    /**
+     * Copies bytes to out (null discards them) until the delimiter, and consumes
+     * the delimiter. Fails as soon as more than limit bytes were seen.
+     */
+    private long copyUntil(byte[] delimiter, OutputStream out, long limit) throws IOException {
+        long copied = 0;
+        while (true) {
+            int found = indexOf(delimiter);
+            int stop = found >= 0 ? found : Math.max(start, end - delimiter.length + 1);
+            int n = stop - start;
+            if (n > 0) {
+                copied += n;
+                if (copied > limit) {
+                    throw new TooLargeException(out instanceof FieldBuffer
+                            ? "form field is larger than " + limit + " bytes"
+                            : "uploaded file is larger than " + (limit / (1024 * 1024)) + " MB");
+                }
+                if (out != null) {
+                    out.write(buf, start, n);
+                }
+                start = stop;
+            }
+            if (found >= 0) {
+                start += delimiter.length;
+                return copied;
+            }
+            if (!fill()) {
+                throw new IOException("unexpected end of multipart body");
+            }
+        }
+    }
+
+    private int indexOf(byte[] pattern) {
+        byte first = pattern[0];
+        int last = end - pattern.length;
+        outer:
+        for (int i = start; i <= last; i++) {
+            if (buf[i] != first) {
+                continue;
+            }
+            for (int j = 1; j < pattern.length; j++) {
+                if (buf[i + j] != pattern[j]) {
+                    continue outer;
+                }
+            }
+            return i;
+        }
+        return -1;
+    }
+
+    /** Reads more input behind the unread bytes; false at end of stream. */
+    private boolean fill() throws IOException {
+        if (eof) {
+            return false;
+        }
+        if (start > 0) {
+            System.arraycopy(buf, start, buf, 0, end - start);
+            end -= start;
+            start = 0;
+        }
+        if (end == buf.length) {
+            throw new IOException("multipart boundary or header too long");
+        }
+        int n = in.read(buf, end, buf.length - end);
+        if (n < 0) {
+            eof = true;
+            return false;
+        }
+        end += n;
+        return true;
+    }
+
+    private boolean ensure(int count) throws IOException {
+        while (end - start < count) {
+            if (!fill()) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /** One CRLF-terminated header line, without the line end. Header bytes are UTF-8 (browsers send file names that way). */
+    private String readLine() throws IOException {
+        while (true) {
+            for (int i = start; i + 1 < end; i++) {
+                if (buf[i] == '\r' && buf[i + 1] == '\n') {
+                    String line = new String(buf, start, i - start, StandardCharsets.UTF_8);
+                    start = i + 2;
+                    return line;
+                }
+            }
+            if (end - start > MAX_HEADER_LINE) {
+                throw new IOException("multipart header line too long");
+            }
+            if (!fill()) {
+                throw new IOException("unexpected end of multipart body");
+            }
+        }
+    }
+
+    // ---- Header parsing ----
+
+    private static String boundaryOf(String contentType) {
+        if (contentType == null) {
+            return null;
+        }
+        for (String param : contentType.split(";")) {
+            String p = param.trim();
+            if (p.regionMatches(true, 0, "boundary=", 0, 9)) {
+                String b = p.substring(9);
+                if (b.length() >= 2 && b.startsWith("\"") && b.endsWith("\"")) {
+                    b = b.substring(1, b.length() - 1);
+                }
+                return b.isEmpty() ? null : b;
+            }
+        }
+        return null;
+    }
+
+    /** Value of name="..." in a Content-Disposition line (quoted or bare), or null. */
+    private static String dispositionParam(String line, String param) {
+        String lower = line.toLowerCase();
+        int from = 0;
+        while (true) {
+            int i = lower.indexOf(param + "=", from);
+            if (i < 0) {
+                return null;
+            }
+            // Must be a whole parameter name ("name" inside "filename" does not count)
+            char before = i > 0 ? lower.charAt(i - 1) : ';';
+            from = i + param.length() + 1;
+            if (before != ';' && before != ' ' && before != '\t') {
+                continue;
+            }
+            if (from < line.length() && line.charAt(from) == '"') {
+                int close = line.indexOf('"', from + 1);
+                return close < 0 ? line.substring(from + 1) : line.substring(from + 1, close);
+            }
+            int semi = line.indexOf(';', from);
+            return (semi < 0 ? line.substring(from) : line.substring(from, semi)).trim();
+        }
+    }
+
+    /** Last path segment with anything unusual replaced, so it is safe to use in the upload folder. */
+    static String safeFileName(String name) {
+        String base = name.substring(Math.max(name.lastIndexOf('/'), name.lastIndexOf('\\')) + 1);
+        StringBuilder sb = new StringBuilder(base.length());
+        for (int i = 0; i < base.length() && sb.length() < 120; i++) {
+            char c = base.charAt(i);
+            sb.append(Character.isLetterOrDigit(c) && c < 128 || c == '.' || c == '-' || c == '_' ? c : '_');
+        }
+        String safe = sb.toString();
+        while (safe.startsWith(".")) {
+            safe = safe.substring(1);
+        }
+        return safe.isEmpty() ? "upload" : safe;
+    }
+
+    // ---- Results ----
+
+    public Map<String, String> getFields() {
+        return fields;
+    }
+
+    public boolean hasFile() {
+        return tempFile != null && fileSize > 0;
+    }
+
+    /** Sanitized original file name (no directories). */
+    public String getFileName() {
+        return fileName;
+    }
+
+    /** Form field name of the file part. */
+    public String getFileField() {
+        return fileField;
+    }
+
+    public long getFileSize() {
+        return fileSize;
+    }
+
+    /** Lowercase hex SHA-256 of the uploaded file. */
+    public String getFileSha256() {
+        return fileSha256;
+    }
+
+    /** The spooled upload (still in the spool directory). */
+    public Path getTempFile() {
+        return tempFile;
+    }
+
+    /**
+     * Moves the upload into dir under the given name. The move is atomic, so a
+     * half-written file never appears there; if the spool directory is on another
+     * disk the file is first copied next to the target and then renamed.
+     */
+    public File moveFileTo(File dir, String name) throws IOException {
+        if (tempFile == null) {
+            throw new IOException("no file uploaded");
+        }
+        Path targetDir = dir.toPath();
+        Files.createDirectories(targetDir);
+        Path target = targetDir.resolve(name);
+        try {
+            Files.move(tempFile, target, StandardCopyOption.ATOMIC_MOVE);
+        } catch (AtomicMoveNotSupportedException e) {
+            Path staged = Files.createTempFile(targetDir, ".upload-", ".part");
+            try {
+                Files.copy(tempFile, staged, StandardCopyOption.REPLACE_EXISTING);
+                Files.move(staged, target, StandardCopyOption.ATOMIC_MOVE);
+            } finally {
+                Files.deleteIfExists(staged);
+            }
+            Files.deleteIfExists(tempFile);
+        }
+        tempFile = null;
+        return target.toFile();
+    }
+
+    /** Deletes the spooled file unless it was moved. */
+    @Override
+    public void close() {
+        if (tempFile != null) {
+            try {
+                Files.deleteIfExists(tempFile);
+            } catch (IOException ignored) {
+                // left for the OS temp cleaner
+            }
+            tempFile = null;
+        }
+    }
+
+    /** In-memory sink for text fields. */
+    private static class FieldBuffer extends ByteArrayOutputStream {
+        FieldBuffer() {
+            super(256);
+        }
+    }
+}
@@ -0,0 +1,154 @@
+package util;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Decoded query string or urlencoded form body.
+ *
+ * The raw text is scanned once: names and values are cut out with substring
+ * and only the ones containing '%' or '+' are decoded (no split, no regex, no
+ * URLDecoder). Empty values count as missing and for repeated names the last
+ * one wins.
+ */
+public class Params {
+
+    public static final Params EMPTY = new Params(Collections.emptyMap());
+
+    private final Map<String, String> values;
+
+    private Params(Map<String, String> values) {
+        this.values = values;
+    }
+
+    /** Parses "a=1&b=x%20y". Pass the raw (still encoded) query or body. */
+    public static Params parse(String raw) {
+        if (raw == null || raw.isEmpty()) {
+            return EMPTY;
+        }
+        Map<String, String> map = new HashMap<>();
+        int len = raw.length();
+        int start = 0;
+        while (start < len) {
+            int end = start;
+            int eq = -1;
+            boolean encoded = false;
+            for (; end < len; end++) {
+                char c = raw.charAt(end);
+                if (c == '&') {
+                    break;
+                }
+                if (c == '=' && eq < 0) {
+                    eq = end;
+                } else if (c == '%' || c == '+') {
+                    encoded = true;
+                }
+            }
+            if (eq > start && eq + 1 < end) {
+                String name = raw.substring(start, eq);
+                String value = raw.substring(eq + 1, end);
+                if (encoded) {
+                    name = decode(name);
+                    value = decode(value);
+                }
+                map.put(name, value);
+            }
+            start = end + 1;
+        }
+        return new Params(map);
+    }
+
+    /** Wraps already decoded fields, e.g. from MultipartParser.getFields(). */
+    public static Params of(Map<String, String> fields) {
+        Map<String, String> map = new HashMap<>();
+        for (Map.Entry<String, String> e : fields.entrySet()) {
+            if (e.getValue() != null && !e.getValue().isEmpty()) {
+                map.put(e.getKey(), e.getValue());
+            }
+        }
+        return new Params(map);
+    }
+
+    /** Percent-decodes UTF-8 text; '+' is a space. Malformed escapes are kept as they are. */
+    static String decode(String s) {
+        int len = s.length();
+        byte[] buf = null;
+        int n = 0;
+        for (int i = 0; i < len; i++) {
+            char c = s.charAt(i);
+            if (c != '%' && c != '+') {
+                if (buf != null) {
+                    n = appendUtf8(s, i, buf, n);
+                    i += Character.charCount(s.codePointAt(i)) - 1;
+                }
+                continue;
+            }
+            if (buf == null) {
+                // Three bytes per char covers anything the plain part can expand to
+                buf = new byte[len * 3];
+                for (int j = 0; j < i; j += Character.charCount(s.codePointAt(j))) {
+                    n = appendUtf8(s, j, buf, n);
+                }
+            }
+            if (c == '+') {
+                buf[n++] = ' ';
+                continue;
+            }
+            int hi = i + 2 < len ? Character.digit(s.charAt(i + 1), 16) : -1;
+            int lo = hi >= 0 ? Character.digit(s.charAt(i + 2), 16) : -1;
+            if (lo >= 0) {
+                buf[n++] = (byte) ((hi << 4) | lo);
+                i += 2;
+            } else {
+                buf[n++] = '%';
+            }
+        }
+        return buf == null ? s : new String(buf, 0, n, StandardCharsets.UTF_8);
+    }
+
+    /** Writes the character at i (a whole surrogate pair if it starts one) as UTF-8. */
+    private static int appendUtf8(String s, int i, byte[] buf, int n) {
+        char c = s.charAt(i);
+        if (c < 0x80) {
+            buf[n++] = (byte) c;
+            return n;
+        }
+        // Rare: the client left non-ASCII text unencoded
+        byte[] bytes = new String(Character.toChars(s.codePointAt(i))).getBytes(StandardCharsets.UTF_8);
+        System.arraycopy(bytes, 0, buf, n, bytes.length);
+        return n + bytes.length;
+    }
+
+    /** The value, or null if the parameter is missing or empty. */
+    public String get(String name) {
+        return values.get(name);
+    }
+
+    public String get(String name, String defaultValue) {
+        String v = values.get(name);
+        return v != null ? v : defaultValue;
+    }
+
+    /** The value as an int, or the default if it is missing or not a number. */
+    public int getInt(String name, int defaultValue) {
+        String v = values.get(name);
+        if (v == null) {
+            return defaultValue;
+        }
+        try {
+            return Integer.parseInt(v.trim());
+        } catch (NumberFormatException e) {
+            return defaultValue;
+        }
+    }
+
+    public boolean has(String name) {
+        return values.containsKey(name);
+    }
+
+    public Map<String, String> asMap() {
+        return Collections.unmodifiableMap(values);
+    }
+}
@@ -0,0 +1,93 @@
+package util;
+
+import com.sun.net.httpserver.HttpExchange;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+
+import model.Admin;
+import model.Student;
+import model.User;
+
+/**
+ * One request as seen by a Router.Route: the exchange, the session user the
+ * router already checked, and the query / form parameters parsed on first use.
+ */
+public class Request {
+
+    // Urlencoded forms here are a few fields; uploads go through MultipartParser instead
+    private static final int MAX_FORM_BYTES = Integer.getInteger("request.maxFormBytes", 1024 * 1024);
+
+    private final HttpExchange exchange;
+    private final User user;
+    private Params query;
+    private Params form;
+
+    Request(HttpExchange exchange, User user) {
+        this.exchange = exchange;
+        this.user = user;
+    }
+
+    public HttpExchange getExchange() {
+        return exchange;
+    }
+
+    public String getMethod() {
+        return exchange.getRequestMethod();
+    }
+
+    public boolean isPost() {
+        return "POST".equalsIgnoreCase(exchange.getRequestMethod());
+    }
+
+    /** The logged-in user, or null on public routes. */
+    public User getUser() {
+        return user;
+    }
+
+    /** The user on a Router.Access.STUDENT route. */
+    public Student getStudent() {
+        return (Student) user;
+    }
+
+    public boolean isAdmin() {
+        return user instanceof Admin;
+    }
+
+    public String getContentType() {
+        return exchange.getRequestHeaders().getFirst("Content-Type");
+    }
+
+    public boolean isMultipart() {
+        String contentType = getContentType();
+        return contentType != null && contentType.contains("multipart/form-data");
+    }
+
+    /** Parameters from the URL query string. */
+    public Params getQuery() {
+        if (query == null) {
+            query = Params.parse(exchange.getRequestURI().getRawQuery());
+        }
+        return query;
+    }
+
+    /**
+     * Parameters from an urlencoded request body, read on first call.
+     * Multipart bodies are left alone for MultipartParser and give no parameters here.
+     */
+    public Params getForm() throws IOException {
+        if (form == null) {
+            if (isMultipart()) {
+                form = Params.EMPTY;
+            } else {
+                InputStream in = exchange.getRequestBody();
+                byte[] body = in.readNBytes(MAX_FORM_BYTES + 1);
+                if (body.length > MAX_FORM_BYTES) {
+                    throw new IOException("Form body larger than " + MAX_FORM_BYTES + " bytes");
+                }
+                form = Params.parse(new String(body, StandardCharsets.UTF_8));
+            }
+        }
+        return form;
+    }
+}
@@ -0,0 +1,177 @@
+package util;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.HashMap;
+import java.util.Map;
+
+import model.Admin;
+import model.Student;
+import model.User;
+
+/**
+ * Single entry point for every request. Routes are registered once at startup
+ * with their path, allowed method, who may call them and the worker group they
+ * run on (see ServerExecutors); dispatch is one hash lookup on the exact path.
+ *
+ * The session and access checks happen here, before the route runs, so routes
+ * receive a Request that already carries the user. Paths without a route go to
+ * the fallback handler (static files).
+ *
+ * Every request that runs gets an access log line (see Log) once its handler
+ * has finished, with the status, the time since the router received it and
+ * the number of body bytes sent.
+ */
+public class Router implements HttpHandler {
+
+    /** Who may call a route; a refused caller is sent to the matching login page. */
+    public enum Access {
+        PUBLIC(null),
+        USER(null),
+        STUDENT("/login.html"),
+        ADMIN("/admin_login.html");
+
+        private final String loginPage;
+
+        Access(String loginPage) {
+            this.loginPage = loginPage;
+        }
+
+        boolean allows(User user) {
+            switch (this) {
+                case PUBLIC: return true;
+                case USER: return user != null;
+                case STUDENT: return user instanceof Student;
+                default: return user instanceof Admin;
+            }
+        }
+    }
+
+    /** A page or action behind the router. */
+    public interface Route {
+        void handle(Request request) throws IOException;
+    }
+
+    private final ServerExecutors executors;
+    private final Map<String, HttpHandler> routes = new HashMap<>();
+    private final HttpHandler fallback;
+
+    public Router(ServerExecutors executors, HttpHandler fallback) {
+        this.executors = executors;
+        this.fallback = executors.wrap(ServerExecutors.GROUP_STATIC, new AccessLogged(fallback));
+    }
+
+    /** Registers a route for any method. */
+    public Router add(String group, String path, Access access, Route route) {
+        return add(group, path, null, access, route);
+    }
+
+    /** Registers a route that only answers the given method; others get 405. */
+    public Router add(String group, String path, String method, Access access, Route route) {
+        if (routes.containsKey(path)) {
+            throw new IllegalArgumentException("Route already registered: " + path);
+        }
+        routes.put(path, executors.wrap(group, new AccessLogged(new Endpoint(method, access, route))));
+        return this;
+    }
+
+    @Override
+    public void handle(HttpExchange exchange) throws IOException {
+        // Counts the response bytes and remembers when the request arrived
+        exchange.setStreams(null, new CountingStream(exchange.getResponseBody(), System.nanoTime()));
+
+        String path = exchange.getRequestURI().getPath();
+        HttpHandler handler = routes.get(path);
+        if (handler == null && path.length() > 1 && path.endsWith("/")) {
+            handler = routes.get(path.substring(0, path.length() - 1));
+        }
+        (handler != null ? handler : fallback).handle(exchange);
+    }
+
+    /** Runs a handler on its worker thread and logs the request when it is done. */
+    private static class AccessLogged implements HttpHandler {
+        private final HttpHandler delegate;
+
+        AccessLogged(HttpHandler delegate) {
+            this.delegate = delegate;
+        }
+
+        @Override
+        public void handle(HttpExchange exchange) throws IOException {
+            boolean failed = true;
+            try {
+                delegate.handle(exchange);
+                failed = false;
+            } finally {
+                OutputStream body = exchange.getResponseBody();
+                if (body instanceof CountingStream) {
+                    CountingStream counted = (CountingStream) body;
+                    int status = exchange.getResponseCode();
+                    if (status == -1 && failed) {
+                        status = 500; // the worker answers 500 after this
+                    }
+                    Log.access(exchange.getRequestMethod(), exchange.getRequestURI().getRawPath(), status,
+                            System.nanoTime() - counted.startNanos, counted.count);
+                }
+            }
+        }
+    }
+
+    private static class CountingStream extends FilterOutputStream {
+        final long startNanos;
+        long count; // only written by the thread running the handler
+
+        CountingStream(OutputStream out, long startNanos) {
+            super(out);
+            this.startNanos = startNanos;
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            out.write(b);
+            count++;
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            out.write(b, off, len);
+            count += len;
+        }
+    }
+
+    /** A route with its method and access checks, run on the route's worker group. */
+    private static class Endpoint implements HttpHandler {
+        private final String method;
+        private final Access access;
+        private final Route route;
+
+        Endpoint(String method, Access access, Route route) {
+            this.method = method;
+            this.access = access;
+            this.route = route;
+        }
+
+        @Override
+        public void handle(HttpExchange exchange) throws IOException {
+            if (method != null && !method.equalsIgnoreCase(exchange.getRequestMethod())) {
+                exchange.getResponseHeaders().set("Allow", method);
+                exchange.sendResponseHeaders(405, -1);
+                return;
+            }
+            User user = access == Access.PUBLIC ? null : SimpleSessionManager.getSessionUser(exchange);
+            if (!access.allows(user)) {
+                if (access.loginPage != null) {
+                    exchange.getResponseHeaders().set("Location", access.loginPage);
+                    exchange.sendResponseHeaders(302, -1);
+                } else {
+                    exchange.sendResponseHeaders(401, -1);
+                }
+                return;
+            }
+            route.handle(new Request(exchange, user));
+        }
+    }
+}
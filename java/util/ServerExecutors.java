@@ -0,0 +1,212 @@
+package util;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.lang.reflect.Method;
+import java.nio.charset.StandardCharsets;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Chooses how the HttpServer runs handlers. Every handler does blocking JDBC or
+ * file I/O, so this decides how many requests can be in flight:
+ *
+ *   virtual   - one virtual thread per request (Java 21+; falls back to pool)
+ *   pool      - one bounded platform-thread pool with a bounded queue
+ *   per-route - a bounded pool per route group ("static", "auth", "app"), so
+ *               slow database pages cannot starve static assets or login
+ *
+ * In the pooled modes a request that finds its pool's queue full is answered
+ * with 503 instead of waiting. Settings come from system properties:
+ *   -Dserver.executor=virtual|pool|per-route
+ *   -Dserver.pool.threads=64 -Dserver.pool.queue=256          (pool)
+ *   -Dserver.pool.<group>.threads / .queue                    (per-route)
+ */
+public class ServerExecutors {
+
+    public enum Mode { VIRTUAL, POOL, PER_ROUTE }
+
+    public static final String GROUP_STATIC = "static";
+    public static final String GROUP_AUTH = "auth";
+    public static final String GROUP_APP = "app";
+    private static final String GROUP_DEFAULT = "default";
+
+    private final Mode mode;
+    private final ExecutorService serverExecutor;
+    private final Map<String, ThreadPoolExecutor> pools = new LinkedHashMap<>();
+
+    private ServerExecutors(Mode mode, ExecutorService serverExecutor) {
+        this.mode = mode;
+        this.serverExecutor = serverExecutor;
+    }
+
+    public static ServerExecutors fromSystemProperties() {
+        String value = System.getProperty("server.executor", "virtual").trim().toLowerCase();
+        Mode mode;
+        switch (value) {
+            case "pool": mode = Mode.POOL; break;
+            case "per-route": mode = Mode.PER_ROUTE; break;
+            default: mode = Mode.VIRTUAL;
+        }
+        if (mode == Mode.VIRTUAL) {
+            ExecutorService virtual = newVirtualThreadExecutor();
+            if (virtual != null) {
+                return new ServerExecutors(Mode.VIRTUAL, virtual);
+            }
+            Log.warn("Virtual threads need Java 21+, using a bounded thread pool instead.");
+            mode = Mode.POOL;
+        }
+        return new ServerExecutors(mode, null);
+    }
+
+    /** Executors.newVirtualThreadPerTaskExecutor() when the runtime has it (looked up so we still compile on 17). */
+    private static ExecutorService newVirtualThreadExecutor() {
+        try {
+            Method factory = java.util.concurrent.Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+            return (ExecutorService) factory.invoke(null);
+        } catch (ReflectiveOperationException e) {
+            return null;
+        }
+    }
+
+    public Mode getMode() {
+        return mode;
+    }
+
+    /**
+     * Executor to install with HttpServer.setExecutor. In the pooled modes this is
+     * null: the dispatcher thread only hands the exchange to the route's pool.
+     */
+    public Executor getServerExecutor() {
+        return serverExecutor;
+    }
+
+    /** Wraps a handler so it runs on the pool for its route group (no-op for virtual threads). */
+    public HttpHandler wrap(String group, HttpHandler handler) {
+        if (mode == Mode.VIRTUAL) {
+            return handler;
+        }
+        String poolName = mode == Mode.PER_ROUTE ? group : GROUP_DEFAULT;
+        return new PooledHandler(handler, pool(poolName));
+    }
+
+    private synchronized ThreadPoolExecutor pool(String name) {
+        ThreadPoolExecutor pool = pools.get(name);
+        if (pool == null) {
+            int threads;
+            int queue;
+            if (GROUP_DEFAULT.equals(name)) {
+                threads = Integer.getInteger("server.pool.threads", 64);
+                queue = Integer.getInteger("server.pool.queue", 256);
+            } else {
+                threads = Integer.getInteger("server.pool." + name + ".threads", defaultThreads(name));
+                queue = Integer.getInteger("server.pool." + name + ".queue", defaultQueue(name));
+            }
+            AtomicInteger counter = new AtomicInteger();
+            pool = new ThreadPoolExecutor(threads, threads, 60, TimeUnit.SECONDS,
+                    new ArrayBlockingQueue<>(Math.max(1, queue)),
+                    r -> {
+                        Thread t = new Thread(r, "http-" + name + "-" + counter.incrementAndGet());
+                        t.setDaemon(true);
+                        return t;
+                    },
+                    new ThreadPoolExecutor.AbortPolicy());
+            pool.allowCoreThreadTimeOut(true);
+            pools.put(name, pool);
+        }
+        return pool;
+    }
+
+    private static int defaultThreads(String group) {
+        switch (group) {
+            case GROUP_STATIC: return 16;
+            case GROUP_AUTH: return 8;
+            default: return 48;
+        }
+    }
+
+    private static int defaultQueue(String group) {
+        switch (group) {
+            case GROUP_STATIC: return 512;
+            case GROUP_AUTH: return 64;
+            default: return 256;
+        }
+    }
+
+    public String describe() {
+        if (mode == Mode.VIRTUAL) {
+            return "virtual threads";
+        }
+        StringBuilder sb = new StringBuilder(mode == Mode.POOL ? "pool" : "per-route pools");
+        synchronized (this) {
+            for (Map.Entry<String, ThreadPoolExecutor> e : pools.entrySet()) {
+                sb.append(" ").append(e.getKey()).append("=").append(e.getValue().getMaximumPoolSize())
+                        .append("/").append(e.getValue().getQueue().remainingCapacity());
+            }
+        }
+        return sb.toString();
+    }
+
+    public void shutdown() {
+        if (serverExecutor != null) {
+            serverExecutor.shutdown();
+        }
+        synchronized (this) {
+            for (ThreadPoolExecutor pool : pools.values()) {
+                pool.shutdown();
+            }
+        }
+    }
+
+    /** Runs the real handler on a bounded pool; a full queue gets 503 right away. */
+    private static class PooledHandler implements HttpHandler {
+        private final HttpHandler delegate;
+        private final ThreadPoolExecutor pool;
+
+        PooledHandler(HttpHandler delegate, ThreadPoolExecutor pool) {
+            this.delegate = delegate;
+            this.pool = pool;
+        }
+
+        @Override
+        public void handle(HttpExchange exchange) throws IOException {
+            try {
+                pool.execute(() -> run(exchange));
+            } catch (RejectedExecutionException e) {
+                byte[] body = "503 Service Unavailable".getBytes(StandardCharsets.UTF_8);
+                exchange.getResponseHeaders().set("Retry-After", "1");
+                exchange.sendResponseHeaders(503, body.length);
+                try (OutputStream os = exchange.getResponseBody()) {
+                    os.write(body);
+                }
+            }
+        }
+
+        private void run(HttpExchange exchange) {
+            try {
+                delegate.handle(exchange);
+            } catch (Exception e) {
+                // The server only cleans up after handlers it called itself
+                Log.error("Unhandled error for " + exchange.getRequestMethod() + " " + exchange.getRequestURI().getRawPath(), e);
+                try {
+                    if (exchange.getResponseCode() == -1) {
+                        exchange.sendResponseHeaders(500, -1);
+                    }
+                } catch (IOException ignored) {
+                    // connection already gone
+                }
+            } finally {
+                exchange.close();
+            }
+        }
+    }
+}
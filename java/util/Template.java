@@ -0,0 +1,214 @@
+package util;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * HTML template with {{placeholder}} slots.
+ *
+ * Each template file is read and split once into pre-encoded UTF-8 literal
+ * segments and named slots. Rendering only encodes the slot values and writes
+ * segments and values in order, so the page is never copied per placeholder.
+ *
+ * Usage:
+ *   Template.Values v = Template.get("course_details.html").values();
+ *   v.set("studentName", name);          // HTML-escaped
+ *   v.setHtml("materialsContent", html); // inserted as-is
+ *   HttpResponses.sendHtml(exchange, v.render());
+ */
+public class Template {
+    private static final String TEMPLATE_DIR = "src/main/webapp/";
+    private static final Map<String, Template> cache = new ConcurrentHashMap<>();
+
+    // literals[i] is written before slot i; the last literal follows the last slot
+    private final byte[][] literals;
+    private final int[] slotIds;
+    private final byte[][] placeholderBytes; // "{{name}}" per slot id, used when a value is missing
+    private final Map<String, Integer> idsByName;
+
+    private Template(String text) {
+        List<byte[]> literalList = new ArrayList<>();
+        List<Integer> slotList = new ArrayList<>();
+        List<byte[]> placeholders = new ArrayList<>();
+        Map<String, Integer> ids = new HashMap<>();
+
+        int pos = 0;
+        int literalStart = 0;
+        while ((pos = text.indexOf("{{", pos)) >= 0) {
+            int end = text.indexOf("}}", pos + 2);
+            if (end < 0) {
+                break;
+            }
+            String name = text.substring(pos + 2, end);
+            if (!isSlotName(name)) {
+                pos += 2;
+                continue;
+            }
+            literalList.add(text.substring(literalStart, pos).getBytes(StandardCharsets.UTF_8));
+            Integer id = ids.get(name);
+            if (id == null) {
+                id = ids.size();
+                ids.put(name, id);
+                placeholders.add(("{{" + name + "}}").getBytes(StandardCharsets.UTF_8));
+            }
+            slotList.add(id);
+            pos = end + 2;
+            literalStart = pos;
+        }
+        literalList.add(text.substring(literalStart).getBytes(StandardCharsets.UTF_8));
+
+        this.literals = literalList.toArray(new byte[0][]);
+        this.slotIds = new int[slotList.size()];
+        for (int i = 0; i < slotIds.length; i++) {
+            slotIds[i] = slotList.get(i);
+        }
+        this.placeholderBytes = placeholders.toArray(new byte[0][]);
+        this.idsByName = ids;
+    }
+
+    private static boolean isSlotName(String name) {
+        if (name.isEmpty()) {
+            return false;
+        }
+        for (int i = 0; i < name.length(); i++) {
+            char c = name.charAt(i);
+            if (!Character.isLetterOrDigit(c) && c != '_') {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /** Returns the parsed template for a file under the web root, parsing it on first use. */
+    public static Template get(String filename) throws IOException {
+        Template t = cache.get(filename);
+        if (t == null) {
+            File file = new File(TEMPLATE_DIR + filename);
+            String text;
+            try (FileInputStream fis = new FileInputStream(file)) {
+                text = new String(fis.readAllBytes(), StandardCharsets.UTF_8);
+            }
+            t = new Template(text);
+            Template existing = cache.putIfAbsent(filename, t);
+            if (existing != null) {
+                t = existing;
+            }
+        }
+        return t;
+    }
+
+    public Values values() {
+        return new Values(this);
+    }
+
+    /** Escapes text for use in HTML element content and quoted attribute values. */
+    public static String escape(String text) {
+        if (text == null) {
+            return "";
+        }
+        StringBuilder sb = null;
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            String rep;
+            switch (c) {
+                case '&': rep = "&amp;"; break;
+                case '<': rep = "&lt;"; break;
+                case '>': rep = "&gt;"; break;
+                case '"': rep = "&quot;"; break;
+                case '\'': rep = "&#39;"; break;
+                default: rep = null;
+            }
+            if (rep != null) {
+                if (sb == null) {
+                    sb = new StringBuilder(text.length() + 16);
+                    sb.append(text, 0, i);
+                }
+                sb.append(rep);
+            } else if (sb != null) {
+                sb.append(c);
+            }
+        }
+        return sb != null ? sb.toString() : text;
+    }
+
+    /** Slot values for one render of a template. */
+    public static class Values {
+        private final Template template;
+        private final byte[][] values;
+
+        private Values(Template template) {
+            this.template = template;
+            this.values = new byte[template.placeholderBytes.length][];
+        }
+
+        /** Sets a slot to plain text; it is HTML-escaped. Unknown names are ignored. */
+        public Values set(String name, String text) {
+            return setHtml(name, escape(text));
+        }
+
+        public Values set(String name, long number) {
+            return setHtml(name, String.valueOf(number));
+        }
+
+        /** Sets a slot to markup that is inserted without escaping. */
+        public Values setHtml(String name, String html) {
+            Integer id = template.idsByName.get(name);
+            if (id != null) {
+                values[id] = (html != null ? html : "").getBytes(StandardCharsets.UTF_8);
+            }
+            return this;
+        }
+
+        public Rendered render() {
+            return new Rendered(template, values.clone());
+        }
+    }
+
+    /** A rendered page whose size is known before any byte is written. */
+    public static class Rendered {
+        private final Template template;
+        private final byte[][] values;
+        private final long length;
+
+        private Rendered(Template template, byte[][] values) {
+            this.template = template;
+            this.values = values;
+            long len = 0;
+            for (byte[] literal : template.literals) {
+                len += literal.length;
+            }
+            for (int id : template.slotIds) {
+                len += valueFor(id).length;
+            }
+            this.length = len;
+        }
+
+        private byte[] valueFor(int id) {
+            byte[] v = values[id];
+            // Missing values leave the placeholder in place, like String.replace did
+            return v != null ? v : template.placeholderBytes[id];
+        }
+
+        public long length() {
+            return length;
+        }
+
+        public void writeTo(OutputStream os) throws IOException {
+            byte[][] literals = template.literals;
+            int[] slotIds = template.slotIds;
+            for (int i = 0; i < slotIds.length; i++) {
+                os.write(literals[i]);
+                os.write(valueFor(slotIds[i]));
+            }
+            os.write(literals[literals.length - 1]);
+        }
+    }
+}
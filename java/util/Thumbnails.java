@@ -0,0 +1,270 @@
+package util;
+
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.RenderingHints;
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import javax.imageio.IIOImage;
+import javax.imageio.ImageIO;
+import javax.imageio.ImageReader;
+import javax.imageio.ImageWriteParam;
+import javax.imageio.ImageWriter;
+import javax.imageio.stream.ImageInputStream;
+import javax.imageio.stream.ImageOutputStream;
+
+/**
+ * Resized JPEG variants of uploaded images, for course cards.
+ *
+ * The variant of uploads/&lt;image&gt; at width w lives at
+ * uploads/thumbs/&lt;w&gt;/&lt;image&gt;.jpg. Variants are made right after a course
+ * image is uploaded and otherwise on the first request for them
+ * (StaticFileHandler calls ensureVariant). Only the widths in WIDTHS are made,
+ * so URLs cannot be used to fill the disk.
+ *
+ * All decoding happens on one background thread, never on a request thread,
+ * and each variant is generated once however many requests ask for it at the
+ * same time: they all wait for the same result.
+ */
+public class Thumbnails {
+
+    /** Width used by the course cards (about 2x their CSS width). */
+    public static final int CARD_WIDTH = 640;
+    private static final int[] WIDTHS = { 320, CARD_WIDTH, 1280 };
+
+    private static final String UPLOAD_DIR = "src/main/webapp/uploads";
+    private static final String THUMBS_DIR = "thumbs/";
+    private static final float JPEG_QUALITY = 0.82f;
+    // Refuse to decode huge images (a small PNG can claim a gigapixel canvas)
+    private static final long MAX_SOURCE_PIXELS = Long.getLong("thumbs.maxSourcePixels", 50_000_000L);
+    // How long a request waits for its variant before the original is sent instead
+    private static final long WAIT_SECONDS = Long.getLong("thumbs.waitSeconds", 10);
+
+    // Variants being generated (queued or running) -> the file, or null if it failed
+    private static final Map<String, CompletableFuture<File>> inFlight = new ConcurrentHashMap<>();
+    private static final ExecutorService pregenerator = Executors.newSingleThreadExecutor(r -> {
+        Thread t = new Thread(r, "thumbnails");
+        t.setDaemon(true);
+        return t;
+    });
+
+    /** URL of the card-sized variant of an uploaded image, or null if there is no image. */
+    public static String cardUrl(String imageUrl) {
+        if (imageUrl == null || imageUrl.isEmpty()) {
+            return null;
+        }
+        return "uploads/" + variantPath(imageUrl, CARD_WIDTH);
+    }
+
+    /** Path of a variant, relative to the upload folder. */
+    public static String variantPath(String imagePath, int width) {
+        return THUMBS_DIR + width + "/" + imagePath + ".jpg";
+    }
+
+    /**
+     * For a path relative to the upload folder: if it names a variant, the image
+     * it is made from (relative to the upload folder), otherwise null.
+     */
+    public static String sourceOf(String variantPath) {
+        if (!variantPath.startsWith(THUMBS_DIR) || !variantPath.endsWith(".jpg")) {
+            return null;
+        }
+        int slash = variantPath.indexOf('/', THUMBS_DIR.length());
+        if (slash < 0 || widthOf(variantPath.substring(THUMBS_DIR.length(), slash)) < 0) {
+            return null;
+        }
+        String source = variantPath.substring(slash + 1, variantPath.length() - 4);
+        return source.isEmpty() || source.startsWith(THUMBS_DIR) || source.contains("..") ? null : source;
+    }
+
+    private static int widthOf(String text) {
+        for (int w : WIDTHS) {
+            if (String.valueOf(w).equals(text)) {
+                return w;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Makes sure the variant file exists (generating it if needed) and returns
+     * it, or null if the source is missing, is not an image ImageIO can read,
+     * or the variant is not ready within WAIT_SECONDS.
+     */
+    public static File ensureVariant(String variantPath) {
+        try {
+            return requestVariant(variantPath).get(WAIT_SECONDS, TimeUnit.SECONDS);
+        } catch (TimeoutException e) {
+            Log.warn("Thumbnail " + variantPath + " not ready after " + WAIT_SECONDS + "s");
+            return null;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return null;
+        } catch (ExecutionException e) {
+            return null; // not reached: failures complete with null
+        }
+    }
+
+    /** Queues all variants of a freshly uploaded image. */
+    public static void pregenerate(String imagePath) {
+        if (imagePath == null || imagePath.isEmpty()) {
+            return;
+        }
+        for (int w : WIDTHS) {
+            requestVariant(variantPath(imagePath, w));
+        }
+    }
+
+    /**
+     * The variant file, once it exists. The first caller for a missing variant
+     * queues its generation; callers arriving while it is queued or running get
+     * the same future. The entry is removed only after the future is complete
+     * and the file is in place, so a later caller finds the file instead.
+     */
+    private static CompletableFuture<File> requestVariant(String variantPath) {
+        String source = sourceOf(variantPath);
+        if (source == null) {
+            return CompletableFuture.completedFuture(null);
+        }
+        File sourceFile = new File(UPLOAD_DIR, source);
+        File target = new File(UPLOAD_DIR, variantPath);
+        if (isFresh(target, sourceFile)) {
+            return CompletableFuture.completedFuture(target);
+        }
+        if (!sourceFile.isFile()) {
+            return CompletableFuture.completedFuture(null);
+        }
+        CompletableFuture<File> created = new CompletableFuture<>();
+        CompletableFuture<File> running = inFlight.putIfAbsent(variantPath, created);
+        if (running != null) {
+            return running;
+        }
+        int width = widthOf(variantPath.substring(THUMBS_DIR.length(), variantPath.indexOf('/', THUMBS_DIR.length())));
+        pregenerator.execute(() -> {
+            try {
+                if (!isFresh(target, sourceFile)) {
+                    resize(sourceFile, target, width);
+                }
+                created.complete(target);
+            } catch (IOException | RuntimeException e) {
+                Log.warn("Thumbnail " + variantPath + " failed: " + e.getMessage());
+                created.complete(null);
+            } finally {
+                created.complete(null); // no-op unless an Error escaped; waiters must not hang
+                inFlight.remove(variantPath, created);
+            }
+        });
+        return created;
+    }
+
+    /** Deletes all variants of an image (after the image itself was deleted). */
+    public static void deleteVariants(String imagePath) {
+        for (int w : WIDTHS) {
+            try {
+                Files.deleteIfExists(new File(UPLOAD_DIR, variantPath(imagePath, w)).toPath());
+            } catch (IOException e) {
+                Log.error("Could not delete thumbnail of " + imagePath, e);
+            }
+        }
+    }
+
+    private static boolean isFresh(File variant, File source) {
+        // Older uploads can be replaced under the same name; content-addressed ones cannot
+        return variant.isFile() && variant.lastModified() >= source.lastModified();
+    }
+
+    private static void resize(File sourceFile, File target, int width) throws IOException {
+        BufferedImage source = read(sourceFile);
+        if (source == null) {
+            throw new IOException("not a readable image");
+        }
+        int w = Math.min(width, source.getWidth());
+        int h = Math.max(1, (int) Math.round((double) source.getHeight() * w / source.getWidth()));
+
+        // Halve in steps first: one big bilinear step skips most source pixels and looks grainy
+        BufferedImage current = source;
+        int cw = source.getWidth();
+        int ch = source.getHeight();
+        while (cw / 2 >= w) {
+            cw /= 2;
+            ch = Math.max(1, ch / 2);
+            current = draw(current, cw, ch);
+        }
+        current = draw(current, w, h);
+
+        Path dir = target.toPath().getParent();
+        Files.createDirectories(dir);
+        Path tmp = Files.createTempFile(dir, ".thumb-", ".part");
+        try {
+            writeJpeg(current, tmp.toFile());
+            Files.move(tmp, target.toPath(), StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        } finally {
+            Files.deleteIfExists(tmp);
+        }
+    }
+
+    /** Reads the image after checking its size from the header. */
+    private static BufferedImage read(File file) throws IOException {
+        try (ImageInputStream in = ImageIO.createImageInputStream(file)) {
+            if (in == null) {
+                return null;
+            }
+            Iterator<ImageReader> readers = ImageIO.getImageReaders(in);
+            if (!readers.hasNext()) {
+                return null;
+            }
+            ImageReader reader = readers.next();
+            try {
+                reader.setInput(in, true, true);
+                long pixels = (long) reader.getWidth(0) * reader.getHeight(0);
+                if (pixels > MAX_SOURCE_PIXELS) {
+                    throw new IOException("image too large (" + pixels + " pixels)");
+                }
+                return reader.read(0);
+            } finally {
+                reader.dispose();
+            }
+        }
+    }
+
+    /** Scaled copy on an opaque RGB canvas (JPEG has no alpha; transparent areas become white). */
+    private static BufferedImage draw(BufferedImage src, int w, int h) {
+        BufferedImage out = new BufferedImage(w, h, BufferedImage.TYPE_INT_RGB);
+        Graphics2D g = out.createGraphics();
+        try {
+            g.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_BILINEAR);
+            g.setRenderingHint(RenderingHints.KEY_RENDERING, RenderingHints.VALUE_RENDER_QUALITY);
+            g.drawImage(src, 0, 0, w, h, Color.WHITE, null);
+        } finally {
+            g.dispose();
+        }
+        return out;
+    }
+
+    private static void writeJpeg(BufferedImage image, File file) throws IOException {
+        ImageWriter writer = ImageIO.getImageWritersByFormatName("jpeg").next();
+        ImageWriteParam param = writer.getDefaultWriteParam();
+        param.setCompressionMode(ImageWriteParam.MODE_EXPLICIT);
+        param.setCompressionQuality(JPEG_QUALITY);
+        param.setProgressiveMode(ImageWriteParam.MODE_DEFAULT);
+        try (ImageOutputStream out = ImageIO.createImageOutputStream(file)) {
+            writer.setOutput(out);
+            writer.write(null, new IIOImage(image, null, null), param);
+        } finally {
+            writer.dispose();
+        }
+    }
+}